@@ -0,0 +1,76 @@
+package com.br.libraryapi.benchmark;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.br.libraryapi.LibraryApiApplication;
+import com.br.libraryapi.model.entity.Book;
+import com.br.libraryapi.model.entity.Loan;
+import com.br.libraryapi.model.repository.BookRepository;
+import com.br.libraryapi.model.repository.LoanRepository;
+
+/**
+ * Boots the application without the web layer against a private in-memory H2
+ * database and seeds it through the repositories.
+ */
+public final class BenchmarkApplication {
+
+	private static final int CHUNK_SIZE = 1000;
+
+	private BenchmarkApplication() {
+	}
+
+	public static ConfigurableApplicationContext start() {
+		return new SpringApplicationBuilder(LibraryApiApplication.class)
+				.web(WebApplicationType.NONE)
+				.properties(
+						"spring.datasource.url=jdbc:h2:mem:bench-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1",
+						"spring.main.banner-mode=off",
+						"spring.boot.admin.client.enabled=false",
+						"logging.level.root=WARN")
+				.run();
+	}
+
+	public static List<Book> seedBooks(ConfigurableApplicationContext context, int books) {
+		BookRepository repository = context.getBean(BookRepository.class);
+		TransactionTemplate transaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+		List<Book> saved = new ArrayList<>(books);
+		for (int start = 0; start < books; start += CHUNK_SIZE) {
+			List<Book> chunk = new ArrayList<>(CHUNK_SIZE);
+			for (int i = start; i < Math.min(books, start + CHUNK_SIZE); i++) {
+				chunk.add(Book.builder()
+						.title("Titulo " + i)
+						.author("Autor " + (i % 100))
+						.isbn("isbn-" + i)
+						.build());
+			}
+			saved.addAll(transaction.execute(status -> repository.saveAll(chunk)));
+		}
+		return saved;
+	}
+
+	public static void seedLoans(ConfigurableApplicationContext context, List<Book> books, LocalDate loanDate) {
+		LoanRepository repository = context.getBean(LoanRepository.class);
+		TransactionTemplate transaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+		for (int start = 0; start < books.size(); start += CHUNK_SIZE) {
+			List<Loan> chunk = new ArrayList<>(CHUNK_SIZE);
+			for (Book book : books.subList(start, Math.min(books.size(), start + CHUNK_SIZE))) {
+				chunk.add(Loan.builder()
+						.book(book)
+						.customer("Cliente " + book.getId())
+						.customerEmail("cliente" + book.getId() + "@email.com")
+						.loanDate(loanDate)
+						.build());
+			}
+			transaction.execute(status -> repository.saveAll(chunk));
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package com.br.libraryapi.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import com.br.libraryapi.model.entity.Book;
+import com.br.libraryapi.service.BookSearchService;
+import com.br.libraryapi.service.BookService;
+
+/**
+ * BookServiceImpl.find as used by GET /api/books: unsorted text filters are
+ * served by the trigram index, sorted ones by the Example/CONTAINING query.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BookServiceBenchmark {
+
+	@Param({"1000", "100000"})
+	public int books;
+
+	private ConfigurableApplicationContext context;
+	private BookService service;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		context = BenchmarkApplication.start();
+		BenchmarkApplication.seedBooks(context, books);
+		context.getBean(BookSearchService.class).rebuild();
+		service = context.getBean(BookService.class);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public Page<Book> findByTitle() {
+		Book filter = Book.builder().title("tulo " + (next++ % books)).build();
+		return service.find(filter, PageRequest.of(0, 20));
+	}
+
+	@Benchmark
+	public Page<Book> findByTitleInDatabase() {
+		Book filter = Book.builder().title("tulo " + (next++ % books)).build();
+		return service.find(filter, PageRequest.of(0, 20, Sort.by("id")));
+	}
+
+	@Benchmark
+	public Page<Book> findByAuthor() {
+		Book filter = Book.builder().author("autor " + (next++ % 100)).build();
+		return service.find(filter, PageRequest.of(0, 20));
+	}
+}
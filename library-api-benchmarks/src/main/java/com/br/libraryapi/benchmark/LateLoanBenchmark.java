@@ -0,0 +1,78 @@
+package com.br.libraryapi.benchmark;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.br.libraryapi.model.entity.Book;
+import com.br.libraryapi.model.entity.Loan;
+import com.br.libraryapi.service.LoanService;
+
+/**
+ * Late-loan lookups over a loan table where {@code lateLoans} of the {@code books}
+ * loans have been overdue for days, {@value #NEWLY_LATE} fell due yesterday and the rest
+ * were made today. getAllLateLoan reads every overdue loan; getNewlyLateLoans is what the
+ * nightly job reads after yesterday's run and should not grow with {@code lateLoans}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LateLoanBenchmark {
+
+	private static final int NEWLY_LATE = 100;
+
+	@Param({"10000", "100000"})
+	public int books;
+
+	@Param({"100", "5000"})
+	public int lateLoans;
+
+	private ConfigurableApplicationContext context;
+	private LoanService service;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		context = BenchmarkApplication.start();
+		List<Book> saved = BenchmarkApplication.seedBooks(context, books);
+		int late = Math.min(lateLoans, saved.size());
+		int newlyLate = Math.min(late + NEWLY_LATE, saved.size());
+		BenchmarkApplication.seedLoans(context, saved.subList(0, late), LocalDate.now().minusDays(10));
+		BenchmarkApplication.seedLoans(context, saved.subList(late, newlyLate), LocalDate.now().minusDays(Loan.DEFAULT_LOAN_DAYS + 1));
+		BenchmarkApplication.seedLoans(context, saved.subList(newlyLate, saved.size()), LocalDate.now());
+		service = context.getBean(LoanService.class);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public List<Loan> getAllLateLoan() {
+		return service.getAllLateLoan();
+	}
+
+	@Benchmark
+	public List<Loan> getNewlyLateLoans() {
+		LocalDate today = LocalDate.now();
+		return service.getNewlyLateLoans(today.minusDays(1), today, 0, 1, 0l, 500);
+	}
+}
@@ -0,0 +1,87 @@
+package com.br.libraryapi.benchmark;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.br.libraryapi.model.entity.Book;
+import com.br.libraryapi.model.entity.Loan;
+import com.br.libraryapi.service.LoanService;
+
+/**
+ * LoanServiceImpl.save (availability check plus insert). Books are loaned in
+ * rotation and the previous loan of a book is returned before each invocation,
+ * outside of the measured code.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoanServiceBenchmark {
+
+	private static final int LOANED_BOOKS = 1000;
+
+	@Param({"1000", "100000"})
+	public int books;
+
+	private ConfigurableApplicationContext context;
+	private LoanService service;
+	private List<Book> pool;
+	private Loan[] openLoans;
+	private int slot;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		context = BenchmarkApplication.start();
+		List<Book> saved = BenchmarkApplication.seedBooks(context, books);
+		int poolSize = Math.min(LOANED_BOOKS, saved.size());
+		BenchmarkApplication.seedLoans(context, saved.subList(poolSize, saved.size()), LocalDate.now());
+		service = context.getBean(LoanService.class);
+		pool = saved.subList(0, poolSize);
+		openLoans = new Loan[pool.size()];
+	}
+
+	@Setup(Level.Invocation)
+	public void returnPreviousLoan() {
+		slot = (slot + 1) % pool.size();
+		Loan previous = openLoans[slot];
+		if (previous != null) {
+			previous.setReturned(true);
+			service.update(previous);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public Loan save() {
+		Loan loan = Loan.builder()
+				.book(pool.get(slot))
+				.customer("Fulano")
+				.customerEmail("fulano@email.com")
+				.loanDate(LocalDate.now())
+				.build();
+		openLoans[slot] = service.save(loan);
+		return openLoans[slot];
+	}
+}
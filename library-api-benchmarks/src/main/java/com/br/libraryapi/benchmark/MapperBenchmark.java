@@ -0,0 +1,95 @@
+package com.br.libraryapi.benchmark;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.br.libraryapi.api.dto.BookDTO;
+import com.br.libraryapi.api.dto.LoanDTO;
+import com.br.libraryapi.api.mapper.BookMapper;
+import com.br.libraryapi.api.mapper.impl.BookMapperImpl;
+import com.br.libraryapi.model.entity.Book;
+import com.br.libraryapi.model.entity.Loan;
+
+/**
+ * Compares the reflective ModelMapper previously used by the controllers with
+ * the hand written book mapper and with the LoanDTO constructor the loan
+ * listings select in JPQL. Run with {@code -prof gc} to get the bytes
+ * allocated per mapped object ({@code gc.alloc.rate.norm}).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MapperBenchmark {
+
+	private ModelMapper modelMapper;
+	private BookMapper bookMapper;
+
+	private Book book;
+	private BookDTO bookDTO;
+	private Loan loan;
+
+	@Setup
+	public void setUp() {
+		modelMapper = new ModelMapper();
+		bookMapper = new BookMapperImpl();
+
+		book = Book.builder().id(1l).title("Aventuras").author("Beltrano").isbn("123").build();
+		bookDTO = BookDTO.builder().id(1l).title("Aventuras").author("Beltrano").isbn("123").build();
+		loan = Loan.builder()
+				.id(1l)
+				.customer("Fulano")
+				.customerEmail("fulano@email.com")
+				.loanDate(LocalDate.now())
+				.book(book)
+				.build();
+	}
+
+	@Benchmark
+	public BookDTO modelMapperBookToDTO() {
+		return modelMapper.map(book, BookDTO.class);
+	}
+
+	@Benchmark
+	public BookDTO bookMapperToDTO() {
+		return bookMapper.toDTO(book);
+	}
+
+	@Benchmark
+	public Book modelMapperDTOToBook() {
+		return modelMapper.map(bookDTO, Book.class);
+	}
+
+	@Benchmark
+	public Book bookMapperToEntity() {
+		return bookMapper.toEntity(bookDTO);
+	}
+
+	@Benchmark
+	public LoanDTO modelMapperLoanToDTO() {
+		LoanDTO dto = modelMapper.map(loan, LoanDTO.class);
+		dto.setBook(modelMapper.map(loan.getBook(), BookDTO.class));
+		return dto;
+	}
+
+	// what LoanRepository.SELECT_LOAN_DTO builds for each row read
+	@Benchmark
+	public LoanDTO loanProjectionToDTO() {
+		return new LoanDTO(loan.getId(), loan.getCustomer(), loan.getCustomerEmail(), loan.getLoanDate(),
+				book.getId(), book.getTitle(), book.getAuthor(), book.getIsbn());
+	}
+}
@@ -0,0 +1,90 @@
+package com.br.libraryapi.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.br.libraryapi.api.dto.BookDTO;
+import com.br.libraryapi.api.dto.LoanDTO;
+import com.br.libraryapi.api.dto.PageDTO;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Jackson serialization of the loan page returned by GET /api/loans, as the old PageImpl
+ * body and as the PageDTO envelope, plain and gzipped the way server.compression sends it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PageSerializationBenchmark {
+
+	@Param({"20", "100"})
+	public int size;
+
+	private ObjectMapper objectMapper;
+	private Page<LoanDTO> page;
+	private PageDTO<LoanDTO> pageDTO;
+
+	@Setup
+	public void setUp() {
+		objectMapper = Jackson2ObjectMapperBuilder.json().build();
+		List<LoanDTO> content = new ArrayList<>(size);
+		for (long i = 0; i < size; i++) {
+			BookDTO book = new BookDTO(i, "Titulo " + i, "Autor " + i, "isbn-" + i);
+			content.add(new LoanDTO(i, book.getIsbn(), "Cliente " + i, "cliente" + i + "@email.com",
+					LocalDate.now(), book));
+		}
+		page = new PageImpl<LoanDTO>(content, PageRequest.of(0, size), 10000);
+		pageDTO = PageDTO.of(page);
+	}
+
+	@TearDown
+	public void printPayloadSizes() throws IOException {
+		System.out.printf("%npayload bytes for %d rows: PageImpl=%d, PageDTO=%d, PageDTO gzip=%d%n", size,
+				serializePage().length, serializePageDTO().length, serializePageDTOGzip().length);
+	}
+
+	@Benchmark
+	public byte[] serializePage() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(page);
+	}
+
+	@Benchmark
+	public byte[] serializePageDTO() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(pageDTO);
+	}
+
+	@Benchmark
+	public byte[] serializePageDTOGzip() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(8192);
+		try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+			objectMapper.writeValue(gzip, pageDTO);
+		}
+		return bytes.toByteArray();
+	}
+}
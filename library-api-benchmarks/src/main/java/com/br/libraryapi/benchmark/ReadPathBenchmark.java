@@ -0,0 +1,73 @@
+package com.br.libraryapi.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+
+import com.br.libraryapi.api.dto.BookDTO;
+import com.br.libraryapi.api.dto.CountMode;
+import com.br.libraryapi.api.mapper.BookMapper;
+import com.br.libraryapi.model.entity.Book;
+import com.br.libraryapi.service.BookService;
+
+/**
+ * One 1000-row page of GET /api/books, loaded as entities and mapped to DTOs versus read
+ * straight into DTOs. Run with -prof gc: gc.alloc.rate.norm is the heap allocated per request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReadPathBenchmark {
+
+	@Param({"1000"})
+	public int rows;
+
+	private ConfigurableApplicationContext context;
+	private BookService service;
+	private BookMapper mapper;
+	private PageRequest page;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		context = BenchmarkApplication.start();
+		BenchmarkApplication.seedBooks(context, rows * 2);
+		service = context.getBean(BookService.class);
+		mapper = context.getBean(BookMapper.class);
+		// sorted, so both paths run the Example query instead of the trigram index
+		page = PageRequest.of(0, rows, Sort.by("id"));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public Slice<BookDTO> entities() {
+		return service.find(Book.builder().title("Titulo").build(), page, CountMode.NONE).map(mapper::toDTO);
+	}
+
+	@Benchmark
+	public Slice<BookDTO> projection() {
+		return service.findDTO(Book.builder().title("Titulo").build(), page, CountMode.NONE);
+	}
+}
@@ -0,0 +1,79 @@
+package com.br.libraryapi.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Minimal JSON client on HttpURLConnection, so the harness needs nothing beyond the JDK to
+ * talk to the server. Bodies are read to the end so keep-alive connections are reused.
+ */
+public class ApiClient {
+
+	private final String baseUrl;
+
+	public ApiClient(int port) {
+		this.baseUrl = "http://localhost:" + port;
+	}
+
+	public Response get(String path) throws IOException {
+		return send("GET", path, null);
+	}
+
+	public Response post(String path, String json) throws IOException {
+		return send("POST", path, json);
+	}
+
+	// HttpURLConnection refuses PATCH, so it is tunnelled through the HiddenHttpMethodFilter
+	public Response patch(String path, String json) throws IOException {
+		return send("POST", path + (path.contains("?") ? "&" : "?") + "_method=PATCH", json);
+	}
+
+	private Response send(String method, String path, String json) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+		connection.setRequestMethod(method);
+		connection.setConnectTimeout(5000);
+		connection.setReadTimeout(30000);
+		connection.setRequestProperty("Accept", "application/json");
+		if (json != null) {
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type", "application/json");
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write(json.getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		int status = connection.getResponseCode();
+		InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+		return new Response(status, read(in));
+	}
+
+	private static String read(InputStream in) throws IOException {
+		if (in == null) {
+			return "";
+		}
+		try (InputStream stream = in) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = stream.read(buffer)) != -1) {
+				bytes.write(buffer, 0, read);
+			}
+			return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+
+	@Getter
+	@AllArgsConstructor
+	public static class Response {
+
+		private final int status;
+		private final String body;
+	}
+}
@@ -0,0 +1,112 @@
+package com.br.libraryapi.loadtest;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.context.ConfigurableApplicationContext;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Boots the API, seeds it and drives it with closed-loop clients: each client waits for its
+ * response before sending the next request, picking the operation at random by the weights
+ * of the mix. Latencies recorded during the warm-up are discarded.
+ *
+ * <pre>
+ * java -jar target/loadtest.jar --clients=64 --duration=120 --mix=search-books:70,list-loans:30
+ * </pre>
+ */
+@Slf4j
+public class LoadTest {
+
+	private final LoadTestOptions options;
+	private final LoadTestState state;
+	private final ApiClient client;
+	private final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+	private final Operation[] operations;
+	private final int[] cumulativeWeights;
+
+	public LoadTest(LoadTestOptions options, LoadTestState state, ApiClient client) {
+		this.options = options;
+		this.state = state;
+		this.client = client;
+		this.operations = options.getMix().keySet().toArray(new Operation[0]);
+		this.cumulativeWeights = new int[operations.length];
+		int total = 0;
+		for (int i = 0; i < operations.length; i++) {
+			total += options.getMix().get(operations[i]);
+			cumulativeWeights[i] = total;
+			stats.put(operations[i], new OperationStats());
+		}
+		if (total <= 0) {
+			throw new IllegalArgumentException("The mix needs at least one operation with a positive weight");
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		LoadTestOptions options = LoadTestOptions.parse(args);
+		ConfigurableApplicationContext context = LoadTestApplication.start();
+		try {
+			LoadTestState state = new LoadTestState(options.getBooks(), options.getCustomers());
+			List<Long> openLoans = LoadTestApplication.seed(context, options.getBooks(), options.getLoanedBooks(), options.getCustomers());
+			openLoans.forEach(state::loaned);
+			log.warn("seeded {} books and {} loans, running {} clients for {}s after {}s of warm-up",
+					options.getBooks(), openLoans.size(), options.getClients(), options.getDurationSeconds(), options.getWarmupSeconds());
+
+			Map<Operation, OperationStats> result = new LoadTest(options, state, new ApiClient(LoadTestApplication.port(context))).run();
+			new LoadTestReport(options, result).write(Paths.get(options.getReport()));
+		} finally {
+			context.close();
+		}
+	}
+
+	public Map<Operation, OperationStats> run() throws InterruptedException {
+		long start = System.nanoTime();
+		long warmupEnd = start + TimeUnit.SECONDS.toNanos(options.getWarmupSeconds());
+		long end = warmupEnd + TimeUnit.SECONDS.toNanos(options.getDurationSeconds());
+
+		ExecutorService clients = Executors.newFixedThreadPool(options.getClients());
+		for (int i = 0; i < options.getClients(); i++) {
+			clients.execute( () -> drive(end) );
+		}
+		TimeUnit.NANOSECONDS.sleep(warmupEnd - System.nanoTime());
+		stats.values().forEach(OperationStats::reset);
+
+		clients.shutdown();
+		clients.awaitTermination(options.getDurationSeconds() + 60, TimeUnit.SECONDS);
+		return stats;
+	}
+
+	private void drive(long end) {
+		while (System.nanoTime() < end) {
+			Operation operation = pick();
+			long start = System.nanoTime();
+			int status;
+			try {
+				status = operation.call(client, state);
+			} catch (IOException e) {
+				status = 0;
+			}
+			if (status != Operation.NOT_CALLED) {
+				stats.get(operation).record(status, System.nanoTime() - start);
+			}
+		}
+	}
+
+	private Operation pick() {
+		int value = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+		for (int i = 0; i < cumulativeWeights.length; i++) {
+			if (value < cumulativeWeights[i]) {
+				return operations[i];
+			}
+		}
+		return operations[operations.length - 1];
+	}
+}
@@ -0,0 +1,88 @@
+package com.br.libraryapi.loadtest;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.br.libraryapi.LibraryApiApplication;
+import com.br.libraryapi.model.entity.Book;
+import com.br.libraryapi.model.entity.Loan;
+import com.br.libraryapi.model.repository.BookRepository;
+import com.br.libraryapi.model.repository.LoanRepository;
+import com.br.libraryapi.service.BookAvailabilityService;
+import com.br.libraryapi.service.BookSearchService;
+
+/**
+ * Boots the whole application on a random port against a private in-memory H2 database,
+ * with nothing reaching out of the machine, and seeds it through the repositories.
+ */
+public final class LoadTestApplication {
+
+	private static final int CHUNK_SIZE = 1000;
+
+	private LoadTestApplication() {
+	}
+
+	public static ConfigurableApplicationContext start() {
+		return new SpringApplicationBuilder(LibraryApiApplication.class)
+				.properties(
+						"server.port=0",
+						"spring.datasource.url=jdbc:h2:mem:load-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1",
+						"spring.mvc.hiddenmethod.filter.enabled=true",
+						"spring.main.banner-mode=off",
+						"spring.boot.admin.client.enabled=false",
+						// the outbox worker would try to reach the SMTP server
+						"application.mail.outbox.initial-delay=86400000",
+						"logging.level.root=WARN")
+				.run();
+	}
+
+	public static int port(ConfigurableApplicationContext context) {
+		return ((WebServerApplicationContext) context).getWebServer().getPort();
+	}
+
+	/**
+	 * Books are named "Titulo i" with isbn "isbn-i", the first loanedBooks of them on loan to
+	 * "Cliente (i % customers)". Returns the ids of the open loans.
+	 */
+	public static List<Long> seed(ConfigurableApplicationContext context, int books, int loanedBooks, int customers) {
+		BookRepository bookRepository = context.getBean(BookRepository.class);
+		LoanRepository loanRepository = context.getBean(LoanRepository.class);
+		TransactionTemplate transaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+		List<Long> loans = new ArrayList<>(loanedBooks);
+		for (int start = 0; start < books; start += CHUNK_SIZE) {
+			List<Book> chunk = new ArrayList<>(CHUNK_SIZE);
+			for (int i = start; i < Math.min(books, start + CHUNK_SIZE); i++) {
+				chunk.add(Book.builder()
+						.title("Titulo " + i)
+						.author("Autor " + (i % 100))
+						.isbn("isbn-" + i)
+						.build());
+			}
+			List<Book> saved = transaction.execute(status -> bookRepository.saveAll(chunk));
+			List<Loan> loanChunk = new ArrayList<>();
+			for (int i = start; i < Math.min(loanedBooks, start + CHUNK_SIZE); i++) {
+				loanChunk.add(Loan.builder()
+						.book(saved.get(i - start))
+						.customer("Cliente " + (i % customers))
+						.customerEmail("cliente" + (i % customers) + "@email.com")
+						.loanDate(LocalDate.now())
+						.build());
+			}
+			if (!loanChunk.isEmpty()) {
+				transaction.execute(status -> loanRepository.saveAll(loanChunk)).forEach( loan -> loans.add(loan.getId()) );
+			}
+		}
+		// both were built at startup, before the seed
+		context.getBean(BookSearchService.class).rebuild();
+		context.getBean(BookAvailabilityService.class).rebuild();
+		return loans;
+	}
+}
@@ -0,0 +1,86 @@
+package com.br.libraryapi.loadtest;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import lombok.Getter;
+
+/**
+ * Command line options, given as --name=value. Every option has a default, so the harness
+ * also runs without arguments.
+ */
+@Getter
+public class LoadTestOptions {
+
+	private int clients = 32;
+	private int warmupSeconds = 10;
+	private int durationSeconds = 60;
+	private int books = 10000;
+	private int loanedBooks = 2000;
+	private int customers = 1000;
+	private String report = "target/loadtest";
+	private final Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+
+	public LoadTestOptions() {
+		mix.put(Operation.CREATE_BOOK, 5);
+		mix.put(Operation.SEARCH_BOOKS, 40);
+		mix.put(Operation.CREATE_LOAN, 15);
+		mix.put(Operation.RETURN_LOAN, 10);
+		mix.put(Operation.LIST_LOANS, 30);
+	}
+
+	public static LoadTestOptions parse(String[] args) {
+		LoadTestOptions options = new LoadTestOptions();
+		for (String arg : args) {
+			if (!arg.startsWith("--") || !arg.contains("=")) {
+				throw new IllegalArgumentException("Expected --name=value but got " + arg);
+			}
+			String name = arg.substring(2, arg.indexOf('='));
+			String value = arg.substring(arg.indexOf('=') + 1);
+			switch (name) {
+				case "clients":
+					options.clients = Integer.parseInt(value);
+					break;
+				case "warmup":
+					options.warmupSeconds = Integer.parseInt(value);
+					break;
+				case "duration":
+					options.durationSeconds = Integer.parseInt(value);
+					break;
+				case "books":
+					options.books = Integer.parseInt(value);
+					break;
+				case "loaned-books":
+					options.loanedBooks = Integer.parseInt(value);
+					break;
+				case "customers":
+					options.customers = Integer.parseInt(value);
+					break;
+				case "report":
+					options.report = value;
+					break;
+				case "mix":
+					options.parseMix(value);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option --" + name);
+			}
+		}
+		if (options.loanedBooks > options.books) {
+			throw new IllegalArgumentException("--loaned-books cannot exceed --books");
+		}
+		return options;
+	}
+
+	// e.g. search-books:60,list-loans:40 - operations left out get no traffic
+	private void parseMix(String value) {
+		mix.clear();
+		for (String entry : value.split(",")) {
+			String[] parts = entry.trim().split(":");
+			if (parts.length != 2) {
+				throw new IllegalArgumentException("Expected operation:weight but got " + entry);
+			}
+			mix.put(Operation.of(parts[0]), Integer.parseInt(parts[1]));
+		}
+	}
+}
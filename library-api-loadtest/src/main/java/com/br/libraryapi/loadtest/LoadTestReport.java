@@ -0,0 +1,124 @@
+package com.br.libraryapi.loadtest;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.HdrHistogram.Histogram;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Writes report.json, report.html and one HdrHistogram percentile file (.hgrm) per
+ * operation, and prints the summary table. Latencies are reported in milliseconds.
+ */
+public class LoadTestReport {
+
+	private static final double MICROS_PER_MILLI = 1000.0;
+
+	private final LoadTestOptions options;
+	private final Map<Operation, Histogram> histograms = new LinkedHashMap<>();
+	private final Map<Operation, OperationStats> stats;
+
+	public LoadTestReport(LoadTestOptions options, Map<Operation, OperationStats> stats) {
+		this.options = options;
+		this.stats = stats;
+		// each interval histogram can only be taken once
+		stats.forEach( (operation, operationStats) -> histograms.put(operation, operationStats.histogram()) );
+	}
+
+	public void write(Path directory) throws IOException {
+		Files.createDirectories(directory);
+		List<Map<String, Object>> rows = rows();
+
+		Map<String, Object> report = new LinkedHashMap<>();
+		report.put("clients", options.getClients());
+		report.put("durationSeconds", options.getDurationSeconds());
+		report.put("warmupSeconds", options.getWarmupSeconds());
+		report.put("books", options.getBooks());
+		report.put("mix", options.getMix());
+		report.put("operations", rows);
+		new ObjectMapper()
+				.enable(SerializationFeature.INDENT_OUTPUT)
+				.writeValue(directory.resolve("report.json").toFile(), report);
+
+		try (Writer html = Files.newBufferedWriter(directory.resolve("report.html"), StandardCharsets.UTF_8)) {
+			html.write(html(rows));
+		}
+		for (Map.Entry<Operation, Histogram> entry : histograms.entrySet()) {
+			try (PrintStream out = new PrintStream(directory.resolve(entry.getKey().getLabel() + ".hgrm").toFile(), "UTF-8")) {
+				entry.getValue().outputPercentileDistribution(out, MICROS_PER_MILLI);
+			}
+		}
+		System.out.println(text(rows));
+		System.out.println("report written to " + directory.toAbsolutePath());
+	}
+
+	private List<Map<String, Object>> rows() {
+		List<Map<String, Object>> rows = new ArrayList<>();
+		for (Map.Entry<Operation, Histogram> entry : histograms.entrySet()) {
+			Histogram histogram = entry.getValue();
+			OperationStats operationStats = stats.get(entry.getKey());
+			Map<String, Object> row = new LinkedHashMap<>();
+			row.put("operation", entry.getKey().getLabel());
+			row.put("requests", histogram.getTotalCount());
+			row.put("throughput", round((double) histogram.getTotalCount() / options.getDurationSeconds()));
+			row.put("succeeded", operationStats.getSucceeded());
+			row.put("rejected", operationStats.getRejected());
+			row.put("failed", operationStats.getFailed());
+			row.put("p50", millis(histogram.getValueAtPercentile(50)));
+			row.put("p99", millis(histogram.getValueAtPercentile(99)));
+			row.put("p999", millis(histogram.getValueAtPercentile(99.9)));
+			row.put("max", millis(histogram.getMaxValue()));
+			rows.add(row);
+		}
+		return rows;
+	}
+
+	private String text(List<Map<String, Object>> rows) {
+		StringBuilder text = new StringBuilder(String.format("%-14s %10s %10s %9s %9s %9s %9s %9s %9s%n",
+				"operation", "requests", "req/s", "rejected", "failed", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+		for (Map<String, Object> row : rows) {
+			text.append(String.format("%-14s %10s %10s %9s %9s %9s %9s %9s %9s%n", row.get("operation"), row.get("requests"),
+					row.get("throughput"), row.get("rejected"), row.get("failed"), row.get("p50"), row.get("p99"),
+					row.get("p999"), row.get("max")));
+		}
+		return text.toString();
+	}
+
+	private String html(List<Map<String, Object>> rows) {
+		StringBuilder html = new StringBuilder()
+				.append("<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\"><title>library-api load test</title>\n")
+				.append("<style>body{font-family:sans-serif}table{border-collapse:collapse}")
+				.append("td,th{border:1px solid #ccc;padding:4px 8px;text-align:right}th:first-child,td:first-child{text-align:left}</style>\n")
+				.append("</head><body>\n<h1>library-api load test</h1>\n")
+				.append(String.format("<p>%d clients, %ds measured after %ds of warm-up, %d seeded books, mix %s.</p>%n",
+						options.getClients(), options.getDurationSeconds(), options.getWarmupSeconds(), options.getBooks(), options.getMix()))
+				.append("<table>\n<tr><th>operation</th><th>requests</th><th>req/s</th><th>succeeded</th><th>rejected</th>")
+				.append("<th>failed</th><th>p50 ms</th><th>p99 ms</th><th>p99.9 ms</th><th>max ms</th></tr>\n");
+		for (Map<String, Object> row : rows) {
+			html.append("<tr>");
+			for (Object value : row.values()) {
+				html.append("<td>").append(value).append("</td>");
+			}
+			html.append("</tr>\n");
+		}
+		return html.append("</table>\n<p>Full distributions are in the .hgrm files next to this report.</p>\n</body></html>\n").toString();
+	}
+
+	private static double millis(long micros) {
+		return round(micros / MICROS_PER_MILLI);
+	}
+
+	private static double round(double value) {
+		return Math.round(value * 100) / 100.0;
+	}
+}
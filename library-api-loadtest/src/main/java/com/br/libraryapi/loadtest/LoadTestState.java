@@ -0,0 +1,44 @@
+package com.br.libraryapi.loadtest;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Getter;
+
+/**
+ * Data shared by the clients: the size of the seeded data set and the loans still open, so
+ * returns always target a loan that exists.
+ */
+public class LoadTestState {
+
+	@Getter
+	private final int books;
+
+	@Getter
+	private final int customers;
+
+	private final AtomicLong isbns = new AtomicLong();
+	private final ConcurrentLinkedQueue<Long> openLoans = new ConcurrentLinkedQueue<>();
+
+	public LoadTestState(int books, int customers) {
+		this.books = books;
+		this.customers = customers;
+	}
+
+	public String nextIsbn() {
+		return Long.toString(isbns.incrementAndGet());
+	}
+
+	public int randomBook() {
+		return ThreadLocalRandom.current().nextInt(books);
+	}
+
+	public void loaned(Long loanId) {
+		openLoans.add(loanId);
+	}
+
+	public Long nextOpenLoan() {
+		return openLoans.poll();
+	}
+}
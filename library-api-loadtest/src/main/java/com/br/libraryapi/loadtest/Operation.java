@@ -0,0 +1,78 @@
+package com.br.libraryapi.loadtest;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The calls a simulated client makes. Each one returns the HTTP status it got, or
+ * {@link #NOT_CALLED} when there was nothing to do.
+ */
+public enum Operation {
+
+	CREATE_BOOK("create-book") {
+		@Override
+		int call(ApiClient client, LoadTestState state) throws IOException {
+			String isbn = "load-" + state.nextIsbn();
+			return client.post("/api/books", "{\"title\":\"Titulo carga " + isbn + "\",\"author\":\"Autor carga\",\"isbn\":\"" + isbn + "\"}").getStatus();
+		}
+	},
+	SEARCH_BOOKS("search-books") {
+		@Override
+		int call(ApiClient client, LoadTestState state) throws IOException {
+			int book = ThreadLocalRandom.current().nextInt(state.getBooks());
+			return client.get("/api/books?title=Titulo%20" + book + "&size=20").getStatus();
+		}
+	},
+	CREATE_LOAN("create-loan") {
+		@Override
+		int call(ApiClient client, LoadTestState state) throws IOException {
+			int customer = ThreadLocalRandom.current().nextInt(state.getCustomers());
+			ApiClient.Response response = client.post("/api/loans", "{\"isbn\":\"isbn-" + state.randomBook()
+					+ "\",\"customer\":\"Cliente " + customer + "\",\"customerEmail\":\"cliente" + customer + "@email.com\"}");
+			if (response.getStatus() == 201) {
+				state.loaned(Long.valueOf(response.getBody().trim()));
+			}
+			return response.getStatus();
+		}
+	},
+	RETURN_LOAN("return-loan") {
+		@Override
+		int call(ApiClient client, LoadTestState state) throws IOException {
+			Long loan = state.nextOpenLoan();
+			if (loan == null) {
+				return NOT_CALLED;
+			}
+			return client.patch("/api/loans/" + loan, "{\"returned\":true}").getStatus();
+		}
+	},
+	LIST_LOANS("list-loans") {
+		@Override
+		int call(ApiClient client, LoadTestState state) throws IOException {
+			int customer = ThreadLocalRandom.current().nextInt(state.getCustomers());
+			return client.get("/api/loans?customer=Cliente%20" + customer + "&size=20").getStatus();
+		}
+	};
+
+	public static final int NOT_CALLED = -1;
+
+	private final String label;
+
+	Operation(String label) {
+		this.label = label;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+
+	abstract int call(ApiClient client, LoadTestState state) throws IOException;
+
+	public static Operation of(String label) {
+		for (Operation operation : values()) {
+			if (operation.label.equals(label)) {
+				return operation;
+			}
+		}
+		throw new IllegalArgumentException("Unknown operation " + label);
+	}
+}
@@ -0,0 +1,60 @@
+package com.br.libraryapi.loadtest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Latencies, in microseconds, and outcomes of one operation. Recording is lock-free, so
+ * every client thread writes to the same instance.
+ */
+public class OperationStats {
+
+	private static final long HIGHEST_LATENCY = TimeUnit.MINUTES.toMicros(1);
+
+	private final Recorder recorder = new Recorder(HIGHEST_LATENCY, 3);
+	private final LongAdder succeeded = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+
+	/**
+	 * @param status the HTTP status, or 0 when the call did not get a response
+	 */
+	public void record(int status, long latencyNanos) {
+		recorder.recordValue(Math.min(HIGHEST_LATENCY, TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+		if (status >= 200 && status < 400) {
+			succeeded.increment();
+		} else if (status >= 400 && status < 500) {
+			// business rejections such as a book already on loan
+			rejected.increment();
+		} else {
+			failed.increment();
+		}
+	}
+
+	// called when the warm-up ends
+	public void reset() {
+		recorder.reset();
+		succeeded.reset();
+		rejected.reset();
+		failed.reset();
+	}
+
+	public Histogram histogram() {
+		return recorder.getIntervalHistogram();
+	}
+
+	public long getSucceeded() {
+		return succeeded.sum();
+	}
+
+	public long getRejected() {
+		return rejected.sum();
+	}
+
+	public long getFailed() {
+		return failed.sum();
+	}
+}
@@ -1,18 +1,27 @@
 package com.br.libraryapi;
 
-import org.modelmapper.ModelMapper;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
+import com.br.libraryapi.api.mapper.BookMapper;
+import com.br.libraryapi.api.mapper.CustomerMapper;
+import com.br.libraryapi.api.mapper.impl.BookMapperImpl;
+import com.br.libraryapi.api.mapper.impl.CustomerMapperImpl;
+
 @SpringBootApplication
 @EnableScheduling
 public class LibraryApiApplication {
 
 	@Bean
-	public ModelMapper modelMapper() {
-		return new ModelMapper();
+	public BookMapper bookMapper() {
+		return new BookMapperImpl();
+	}
+	
+	@Bean
+	public CustomerMapper customerMapper() {
+		return new CustomerMapperImpl();
 	}
 	
 	public static void main(String[] args) {
@@ -0,0 +1,31 @@
+package com.br.libraryapi.api.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class BookImportResultDTO {
+
+	public static final int MAX_REPORTED_ROWS = 1000;
+	
+	private long total;
+	
+	private long imported;
+	
+	private long duplicated;
+	
+	private long invalid;
+	
+	// rows that were not imported, capped at MAX_REPORTED_ROWS
+	private List<BookImportRowResultDTO> rejected = new ArrayList<>();
+	
+	public void reject(long line, String isbn, String status, String message) {
+		if (rejected.size() < MAX_REPORTED_ROWS) {
+			rejected.add(new BookImportRowResultDTO(line, isbn, status, message));
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package com.br.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class BookImportRow {
+
+	private long line;
+	
+	private BookDTO book;
+	
+	// set when the line could not be parsed
+	private String error;
+	
+	public static BookImportRow of(long line, BookDTO book) {
+		return new BookImportRow(line, book, null);
+	}
+	
+	public static BookImportRow invalid(long line, String error) {
+		return new BookImportRow(line, null, error);
+	}
+}
@@ -0,0 +1,21 @@
+package com.br.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookImportRowResultDTO {
+
+	private long line;
+	
+	private String isbn;
+	
+	private String status;
+	
+	private String message;
+}
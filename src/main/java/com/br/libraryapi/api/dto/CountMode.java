@@ -0,0 +1,22 @@
+package com.br.libraryapi.api.dto;
+
+import com.br.libraryapi.exception.BusinessException;
+
+public enum CountMode {
+
+	// Page with an exact total, one count query per request
+	EXACT,
+	// Slice with hasNext only, no count query
+	NONE,
+	// Page whose total comes from a briefly cached count
+	APPROX;
+	
+	public static CountMode of(String value) {
+		for (CountMode mode : values()) {
+			if (mode.name().equalsIgnoreCase(value)) {
+				return mode;
+			}
+		}
+		throw new BusinessException("Invalid count mode");
+	}
+}
@@ -0,0 +1,29 @@
+package com.br.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoanBatchResultDTO {
+
+	public static final String CREATED = "CREATED";
+	public static final String CONFLICT = "CONFLICT";
+	public static final String NOT_FOUND = "NOT_FOUND";
+	
+	private int index;
+	
+	private String isbn;
+	
+	private String status;
+	
+	private Long id;
+	
+	private String message;
+}
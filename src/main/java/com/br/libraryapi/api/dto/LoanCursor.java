@@ -0,0 +1,44 @@
+package com.br.libraryapi.api.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Base64;
+
+import com.br.libraryapi.exception.BusinessException;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LoanCursor {
+
+	private static final String SEPARATOR = "_";
+
+	private LocalDate loanDate;
+	private Long id;
+
+	public static LoanCursor of(LoanDTO loan) {
+		return new LoanCursor(loan.getLoanDate(), loan.getId());
+	}
+
+	// a loan without a date is encoded with an empty date
+	public String encode() {
+		String raw = (loanDate == null ? "" : loanDate.toString()) + SEPARATOR + id;
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public static LoanCursor decode(String token) {
+		try {
+			String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+			int index = raw.indexOf(SEPARATOR);
+			String date = raw.substring(0, index);
+			return new LoanCursor(date.isEmpty() ? null : LocalDate.parse(date), Long.valueOf(raw.substring(index + 1)));
+		} catch (IllegalArgumentException | DateTimeException | IndexOutOfBoundsException e) {
+			throw new BusinessException("Invalid cursor");
+		}
+	}
+}
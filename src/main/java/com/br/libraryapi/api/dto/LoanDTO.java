@@ -1,5 +1,7 @@
 package com.br.libraryapi.api.dto;
 
+import java.time.LocalDate;
+
 import javax.validation.constraints.NotEmpty;
 
 import lombok.AllArgsConstructor;
@@ -20,6 +22,16 @@ public class LoanDTO {
 	private String customer;
 	@NotEmpty
 	private String customerEmail;
+	private LocalDate loanDate;
 	private BookDTO book;
 
+	public LoanDTO(Long id, String customer, String customerEmail, LocalDate loanDate,
+			Long bookId, String title, String author, String isbn) {
+		this.id = id;
+		this.isbn = isbn;
+		this.customer = customer;
+		this.customerEmail = customerEmail;
+		this.loanDate = loanDate;
+		this.book = new BookDTO(bookId, title, author, isbn);
+	}
 }
@@ -0,0 +1,18 @@
+package com.br.libraryapi.api.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class LoanReturnRequestDTO {
+
+	private List<Long> ids;
+	private List<String> isbns;
+}
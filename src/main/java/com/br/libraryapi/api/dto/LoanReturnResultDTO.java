@@ -0,0 +1,17 @@
+package com.br.libraryapi.api.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+
+@Data
+public class LoanReturnResultDTO {
+
+	private List<Long> returned = new ArrayList<>();
+	private List<Long> alreadyReturned = new ArrayList<>();
+	private List<Long> unknown = new ArrayList<>();
+	
+	// isbns without an open loan
+	private List<String> unmatchedIsbns = new ArrayList<>();
+}
@@ -0,0 +1,51 @@
+package com.br.libraryapi.api.dto;
+
+import java.util.List;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+
+import com.br.libraryapi.api.serializer.PageDTOSerializer;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Page envelope of the list endpoints: page is set for offset pages, next for cursor pages
+ * and total only when the count was requested.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonSerialize(using = PageDTOSerializer.class)
+public class PageDTO<T> {
+
+	// the bounds Spring Data applies to the size of the offset pages
+	public static final int DEFAULT_SIZE = 20;
+	public static final int MAX_SIZE = 2000;
+
+	private List<T> content;
+	private Integer page;
+	private int size;
+	private String next;
+	private boolean hasNext;
+	private Long total;
+
+	public static <T> PageDTO<T> of(Slice<T> slice) {
+		Long total = slice instanceof Page ? ((Page<T>) slice).getTotalElements() : null;
+		return new PageDTO<T>(slice.getContent(), slice.getNumber(), slice.getSize(), null, slice.hasNext(), total);
+	}
+
+	/**
+	 * Size of a cursor page, bounded like the offset pages: the default below one and at most {@link #MAX_SIZE}.
+	 */
+	public static int cursorSize(int size) {
+		return size < 1 ? DEFAULT_SIZE : Math.min(size, MAX_SIZE);
+	}
+
+	public static <T> PageDTO<T> cursor(List<T> content, int size, String next, boolean hasNext) {
+		return new PageDTO<T>(content, null, size, next, hasNext, null);
+	}
+}
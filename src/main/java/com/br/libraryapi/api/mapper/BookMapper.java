@@ -0,0 +1,11 @@
+package com.br.libraryapi.api.mapper;
+
+import com.br.libraryapi.api.dto.BookDTO;
+import com.br.libraryapi.model.entity.Book;
+
+public interface BookMapper {
+
+	BookDTO toDTO(Book book);
+
+	Book toEntity(BookDTO dto);
+}
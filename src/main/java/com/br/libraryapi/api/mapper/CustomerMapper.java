@@ -0,0 +1,9 @@
+package com.br.libraryapi.api.mapper;
+
+import com.br.libraryapi.api.dto.CustomerDTO;
+import com.br.libraryapi.model.entity.Customer;
+
+public interface CustomerMapper {
+
+	CustomerDTO toDTO(Customer customer);
+}
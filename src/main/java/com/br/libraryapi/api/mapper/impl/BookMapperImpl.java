@@ -0,0 +1,29 @@
+package com.br.libraryapi.api.mapper.impl;
+
+import com.br.libraryapi.api.dto.BookDTO;
+import com.br.libraryapi.api.mapper.BookMapper;
+import com.br.libraryapi.model.entity.Book;
+
+public class BookMapperImpl implements BookMapper {
+
+	@Override
+	public BookDTO toDTO(Book book) {
+		if (book == null) {
+			return null;
+		}
+		return new BookDTO(book.getId(), book.getTitle(), book.getAuthor(), book.getIsbn());
+	}
+
+	@Override
+	public Book toEntity(BookDTO dto) {
+		if (dto == null) {
+			return null;
+		}
+		Book book = new Book();
+		book.setId(dto.getId());
+		book.setTitle(dto.getTitle());
+		book.setAuthor(dto.getAuthor());
+		book.setIsbn(dto.getIsbn());
+		return book;
+	}
+}
@@ -0,0 +1,17 @@
+package com.br.libraryapi.api.mapper.impl;
+
+import com.br.libraryapi.api.dto.CustomerDTO;
+import com.br.libraryapi.api.mapper.CustomerMapper;
+import com.br.libraryapi.model.entity.Customer;
+
+public class CustomerMapperImpl implements CustomerMapper {
+
+	@Override
+	public CustomerDTO toDTO(Customer customer) {
+		if (customer == null) {
+			return null;
+		}
+		return new CustomerDTO(customer.getId(), customer.getName(), customer.getEmail(),
+				customer.getOpenLoans(), customer.getOverdueLoans());
+	}
+}
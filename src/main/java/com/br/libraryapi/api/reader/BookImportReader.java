@@ -0,0 +1,184 @@
+package com.br.libraryapi.api.reader;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.springframework.util.StringUtils;
+
+import com.br.libraryapi.api.dto.BookDTO;
+import com.br.libraryapi.api.dto.BookImportRow;
+import com.br.libraryapi.exception.BusinessException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public abstract class BookImportReader implements Iterator<BookImportRow>, Closeable {
+
+	public static final String NDJSON = "application/x-ndjson";
+	public static final String CSV = "text/csv";
+	
+	private final BufferedReader reader;
+	private long line;
+	private BookImportRow current;
+	
+	protected BookImportReader(InputStream in) {
+		this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+	}
+	
+	public static BookImportReader of(InputStream in, String contentType, ObjectMapper objectMapper) {
+		if (contentType != null && contentType.startsWith(NDJSON)) {
+			return new Ndjson(in, objectMapper);
+		}
+		if (contentType != null && contentType.startsWith(CSV)) {
+			return new Csv(in);
+		}
+		throw new BusinessException("Unsupported content type: " + contentType);
+	}
+	
+	// returns null for lines that carry no book, such as a header
+	protected abstract BookImportRow parse(long line, String content);
+	
+	@Override
+	public boolean hasNext() {
+		while (current == null) {
+			String content = readLine();
+			if (content == null) {
+				return false;
+			}
+			line++;
+			if (StringUtils.hasText(content)) {
+				current = parse(line, content);
+			}
+		}
+		return true;
+	}
+	
+	@Override
+	public BookImportRow next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		BookImportRow row = current;
+		current = null;
+		return row;
+	}
+	
+	protected String readLine() {
+		try {
+			return reader.readLine();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+	
+	static class Ndjson extends BookImportReader {
+		
+		private final ObjectMapper objectMapper;
+		
+		Ndjson(InputStream in, ObjectMapper objectMapper) {
+			super(in);
+			this.objectMapper = objectMapper;
+		}
+		
+		@Override
+		protected BookImportRow parse(long line, String content) {
+			try {
+				return BookImportRow.of(line, objectMapper.readValue(content, BookDTO.class));
+			} catch (JsonProcessingException e) {
+				return BookImportRow.invalid(line, "Malformed json");
+			}
+		}
+	}
+	
+	static class Csv extends BookImportReader {
+		
+		private static final List<String> HEADER = Arrays.asList("title", "author", "isbn");
+		
+		private int[] columns;
+		
+		Csv(InputStream in) {
+			super(in);
+		}
+		
+		@Override
+		protected BookImportRow parse(long line, String content) {
+			List<String> values = split(content);
+			if (columns == null) {
+				columns = header(values);
+				return null;
+			}
+			if (values.size() < HEADER.size()) {
+				return BookImportRow.invalid(line, "Expected columns " + HEADER);
+			}
+			BookDTO book = BookDTO.builder()
+					.title(values.get(columns[0]))
+					.author(values.get(columns[1]))
+					.isbn(values.get(columns[2]))
+					.build();
+			return BookImportRow.of(line, book);
+		}
+		
+		private int[] header(List<String> values) {
+			int[] positions = new int[HEADER.size()];
+			for (int i = 0; i < HEADER.size(); i++) {
+				positions[i] = indexOfIgnoreCase(values, HEADER.get(i));
+				if (positions[i] < 0) {
+					throw new BusinessException("Csv header must contain " + HEADER);
+				}
+			}
+			return positions;
+		}
+		
+		private int indexOfIgnoreCase(List<String> values, String name) {
+			for (int i = 0; i < values.size(); i++) {
+				if (name.equalsIgnoreCase(values.get(i))) {
+					return i;
+				}
+			}
+			return -1;
+		}
+		
+		// RFC 4180 fields on a single line: quoted values may contain commas and doubled quotes
+		static List<String> split(String content) {
+			List<String> values = new ArrayList<>();
+			StringBuilder value = new StringBuilder();
+			boolean quoted = false;
+			for (int i = 0; i < content.length(); i++) {
+				char c = content.charAt(i);
+				if (quoted) {
+					if (c == '"' && i + 1 < content.length() && content.charAt(i + 1) == '"') {
+						value.append('"');
+						i++;
+					} else if (c == '"') {
+						quoted = false;
+					} else {
+						value.append(c);
+					}
+				} else if (c == '"') {
+					quoted = true;
+				} else if (c == ',') {
+					values.add(value.toString().trim());
+					value.setLength(0);
+				} else {
+					value.append(c);
+				}
+			}
+			values.add(value.toString().trim());
+			return values;
+		}
+	}
+}
@@ -1,5 +1,8 @@
 package com.br.libraryapi.api.resources;
 
+import java.util.concurrent.RejectedExecutionException;
+
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
@@ -29,6 +32,15 @@ public class ApplicationControllerAdvice {
 		return new ApiErros(ex);
 	}
 	
+	// the database executor is saturated: shed the request instead of queueing it on a Tomcat thread
+	@ExceptionHandler(RejectedExecutionException.class)
+	public ResponseEntity handleRejectedExecutionException( RejectedExecutionException ex) {
+		ResponseStatusException unavailable = new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage());
+		return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+				.header(HttpHeaders.RETRY_AFTER, "1")
+				.body(new ApiErros(unavailable));
+	}
+	
 	@ExceptionHandler(ResponseStatusException.class)
 	public ResponseEntity handleResponseStatusException( ResponseStatusException ex) {
 		return new ResponseEntity(new ApiErros(ex), ex.getStatus());
@@ -0,0 +1,54 @@
+package com.br.libraryapi.api.serializer;
+
+import java.io.IOException;
+
+import com.br.libraryapi.api.dto.PageDTO;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * Writes {@link PageDTO} field by field and skips the fields that do not apply to the page.
+ */
+public class PageDTOSerializer extends StdSerializer<PageDTO<?>> {
+
+	private static final long serialVersionUID = 1L;
+
+	public PageDTOSerializer() {
+		super(PageDTO.class, false);
+	}
+
+	@Override
+	public void serialize(PageDTO<?> page, JsonGenerator gen, SerializerProvider provider) throws IOException {
+		gen.writeStartObject();
+		gen.writeArrayFieldStart("content");
+		// pages hold a single element type, so its serializer is resolved once and not per row
+		Class<?> type = null;
+		JsonSerializer<Object> serializer = null;
+		for (Object item : page.getContent()) {
+			if (item == null) {
+				gen.writeNull();
+				continue;
+			}
+			if (item.getClass() != type) {
+				type = item.getClass();
+				serializer = provider.findTypedValueSerializer(type, true, null);
+			}
+			serializer.serialize(item, gen, provider);
+		}
+		gen.writeEndArray();
+		if (page.getPage() != null) {
+			gen.writeNumberField("page", page.getPage());
+		}
+		gen.writeNumberField("size", page.getSize());
+		if (page.getNext() != null) {
+			gen.writeStringField("next", page.getNext());
+		}
+		gen.writeBooleanField("hasNext", page.isHasNext());
+		if (page.getTotal() != null) {
+			gen.writeNumberField("total", page.getTotal());
+		}
+		gen.writeEndObject();
+	}
+}
@@ -0,0 +1,12 @@
+package com.br.libraryapi.config;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+@EnableCaching
+@Configuration
+public class CacheConfig {
+
+	public static final String BOOKS_BY_ID = "booksById";
+	public static final String BOOKS_BY_ISBN = "booksByIsbn";
+}
@@ -0,0 +1,95 @@
+package com.br.libraryapi.config;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayDataSource;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Read/write split, switched on with application.datasource.routing.enabled. Flyway and every
+ * write use the primary; read-only transactions go to the replicas listed under
+ * application.datasource.replicas.
+ */
+@Configuration
+@ConditionalOnProperty(name = "application.datasource.routing.enabled", havingValue = "true")
+@EnableConfigurationProperties(ReplicaProperties.class)
+public class DataSourceRoutingConfig {
+
+	@Bean
+	@FlywayDataSource
+	@ConfigurationProperties("spring.datasource.hikari")
+	public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+		return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+	}
+
+	@Bean
+	public ReplicaSelector replicaSelector(@Qualifier("primaryDataSource") DataSource primary, ReplicaProperties properties) {
+		List<ReplicaProperties.Replica> configured = properties.getReplicas();
+		Map<String, HikariDataSource> replicas = new LinkedHashMap<>();
+		for (int i = 0; i < configured.size(); i++) {
+			ReplicaProperties.Replica replica = configured.get(i);
+			HikariDataSource dataSource = DataSourceBuilder.create()
+					.type(HikariDataSource.class)
+					.url(replica.getUrl())
+					.username(replica.getUsername())
+					.password(replica.getPassword())
+					.build();
+			dataSource.setPoolName("replica-" + i);
+			dataSource.setMaximumPoolSize(replica.getMaximumPoolSize());
+			dataSource.setReadOnly(true);
+			replicas.put(dataSource.getPoolName(), dataSource);
+		}
+		ReplicaSelector selector = new ReplicaSelector(primary, replicas, properties.getRouting().getMaxLag());
+		// replicas take reads as soon as the application is up, not after the first scheduled check
+		selector.check();
+		return selector;
+	}
+
+	@Bean
+	@Primary
+	public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary, ReplicaSelector selector) {
+		Map<Object, Object> targets = new HashMap<>(selector.getReplicas());
+		targets.put(ReplicaRoutingDataSource.PRIMARY, primary);
+		ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(selector);
+		routing.setTargetDataSources(targets);
+		routing.setDefaultTargetDataSource(primary);
+		routing.afterPropertiesSet();
+		return new LazyConnectionDataSourceProxy(routing);
+	}
+
+	// the session opened in view would otherwise keep the first connection, and its route, for the whole request
+	@Bean
+	public HibernatePropertiesCustomizer routePerTransaction() {
+		return properties -> properties.put(AvailableSettings.CONNECTION_HANDLING,
+				PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION);
+	}
+
+	@Bean
+	public FilterRegistrationBean<ReadYourWritesFilter> readYourWritesFilter(ReplicaProperties properties) {
+		FilterRegistrationBean<ReadYourWritesFilter> registration =
+				new FilterRegistrationBean<>(new ReadYourWritesFilter(properties.getRouting().getStickyWindow()));
+		registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 100);
+		return registration;
+	}
+}
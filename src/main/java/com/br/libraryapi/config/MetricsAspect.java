@@ -0,0 +1,116 @@
+package com.br.libraryapi.config;
+
+import java.lang.reflect.Method;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Times every call to the book, loan, customer and email services and to the repositories,
+ * tagged by class, method, outcome and exception. Histograms are switched on per metric
+ * name in application.properties.
+ */
+@Aspect
+@Component
+@RequiredArgsConstructor
+public class MetricsAspect {
+
+	public static final String SERVICE_TIMER = "library.service";
+	public static final String REPOSITORY_TIMER = "library.repository";
+
+	private final MeterRegistry meterRegistry;
+
+	// resolving a timer through the registry builds and sorts its tags on every call
+	private final ConcurrentMap<Key, Timer> timers = new ConcurrentHashMap<>();
+
+	@Around("execution(* com.br.libraryapi.service.BookService+.*(..)) "
+			+ "|| execution(* com.br.libraryapi.service.LoanService+.*(..)) "
+			+ "|| execution(* com.br.libraryapi.service.CustomerService+.*(..)) "
+			+ "|| execution(* com.br.libraryapi.service.EmailService+.*(..))")
+	public Object timeService(ProceedingJoinPoint joinPoint) throws Throwable {
+		return time(SERVICE_TIMER, joinPoint);
+	}
+
+	@Around("execution(* com.br.libraryapi.model.repository.*Repository+.*(..))")
+	public Object timeRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+		return time(REPOSITORY_TIMER, joinPoint);
+	}
+
+	private Object time(String name, ProceedingJoinPoint joinPoint) throws Throwable {
+		long start = System.nanoTime();
+		Class<? extends Throwable> exception = null;
+		try {
+			return joinPoint.proceed();
+		} catch (Throwable e) {
+			exception = e.getClass();
+			throw e;
+		} finally {
+			long elapsed = System.nanoTime() - start;
+			Key key = new Key(name, joinPoint.getThis().getClass(), ((MethodSignature) joinPoint.getSignature()).getMethod(), exception);
+			timers.computeIfAbsent(key, k -> register(k, joinPoint)).record(elapsed, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private Timer register(Key key, ProceedingJoinPoint joinPoint) {
+		return Timer.builder(key.name)
+				.tag("class", className(key.name, joinPoint))
+				.tag("method", key.method.getName())
+				.tag("outcome", key.exception == null ? "success" : "error")
+				.tag("exception", key.exception == null ? "none" : key.exception.getSimpleName())
+				.register(meterRegistry);
+	}
+
+	// repositories are proxies over SimpleJpaRepository, so they are named after their interface
+	private String className(String name, ProceedingJoinPoint joinPoint) {
+		if (REPOSITORY_TIMER.equals(name)) {
+			for (Class<?> type : ClassUtils.getAllInterfacesForClassAsSet(joinPoint.getThis().getClass())) {
+				if (type.getName().startsWith("com.br.libraryapi.model.repository.")) {
+					return type.getSimpleName();
+				}
+			}
+		}
+		return AopUtils.getTargetClass(joinPoint.getTarget()).getSimpleName();
+	}
+
+	private static final class Key {
+
+		private final String name;
+		private final Class<?> type;
+		private final Method method;
+		private final Class<? extends Throwable> exception;
+
+		private Key(String name, Class<?> type, Method method, Class<? extends Throwable> exception) {
+			this.name = name;
+			this.type = type;
+			this.method = method;
+			this.exception = exception;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return type == key.type && method.equals(key.method) && exception == key.exception && name.equals(key.name);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(name, type, method, exception);
+		}
+	}
+}
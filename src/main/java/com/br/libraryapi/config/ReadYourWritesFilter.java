@@ -0,0 +1,69 @@
+package com.br.libraryapi.config;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Keeps a client on the primary for a while after it wrote, so it reads its own writes even
+ * while the replicas catch up. The deadline travels in a cookie set on the first write.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+	public static final String COOKIE = "library-primary-until";
+
+	private final long windowMillis;
+
+	public ReadYourWritesFilter(Duration window) {
+		this.windowMillis = window.toMillis();
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		ReplicaRoutingContext.begin(isSticky(request), () -> stick(response));
+		try {
+			chain.doFilter(request, response);
+		} finally {
+			ReplicaRoutingContext.clear();
+		}
+	}
+
+	private boolean isSticky(HttpServletRequest request) {
+		Cookie[] cookies = request.getCookies();
+		if (cookies == null) {
+			return false;
+		}
+		long now = System.currentTimeMillis();
+		for (Cookie cookie : cookies) {
+			if (COOKIE.equals(cookie.getName())) {
+				try {
+					long until = Long.parseLong(cookie.getValue());
+					// the value comes from the client, so it cannot pin it for longer than a window
+					return until > now && until <= now + windowMillis;
+				} catch (NumberFormatException e) {
+					return false;
+				}
+			}
+		}
+		return false;
+	}
+
+	private void stick(HttpServletResponse response) {
+		if (response.isCommitted()) {
+			return;
+		}
+		Cookie cookie = new Cookie(COOKIE, Long.toString(System.currentTimeMillis() + windowMillis));
+		cookie.setPath("/");
+		cookie.setHttpOnly(true);
+		cookie.setMaxAge((int) Math.max(1, (windowMillis + 999) / 1000));
+		response.addCookie(cookie);
+	}
+}
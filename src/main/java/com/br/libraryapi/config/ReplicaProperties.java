@@ -0,0 +1,43 @@
+package com.br.libraryapi.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Replica datasources and routing settings, under application.datasource. The primary is
+ * still configured through spring.datasource.
+ */
+@Data
+@ConfigurationProperties("application.datasource")
+public class ReplicaProperties {
+
+	private List<Replica> replicas = new ArrayList<>();
+
+	private Routing routing = new Routing();
+
+	@Data
+	public static class Replica {
+
+		private String url;
+		private String username = "sa";
+		private String password = "";
+		private int maximumPoolSize = 10;
+	}
+
+	@Data
+	public static class Routing {
+
+		private boolean enabled;
+
+		/** Replicas whose heartbeat is older than this stop receiving reads. */
+		private Duration maxLag = Duration.ofSeconds(5);
+
+		/** How long a client keeps reading from the primary after one of its writes. */
+		private Duration stickyWindow = Duration.ofSeconds(5);
+	}
+}
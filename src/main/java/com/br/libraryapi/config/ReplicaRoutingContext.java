@@ -0,0 +1,70 @@
+package com.br.libraryapi.config;
+
+import java.util.function.Supplier;
+
+/**
+ * Per-thread routing state of the current request: whether reads must stay on the primary
+ * and what to do on the first write.
+ */
+public final class ReplicaRoutingContext {
+
+	private static final ThreadLocal<State> STATE = new ThreadLocal<>();
+
+	private ReplicaRoutingContext() {
+	}
+
+	public static void begin(boolean primaryRequired, Runnable onFirstWrite) {
+		STATE.set(new State(primaryRequired, onFirstWrite));
+	}
+
+	public static void clear() {
+		STATE.remove();
+	}
+
+	public static boolean isPrimaryRequired() {
+		State state = STATE.get();
+		return state != null && state.primaryRequired;
+	}
+
+	// later reads of the same request must see the write, whatever the cookie said
+	static void wrote() {
+		State state = STATE.get();
+		if (state == null) {
+			return;
+		}
+		state.primaryRequired = true;
+		Runnable onFirstWrite = state.onFirstWrite;
+		state.onFirstWrite = null;
+		if (onFirstWrite != null) {
+			onFirstWrite.run();
+		}
+	}
+
+	/**
+	 * Carries a pinned primary over to the thread that runs the call.
+	 */
+	public static <T> Supplier<T> propagate(Supplier<T> call) {
+		if (!isPrimaryRequired()) {
+			return call;
+		}
+		return () -> {
+			begin(true, null);
+			try {
+				return call.get();
+			} finally {
+				clear();
+			}
+		};
+	}
+
+	private static final class State {
+
+		private boolean primaryRequired;
+		private Runnable onFirstWrite;
+
+		private State(boolean primaryRequired, Runnable onFirstWrite) {
+			this.primaryRequired = primaryRequired;
+			this.onFirstWrite = onFirstWrite;
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package com.br.libraryapi.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Sends read-only transactions to a healthy replica and everything else to the primary. It
+ * must sit behind a LazyConnectionDataSourceProxy: the JPA transaction manager opens the
+ * connection before the read-only flag is bound to the thread.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+	public static final String PRIMARY = "primary";
+
+	private final ReplicaSelector selector;
+
+	public ReplicaRoutingDataSource(ReplicaSelector selector) {
+		this.selector = selector;
+	}
+
+	@Override
+	protected Object determineCurrentLookupKey() {
+		if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+			if (TransactionSynchronizationManager.isActualTransactionActive()) {
+				ReplicaRoutingContext.wrote();
+			}
+			return PRIMARY;
+		}
+		if (ReplicaRoutingContext.isPrimaryRequired()) {
+			return PRIMARY;
+		}
+		String replica = selector.next();
+		return replica == null ? PRIMARY : replica;
+	}
+}
@@ -0,0 +1,95 @@
+package com.br.libraryapi.config;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Round-robin over the replicas that are currently in sync. The primary bumps a heartbeat row
+ * and each replica's lag is how old its copy of that row is; replicas that lag more than the
+ * limit, or do not answer, are skipped until a later check finds them healthy.
+ */
+@Slf4j
+public class ReplicaSelector {
+
+	private static final String HEARTBEAT = "update replication_heartbeat set beat_at = ? where id = 1";
+	private static final String LAST_BEAT = "select beat_at from replication_heartbeat where id = 1";
+
+	private final JdbcTemplate primary;
+	private final Map<String, HikariDataSource> replicas;
+	private final long maxLagMillis;
+	private final AtomicInteger next = new AtomicInteger();
+
+	private volatile List<String> healthy = Collections.emptyList();
+
+	public ReplicaSelector(DataSource primary, Map<String, HikariDataSource> replicas, Duration maxLag) {
+		this.primary = new JdbcTemplate(primary);
+		this.replicas = new LinkedHashMap<>(replicas);
+		this.maxLagMillis = maxLag.toMillis();
+	}
+
+	public Map<String, HikariDataSource> getReplicas() {
+		return Collections.unmodifiableMap(replicas);
+	}
+
+	/**
+	 * @return the replica key for the next read, or null when no replica is in sync
+	 */
+	public String next() {
+		List<String> candidates = healthy;
+		if (candidates.isEmpty()) {
+			return null;
+		}
+		return candidates.get(Math.floorMod(next.getAndIncrement(), candidates.size()));
+	}
+
+	@Scheduled(fixedDelayString = "${application.datasource.routing.lag-check-interval:1000}")
+	public void check() {
+		long now = System.currentTimeMillis();
+		try {
+			primary.update(HEARTBEAT, new Timestamp(now));
+		} catch (RuntimeException e) {
+			log.warn("could not write the replication heartbeat: {}", e.getMessage());
+		}
+		List<String> inSync = new ArrayList<>();
+		replicas.forEach( (key, replica) -> {
+			Long lag = lag(key, replica, now);
+			if (lag != null && lag <= maxLagMillis) {
+				inSync.add(key);
+			} else if (healthy.contains(key)) {
+				log.warn("{} left the read pool, lag {} ms", key, lag);
+			}
+		});
+		healthy = Collections.unmodifiableList(inSync);
+	}
+
+	private Long lag(String key, DataSource replica, long now) {
+		try {
+			Timestamp beat = new JdbcTemplate(replica).queryForObject(LAST_BEAT, Timestamp.class);
+			return beat == null ? null : Math.max(0, now - beat.getTime());
+		} catch (RuntimeException e) {
+			log.warn("{} did not answer the lag check: {}", key, e.getMessage());
+			return null;
+		}
+	}
+
+	@PreDestroy
+	public void close() {
+		replicas.values().forEach(HikariDataSource::close);
+	}
+}
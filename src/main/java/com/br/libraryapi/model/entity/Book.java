@@ -9,24 +9,33 @@ import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.OneToMany;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import javax.persistence.Version;
 
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity
-@Table
+@Table(uniqueConstraints = @UniqueConstraint(name = Book.ISBN_CONSTRAINT, columnNames = "isbn"))
 public class Book {
 	
+	// created by V2__add_query_indexes, violated by a second book with the same isbn
+	public static final String ISBN_CONSTRAINT = "uk_book_isbn";
+	
 	@Id
 	@Column
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "book_seq")
+	@SequenceGenerator(name = "book_seq", sequenceName = "book_seq", allocationSize = 50)
 	private Long id;
 	
 	@Column
@@ -38,6 +47,13 @@ public class Book {
 	@Column
 	private String isbn;
 	
+	@Version
+	@Column
+	private Long version;
+	
+	// left out of toString/equals/hashCode, which would otherwise load every loan of the book
+	@ToString.Exclude
+	@EqualsAndHashCode.Exclude
 	@OneToMany( mappedBy = "book", fetch = FetchType.LAZY )
 	private List<Loan> loans;
 	
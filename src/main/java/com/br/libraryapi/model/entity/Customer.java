@@ -0,0 +1,53 @@
+package com.br.libraryapi.model.entity;
+
+import java.util.Locale;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A borrower, identified by email. openLoans and overdueLoans are kept up to date by the
+ * transactions that open, return or mark loans overdue, so they are read without counting.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+public class Customer {
+
+	// created by V7__create_customer, violated when two loans create the same customer at once
+	public static final String EMAIL_CONSTRAINT = "uk_customer_email";
+
+	@Id
+	@Column
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "customer_seq")
+	@SequenceGenerator(name = "customer_seq", sequenceName = "customer_seq", allocationSize = 50)
+	private Long id;
+	
+	@Column(length = 100)
+	private String name;
+	
+	@Column(nullable = false, unique = true)
+	private String email;
+	
+	@Column(name = "open_loans", nullable = false)
+	private int openLoans;
+	
+	@Column(name = "overdue_loans", nullable = false)
+	private int overdueLoans;
+	
+	// the unique key, so that the same address typed differently is one customer
+	public static String normalizeEmail(String email) {
+		return email == null ? null : email.trim().toLowerCase(Locale.ROOT);
+	}
+}
@@ -0,0 +1,72 @@
+package com.br.libraryapi.model.entity;
+
+import java.time.LocalDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "email_outbox", indexes = @Index(name = "idx_email_outbox_status", columnList = "status, next_attempt_at"))
+public class EmailOutbox {
+
+	@Id
+	@Column
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	private Long id;
+	
+	@Column(nullable = false)
+	private String recipient;
+	
+	@Column
+	private String subject;
+	
+	@Column(length = 2000)
+	private String body;
+	
+	@Column(name = "loan_id")
+	private Long loanId;
+	
+	// recipient, loan and day: the same reminder is never queued twice
+	@Column(name = "dedup_key", nullable = false, unique = true)
+	private String dedupKey;
+	
+	@Enumerated(EnumType.STRING)
+	@Column(length = 20, nullable = false)
+	private EmailOutboxStatus status;
+	
+	@Column(nullable = false)
+	private Integer attempts;
+	
+	// next delivery attempt, or the end of the claim while SENDING
+	@Column(name = "next_attempt_at", nullable = false)
+	private LocalDateTime nextAttemptAt;
+	
+	@Column(name = "created_at", nullable = false)
+	private LocalDateTime createdAt;
+	
+	@Column(name = "sent_at")
+	private LocalDateTime sentAt;
+	
+	@Column(name = "last_error", length = 500)
+	private String lastError;
+	
+	// set by the claim that owns the mail while SENDING, only that claim can complete it
+	@Column(name = "claim_token", length = 36)
+	private String claimToken;
+}
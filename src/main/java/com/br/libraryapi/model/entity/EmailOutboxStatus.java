@@ -0,0 +1,9 @@
+package com.br.libraryapi.model.entity;
+
+public enum EmailOutboxStatus {
+
+	PENDING,
+	SENDING,
+	SENT,
+	DEAD
+}
@@ -0,0 +1,50 @@
+package com.br.libraryapi.model.entity;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One partition of a scheduled job. A node owns it while leaseUntil is in the future; a run
+ * is done once every partition has completedAt set for that runDate.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "job_lease", indexes = @Index(name = "idx_job_lease_job", columnList = "job, partition_no"))
+public class JobLease {
+
+	@Id
+	@Column(length = 120)
+	private String name;
+	
+	@Column(nullable = false, length = 100)
+	private String job;
+	
+	@Column(name = "partition_no", nullable = false)
+	private Integer partitionNo;
+	
+	@Column(name = "run_date")
+	private LocalDate runDate;
+	
+	@Column(length = 100)
+	private String owner;
+	
+	@Column(name = "lease_until")
+	private LocalDateTime leaseUntil;
+	
+	@Column(name = "completed_at")
+	private LocalDateTime completedAt;
+}
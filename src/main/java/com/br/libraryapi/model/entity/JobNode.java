@@ -0,0 +1,32 @@
+package com.br.libraryapi.model.entity;
+
+import java.time.LocalDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * An application instance taking part in scheduled jobs, alive while its heartbeat is recent.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "job_node")
+public class JobNode {
+
+	@Id
+	@Column(name = "node_id", length = 100)
+	private String nodeId;
+	
+	@Column(name = "heartbeat_at", nullable = false)
+	private LocalDateTime heartbeatAt;
+}
@@ -0,0 +1,36 @@
+package com.br.libraryapi.model.entity;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * How far a scheduled job has got, so the next run only looks at what changed since.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "job_watermark")
+public class JobWatermark {
+
+	@Id
+	@Column(length = 100)
+	private String name;
+	
+	@Column(nullable = false)
+	private LocalDate watermark;
+	
+	@Column(name = "updated_at", nullable = false)
+	private LocalDateTime updatedAt;
+}
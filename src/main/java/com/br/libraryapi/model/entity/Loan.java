@@ -1,30 +1,59 @@
 package com.br.libraryapi.model.entity;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.OptimisticLockType;
+import org.hibernate.annotations.OptimisticLocking;
 
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
 @Entity
+// updates check the changed columns still hold the loaded values, so a loan is returned only once
+@DynamicUpdate
+@OptimisticLocking(type = OptimisticLockType.DIRTY)
+@Table(indexes = {
+		@Index(name = "idx_loan_book", columnList = "id_book"),
+		@Index(name = "idx_loan_customer", columnList = "customer"),
+		@Index(name = "idx_loan_customer_id", columnList = "customer_id, loan_date"),
+		@Index(name = "idx_loan_loan_date_returned", columnList = "loan_date, returned"),
+		@Index(name = "idx_loan_due_date_returned", columnList = "due_date, returned"),
+		@Index(name = "idx_loan_last_notified_at_returned", columnList = "last_notified_at, returned") })
 public class Loan {
 
+	// loans saved without a policy, such as seeds and imports, are due after this many days
+	public static final int DEFAULT_LOAN_DAYS = 4;
+
+	// created by V1__create_schema, violated by a second open loan of the same book
+	public static final String OPEN_BOOK_CONSTRAINT = "uk_loan_open_book_id";
+
 	@Id
 	@Column
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "loan_seq")
+	@SequenceGenerator(name = "loan_seq", sequenceName = "loan_seq", allocationSize = 50)
 	private Long id;
 	
 	@Column(length = 100)
@@ -32,14 +61,50 @@ public class Loan {
 	
 	@Column(name = "customer_email")
 	private String customerEmail;
+	
+	@Column(name = "customer_id")
+	private Long customerId;
 
+	// printing a loan must not initialize the lazy book
+	@ToString.Exclude
 	@JoinColumn(name = "id_book")
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	private Book book;
 	
-	@Column
+	@Column(name = "loan_date")
 	private LocalDate loanDate;
 	
+	@Column(name = "due_date")
+	private LocalDate dueDate;
+	
 	@Column
 	private Boolean returned;
+	
+	// when the borrower was last told the loan is late, null until the first notice
+	@Column(name = "last_notified_at")
+	private LocalDateTime lastNotifiedAt;
+	
+	// set once by the nightly job, counted in the customer's overdueLoans while the loan is open
+	@Column(nullable = false)
+	private Boolean overdue;
+	
+	// book id while the loan is open, so the database allows one open loan per book
+	@Column(name = "open_book_id", unique = true)
+	private Long openBookId;
+	
+	@PrePersist
+	void prePersist() {
+		if (dueDate == null && loanDate != null) {
+			dueDate = loanDate.plusDays(DEFAULT_LOAN_DAYS);
+		}
+		if (overdue == null) {
+			overdue = false;
+		}
+		updateOpenBookId();
+	}
+	
+	@PreUpdate
+	void updateOpenBookId() {
+		openBookId = book != null && !Boolean.TRUE.equals(returned) ? book.getId() : null;
+	}
 }
@@ -0,0 +1,14 @@
+package com.br.libraryapi.model.repository;
+
+/**
+ * Changes whenever a book is created, updated or deleted: a new book raises the max id, a
+ * deletion alone lowers the count and an update raises the sum of the versions.
+ */
+public interface BookIndexState {
+
+	Long getCount();
+
+	Long getMaxId();
+
+	Long getVersionSum();
+}
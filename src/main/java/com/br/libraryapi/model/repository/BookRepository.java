@@ -1,14 +1,40 @@
 package com.br.libraryapi.model.repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import com.br.libraryapi.api.dto.BookDTO;
 import com.br.libraryapi.model.entity.Book;
 
-public interface BookRepository extends JpaRepository<Book, Long> {
+public interface BookRepository extends JpaRepository<Book, Long>, BookRepositoryCustom {
 	
 	boolean existsByIsbn(String isbn);
 
 	Optional<Book> findByIsbn(String isbn);
+
+	@QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.READ_ONLY, value = "true"))
+	List<Book> findByIsbnIn(Collection<String> isbns);
+
+	@Query(value = "select new com.br.libraryapi.api.dto.BookDTO(b.id, b.title, b.author, b.isbn) "
+			+ "from Book b where b.id in :ids")
+	List<BookDTO> findDTOByIdIn(@Param("ids") Collection<Long> ids);
+
+	Slice<Book> findByIdGreaterThan(Long id, Pageable pageable);
+
+	@Query(value = "select count(b) as count, coalesce(max(b.id), 0) as maxId, "
+			+ "coalesce(sum(coalesce(b.version, 0)), 0) as versionSum from Book b")
+	BookIndexState findIndexState();
+
+	@Query(value = "select b.isbn from Book b where b.isbn in :isbns")
+	List<String> findExistingIsbns(@Param("isbns") Collection<String> isbns);
 }
@@ -0,0 +1,15 @@
+package com.br.libraryapi.model.repository;
+
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+
+import com.br.libraryapi.api.dto.BookDTO;
+import com.br.libraryapi.model.entity.Book;
+
+public interface BookRepositoryCustom {
+
+	Slice<Book> findSlice(Example<Book> example, Pageable pageable);
+
+	Slice<BookDTO> findDTOSlice(Example<Book> example, Pageable pageable);
+}
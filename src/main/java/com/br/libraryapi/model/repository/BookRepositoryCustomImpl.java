@@ -0,0 +1,73 @@
+package com.br.libraryapi.model.repository;
+
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+import org.hibernate.annotations.QueryHints;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.jpa.convert.QueryByExamplePredicateBuilder;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+
+import com.br.libraryapi.api.dto.BookDTO;
+import com.br.libraryapi.model.entity.Book;
+
+public class BookRepositoryCustomImpl implements BookRepositoryCustom {
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	// same predicate as findAll(Example, Pageable), reading one extra row instead of counting
+	@Override
+	public Slice<Book> findSlice(Example<Book> example, Pageable pageable) {
+		CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Book> query = builder.createQuery(Book.class);
+		Root<Book> root = query.from(Book.class);
+		
+		TypedQuery<Book> typedQuery = createQuery(query, root, example, pageable);
+		typedQuery.setHint(QueryHints.READ_ONLY, true);
+		return slice(typedQuery, pageable);
+	}
+
+	// a constructor expression, so the rows never become managed entities
+	@Override
+	public Slice<BookDTO> findDTOSlice(Example<Book> example, Pageable pageable) {
+		CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+		CriteriaQuery<BookDTO> query = builder.createQuery(BookDTO.class);
+		Root<Book> root = query.from(Book.class);
+		query.select(builder.construct(BookDTO.class,
+				root.get("id"), root.get("title"), root.get("author"), root.get("isbn")));
+		
+		return slice(createQuery(query, root, example, pageable), pageable);
+	}
+
+	private <T> TypedQuery<T> createQuery(CriteriaQuery<T> query, Root<Book> root, Example<Book> example, Pageable pageable) {
+		CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+		Predicate predicate = QueryByExamplePredicateBuilder.getPredicate(root, builder, example);
+		if (predicate != null) {
+			query.where(predicate);
+		}
+		query.orderBy(QueryUtils.toOrders(pageable.getSort(), root, builder));
+		return entityManager.createQuery(query);
+	}
+
+	private <T> Slice<T> slice(TypedQuery<T> typedQuery, Pageable pageable) {
+		if (pageable.isUnpaged()) {
+			return new SliceImpl<T>(typedQuery.getResultList(), pageable, false);
+		}
+		typedQuery.setFirstResult((int) pageable.getOffset());
+		typedQuery.setMaxResults(pageable.getPageSize() + 1);
+		List<T> content = typedQuery.getResultList();
+		boolean hasNext = content.size() > pageable.getPageSize();
+		return new SliceImpl<T>(hasNext ? content.subList(0, pageable.getPageSize()) : content, pageable, hasNext);
+	}
+}
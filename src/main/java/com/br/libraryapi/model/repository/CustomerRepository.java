@@ -0,0 +1,35 @@
+package com.br.libraryapi.model.repository;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.br.libraryapi.model.entity.Customer;
+
+public interface CustomerRepository extends JpaRepository<Customer, Long> {
+
+	@Query(value = "select c from Customer c where c.email in :emails")
+	List<Customer> findByEmailIn(@Param("emails") Collection<String> emails);
+
+	// counters only move together with the loans they count
+	@Transactional(propagation = Propagation.MANDATORY)
+	@Modifying
+	@Query(value = "update Customer c set c.openLoans = c.openLoans + :openLoans, "
+			+ "c.overdueLoans = c.overdueLoans + :overdueLoans where c.id = :id")
+	int addLoans(@Param("id") Long id, @Param("openLoans") int openLoans, @Param("overdueLoans") int overdueLoans);
+
+	// counts the loans again, for when the rows changed by a bulk update are not known
+	@Transactional(propagation = Propagation.MANDATORY)
+	@Modifying
+	@Query(value = "update Customer c set "
+			+ "c.openLoans = (select count(l) from Loan l where l.customerId = c.id and " + LoanRepository.NOT_RETURNED + "), "
+			+ "c.overdueLoans = (select count(l) from Loan l where l.customerId = c.id and l.overdue = true and " + LoanRepository.NOT_RETURNED + ") "
+			+ "where c.id in :ids")
+	int recount(@Param("ids") Collection<Long> ids);
+}
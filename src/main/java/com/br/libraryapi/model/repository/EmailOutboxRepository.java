@@ -0,0 +1,67 @@
+package com.br.libraryapi.model.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.br.libraryapi.model.entity.EmailOutbox;
+import com.br.libraryapi.model.entity.EmailOutboxStatus;
+
+public interface EmailOutboxRepository extends JpaRepository<EmailOutbox, Long> {
+
+	@Query(value = "select o.dedupKey from EmailOutbox o where o.dedupKey in :keys")
+	List<String> findExistingDedupKeys(@Param("keys") Collection<String> keys);
+
+	@Query(value = "select o.id from EmailOutbox o where o.status in :statuses and o.nextAttemptAt <= :now order by o.id")
+	List<Long> findReadyIds(
+			@Param("statuses") Collection<EmailOutboxStatus> statuses,
+			@Param("now") LocalDateTime now,
+			Pageable pageable);
+
+	// rows another poller took since they were read no longer match, so they are left to it
+	@Transactional
+	@Modifying
+	@Query(value = "update EmailOutbox o set o.status = :sending, o.nextAttemptAt = :claimedUntil, o.claimToken = :token "
+			+ "where o.id in :ids and o.status in :statuses and o.nextAttemptAt <= :now")
+	int claim(
+			@Param("ids") Collection<Long> ids,
+			@Param("sending") EmailOutboxStatus sending,
+			@Param("claimedUntil") LocalDateTime claimedUntil,
+			@Param("token") String token,
+			@Param("statuses") Collection<EmailOutboxStatus> statuses,
+			@Param("now") LocalDateTime now);
+
+	@Query(value = "select o from EmailOutbox o where o.id in :ids and o.claimToken = :token order by o.id")
+	List<EmailOutbox> findClaimed(@Param("ids") Collection<Long> ids, @Param("token") String token);
+
+	@Transactional
+	@Modifying
+	@Query(value = "update EmailOutbox o set o.status = :sent, o.attempts = o.attempts + 1, o.sentAt = :sentAt, "
+			+ "o.lastError = null, o.claimToken = null where o.id in :ids and o.claimToken = :token")
+	int completeSent(
+			@Param("ids") Collection<Long> ids,
+			@Param("token") String token,
+			@Param("sent") EmailOutboxStatus sent,
+			@Param("sentAt") LocalDateTime sentAt);
+
+	@Transactional
+	@Modifying
+	@Query(value = "update EmailOutbox o set o.status = :status, o.attempts = :attempts, o.nextAttemptAt = :nextAttemptAt, "
+			+ "o.lastError = :lastError, o.claimToken = null where o.id = :id and o.claimToken = :token")
+	int completeFailed(
+			@Param("id") Long id,
+			@Param("token") String token,
+			@Param("status") EmailOutboxStatus status,
+			@Param("attempts") Integer attempts,
+			@Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+			@Param("lastError") String lastError);
+
+	long countByStatus(EmailOutboxStatus status);
+}
@@ -0,0 +1,111 @@
+package com.br.libraryapi.model.repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.br.libraryapi.model.entity.JobLease;
+
+/**
+ * Every change to a lease is a conditional update, so when two nodes race for the same
+ * partition only one of them sees a row updated. Reads are read-write transactions so that
+ * they stay on the primary when replicas are enabled.
+ */
+public interface JobLeaseRepository extends JpaRepository<JobLease, String> {
+
+	@Transactional
+	@Query(value = "select j from JobLease j where j.job = :job and j.partitionNo < :partitions order by j.partitionNo")
+	List<JobLease> findPartitions(@Param("job") String job, @Param("partitions") int partitions);
+
+	// partitions of an open run that nobody holds: unclaimed, released after a failure or left by a dead node
+	@Transactional
+	@Query(value = "select j from JobLease j where j.job = :job and j.partitionNo < :partitions and j.runDate is not null "
+			+ "and j.completedAt is null and (j.leaseUntil is null or j.leaseUntil < :now) order by j.partitionNo")
+	List<JobLease> findClaimable(
+			@Param("job") String job,
+			@Param("partitions") int partitions,
+			@Param("now") LocalDateTime now);
+
+	@Transactional
+	@Query(value = "select count(j) from JobLease j where j.job = :job and j.partitionNo < :partitions "
+			+ "and (j.runDate is null or j.runDate <> :runDate or j.completedAt is null)")
+	long countPending(
+			@Param("job") String job,
+			@Param("partitions") int partitions,
+			@Param("runDate") LocalDate runDate);
+
+	@Transactional
+	@Modifying
+	@Query(value = "insert into job_lease (name, job, partition_no) values (:name, :job, :partitionNo)", nativeQuery = true)
+	int insert(@Param("name") String name, @Param("job") String job, @Param("partitionNo") int partitionNo);
+
+	// only the first node to open a run resets the partitions, a finished run is never opened again
+	@Transactional
+	@Modifying
+	@Query(value = "update JobLease j set j.runDate = :runDate, j.owner = null, j.leaseUntil = :reservedUntil, j.completedAt = null "
+			+ "where j.job = :job and j.partitionNo < :partitions and (j.runDate is null or j.runDate < :runDate)")
+	int openRun(
+			@Param("job") String job,
+			@Param("partitions") int partitions,
+			@Param("runDate") LocalDate runDate,
+			@Param("reservedUntil") LocalDateTime reservedUntil);
+
+	// the node a partition belongs to may claim it while it is still reserved
+	@Transactional
+	@Modifying
+	@Query(value = "update JobLease j set j.owner = :owner, j.leaseUntil = :leaseUntil "
+			+ "where j.name = :name and j.runDate = :runDate and j.completedAt is null and j.owner is null")
+	int claimOpened(
+			@Param("name") String name,
+			@Param("runDate") LocalDate runDate,
+			@Param("owner") String owner,
+			@Param("leaseUntil") LocalDateTime leaseUntil);
+
+	@Transactional
+	@Modifying
+	@Query(value = "update JobLease j set j.owner = :owner, j.leaseUntil = :leaseUntil "
+			+ "where j.name = :name and j.runDate = :runDate and j.completedAt is null "
+			+ "and (j.leaseUntil is null or j.leaseUntil < :now)")
+	int claim(
+			@Param("name") String name,
+			@Param("runDate") LocalDate runDate,
+			@Param("owner") String owner,
+			@Param("leaseUntil") LocalDateTime leaseUntil,
+			@Param("now") LocalDateTime now);
+
+	@Transactional
+	@Modifying
+	@Query(value = "update JobLease j set j.leaseUntil = :leaseUntil where j.owner = :owner and j.completedAt is null")
+	int renew(@Param("owner") String owner, @Param("leaseUntil") LocalDateTime leaseUntil);
+
+	@Transactional
+	@Modifying
+	@Query(value = "update JobLease j set j.completedAt = :now, j.owner = null, j.leaseUntil = null "
+			+ "where j.name = :name and j.owner = :owner")
+	int complete(@Param("name") String name, @Param("owner") String owner, @Param("now") LocalDateTime now);
+
+	// when the last partitions complete together on two nodes, only the one that flags partition 0 finishes the run
+	@Transactional
+	@Modifying
+	@Query(value = "update JobLease j set j.owner = :owner where j.job = :job and j.partitionNo = 0 "
+			+ "and j.runDate = :runDate and j.completedAt is not null and j.owner is null")
+	int finishRun(@Param("job") String job, @Param("runDate") LocalDate runDate, @Param("owner") String owner);
+
+	// the partition can be claimed again, by any node, once retryAt has passed
+	@Transactional
+	@Modifying
+	@Query(value = "update JobLease j set j.owner = null, j.leaseUntil = :retryAt "
+			+ "where j.name = :name and j.owner = :owner")
+	int release(@Param("name") String name, @Param("owner") String owner, @Param("retryAt") LocalDateTime retryAt);
+
+	@Transactional
+	@Modifying
+	@Query(value = "update JobLease j set j.owner = null, j.leaseUntil = null where j.owner = :owner and j.completedAt is null")
+	int releaseAll(@Param("owner") String owner);
+}
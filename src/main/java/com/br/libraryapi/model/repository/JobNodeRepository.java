@@ -0,0 +1,34 @@
+package com.br.libraryapi.model.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.br.libraryapi.model.entity.JobNode;
+
+public interface JobNodeRepository extends JpaRepository<JobNode, String> {
+
+	@Transactional
+	@Query(value = "select n.nodeId from JobNode n where n.heartbeatAt >= :since order by n.nodeId")
+	List<String> findLiveNodeIds(@Param("since") LocalDateTime since);
+
+	@Transactional
+	@Modifying
+	@Query(value = "update JobNode n set n.heartbeatAt = :now where n.nodeId = :nodeId")
+	int heartbeat(@Param("nodeId") String nodeId, @Param("now") LocalDateTime now);
+
+	@Transactional
+	@Modifying
+	@Query(value = "insert into job_node (node_id, heartbeat_at) values (:nodeId, :now)", nativeQuery = true)
+	int insert(@Param("nodeId") String nodeId, @Param("now") LocalDateTime now);
+
+	@Transactional
+	@Modifying
+	@Query(value = "delete from JobNode n where n.nodeId = :nodeId")
+	int remove(@Param("nodeId") String nodeId);
+}
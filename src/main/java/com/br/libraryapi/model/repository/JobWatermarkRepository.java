@@ -0,0 +1,8 @@
+package com.br.libraryapi.model.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import com.br.libraryapi.model.entity.JobWatermark;
+
+public interface JobWatermarkRepository extends JpaRepository<JobWatermark, String> {
+}
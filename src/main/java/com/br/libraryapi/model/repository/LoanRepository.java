@@ -1,32 +1,142 @@
 package com.br.libraryapi.model.repository;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.br.libraryapi.api.dto.LoanDTO;
 import com.br.libraryapi.model.entity.Book;
 import com.br.libraryapi.model.entity.Loan;
 
-public interface LoanRepository extends JpaRepository<Loan, Long>{
+public interface LoanRepository extends JpaRepository<Loan, Long>, LoanRepositoryCustom {
+
+	String SELECT_LOAN_DTO = "select new com.br.libraryapi.api.dto.LoanDTO("
+			+ "l.id, l.customer, l.customerEmail, l.loanDate, b.id, b.title, b.author, b.isbn) "
+			+ "from Loan l join l.book b ";
+
+	// loans without a date come first, so a cursor on one of them continues through the dated loans
+	String AFTER_CURSOR = "(l.loanDate > :loanDate or (l.loanDate = :loanDate and l.id > :id) "
+			+ "or (:loanDate is null and (l.loanDate is not null or l.id > :id))) ";
+
+	String ORDER_BY_CURSOR = "order by l.loanDate nulls first, l.id";
 
 	@Query(value = "select case when (count(l.id) > 0) then true else false end "
 			+ "from Loan l where l.book = :book and (l.returned is null or  l.returned is not true) ")
 	boolean existsByBookAndNotReturned(@Param("book") Book book);
 	
-	@Query(value = "select l from Loan l join l.book b where b.isbn = :isbn or l.customer = :customer")
-	Page<Loan> findByBookIsbnOrCustomer(
-			@Param("isbn") String isbn, 
-			@Param("customer") String customer,
+	@Query(value = "select l.book.id from Loan l where l.returned is null or  l.returned is not true ")
+	List<Long> findNotReturnedBookIds();
+	
+	@Query(value = "select l.openBookId from Loan l where l.openBookId in :bookIds")
+	List<Long> findOpenBookIds(@Param("bookIds") Collection<Long> bookIds);
+	
+	String SELECT_LOAN_STATE = "select l.id as id, b.id as bookId, b.isbn as isbn, l.returned as returned, "
+			+ "l.customerId as customerId, l.overdue as overdue "
+			+ "from Loan l join l.book b ";
+	
+	// locked in id order until the return commits, so the states read are the ones the update changes
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query(value = SELECT_LOAN_STATE + "where l.id in :ids order by l.id")
+	List<LoanState> findStateByIdIn(@Param("ids") Collection<Long> ids);
+	
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query(value = SELECT_LOAN_STATE + "where b.isbn in :isbns and l.openBookId is not null order by l.id")
+	List<LoanState> findOpenStateByIsbnIn(@Param("isbns") Collection<String> isbns);
+	
+	// bulk updates skip the entity callbacks, so open_book_id is cleared here as well
+	@Transactional
+	@Modifying(clearAutomatically = true)
+	@Query(value = "update Loan l set l.returned = true, l.openBookId = null "
+			+ "where l.id in :ids and (l.returned is null or l.returned = false)")
+	int markReturned(@Param("ids") Collection<Long> ids);
+	
+	@Query(value = SELECT_LOAN_DTO + "where b.id = :bookId",
+			countQuery = "select count(l) from Loan l where l.book.id = :bookId")
+	Page<LoanDTO> findDTOByBookId(@Param("bookId") Long bookId, Pageable pageable);
+
+	@Query(value = SELECT_LOAN_DTO + "where l.customerId = :customerId",
+			countQuery = "select count(l) from Loan l where l.customerId = :customerId")
+	Page<LoanDTO> findDTOByCustomerId(@Param("customerId") Long customerId, Pageable pageable);
+
+	@Query(value = SELECT_LOAN_DTO + "where b.id = :bookId " + ORDER_BY_CURSOR)
+	Slice<LoanDTO> findSliceByBookId(@Param("bookId") Long bookId, Pageable pageable);
+
+	@Query(value = SELECT_LOAN_DTO + "where b.id = :bookId and " + AFTER_CURSOR + ORDER_BY_CURSOR)
+	Slice<LoanDTO> findSliceByBookIdAfter(
+			@Param("bookId") Long bookId,
+			@Param("loanDate") LocalDate loanDate,
+			@Param("id") Long id,
+			Pageable pageable);
+
+	String NOT_RETURNED = "(l.returned is null or l.returned is not true) ";
+
+	@QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.READ_ONLY, value = "true"))
+	@Query(value = "select l from Loan l where l.dueDate < :today and " + NOT_RETURNED)
+	List<Loan> findOverdue(@Param("today") LocalDate today);
+
+	// loans of one id partition of the late-loans job, partitions = 1 reads them all
+	String IN_PARTITION = "and mod(l.id, :partitions) = :partition ";
+
+	// loans that fell due in [since, today) and were never notified
+	@Query(value = "select l from Loan l where l.dueDate >= :since and l.dueDate < :today and " + NOT_RETURNED
+			+ "and l.lastNotifiedAt is null " + IN_PARTITION + "and l.id > :afterId order by l.id")
+	@QueryHints({
+			@QueryHint(name = org.hibernate.annotations.QueryHints.FETCH_SIZE, value = "500"),
+			@QueryHint(name = org.hibernate.annotations.QueryHints.READ_ONLY, value = "true") })
+	List<Loan> findNewlyOverdueAfter(
+			@Param("since") LocalDate since,
+			@Param("today") LocalDate today,
+			@Param("partition") int partition,
+			@Param("partitions") int partitions,
+			@Param("afterId") Long afterId,
+			Pageable pageable);
+
+	@Query(value = "select l from Loan l where l.lastNotifiedAt < :notifiedBefore and " + NOT_RETURNED
+			+ IN_PARTITION + "and l.id > :afterId order by l.id")
+	@QueryHints({
+			@QueryHint(name = org.hibernate.annotations.QueryHints.FETCH_SIZE, value = "500"),
+			@QueryHint(name = org.hibernate.annotations.QueryHints.READ_ONLY, value = "true") })
+	List<Loan> findDueForReminderAfter(
+			@Param("notifiedBefore") LocalDateTime notifiedBefore,
+			@Param("partition") int partition,
+			@Param("partitions") int partitions,
+			@Param("afterId") Long afterId,
+			Pageable pageable);
+
+	// open loans that fell due in [since, today) and are not counted as overdue yet
+	@Query(value = SELECT_LOAN_STATE + "where l.dueDate >= :since and l.dueDate < :today and " + NOT_RETURNED
+			+ "and l.overdue = false " + IN_PARTITION + "and l.id > :afterId order by l.id")
+	List<LoanState> findNewlyOverdueStateAfter(
+			@Param("since") LocalDate since,
+			@Param("today") LocalDate today,
+			@Param("partition") int partition,
+			@Param("partitions") int partitions,
+			@Param("afterId") Long afterId,
 			Pageable pageable);
 
-	Page<Loan> findByBook(Book book, Pageable pageable);
+	@Transactional
+	@Modifying(clearAutomatically = true)
+	@Query(value = "update Loan l set l.overdue = true where l.id in :ids and l.overdue = false and " + NOT_RETURNED)
+	int markOverdue(@Param("ids") Collection<Long> ids);
 
-	@Query(value = "select l from Loan l where l.loanDate <= :threeDaysAgo and (l.returned is null or  l.returned is not true) ")
-	List<Loan> findByLoanDateLessThanAndNotReturned(@Param("threeDaysAgo") LocalDate threeDaysAgo);
+	@Transactional
+	@Modifying
+	@Query(value = "update Loan l set l.lastNotifiedAt = :notifiedAt where l.id in :ids")
+	int markNotified(@Param("ids") Collection<Long> ids, @Param("notifiedAt") LocalDateTime notifiedAt);
 
 }
@@ -0,0 +1,23 @@
+package com.br.libraryapi.model.repository;
+
+import java.time.LocalDate;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+
+import com.br.libraryapi.api.dto.LoanDTO;
+
+public interface LoanRepositoryCustom {
+
+	Page<LoanDTO> findDTOByBookIsbnOrCustomer(String isbn, String customer, Pageable pageable);
+
+	Slice<LoanDTO> findDTOSliceByBookIsbnOrCustomer(String isbn, String customer, Pageable pageable);
+
+	long countByBookIsbnOrCustomer(String isbn, String customer);
+
+	Slice<LoanDTO> findSliceByBookIsbnOrCustomer(String isbn, String customer, Pageable pageable);
+
+	Slice<LoanDTO> findSliceByBookIsbnOrCustomerAfter(
+			String isbn, String customer, LocalDate loanDate, Long id, Pageable pageable);
+}
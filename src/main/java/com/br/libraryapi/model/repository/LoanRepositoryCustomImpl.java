@@ -0,0 +1,184 @@
+package com.br.libraryapi.model.repository;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+
+import com.br.libraryapi.api.dto.LoanDTO;
+
+public class LoanRepositoryCustomImpl implements LoanRepositoryCustom {
+
+	private static final String SELECT_LOAN_COLUMNS = "select l.id, l.customer, l.customer_email, l.loan_date, "
+			+ "b.id as book_id, b.title, b.author, b.isbn from loan l join book b on b.id = l.id_book ";
+
+	// one lookup per index, uk_book_isbn and idx_loan_customer, instead of an OR across two tables
+	private static final String BY_ISBN = SELECT_LOAN_COLUMNS + "where b.isbn = :isbn";
+
+	private static final String BY_CUSTOMER = SELECT_LOAN_COLUMNS + "where l.customer = :customer";
+
+	private static final String ORDER_BY_CURSOR = " order by loan_date nulls first, id";
+
+	// the Loan properties a listing can be sorted by, as the columns of the union
+	private static final Map<String, String> SORT_COLUMNS = new HashMap<>();
+
+	static {
+		SORT_COLUMNS.put("id", "id");
+		SORT_COLUMNS.put("customer", "customer");
+		SORT_COLUMNS.put("customerEmail", "customer_email");
+		SORT_COLUMNS.put("loanDate", "loan_date");
+		SORT_COLUMNS.put("book.id", "book_id");
+		SORT_COLUMNS.put("book.title", "title");
+		SORT_COLUMNS.put("book.author", "author");
+		SORT_COLUMNS.put("book.isbn", "isbn");
+	}
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Override
+	public Page<LoanDTO> findDTOByBookIsbnOrCustomer(String isbn, String customer, Pageable pageable) {
+		if (isbn == null && customer == null) {
+			return new PageImpl<LoanDTO>(new ArrayList<>(), pageable, 0);
+		}
+		Query query = createQuery(isbn, customer, "", orderBy(pageable.getSort()));
+		if (pageable.isPaged()) {
+			query.setFirstResult((int) pageable.getOffset());
+			query.setMaxResults(pageable.getPageSize());
+		}
+		List<LoanDTO> content = toDTOs(query);
+		// the first page holding every row already gives the total
+		if (pageable.isUnpaged() || (pageable.getOffset() == 0 && content.size() < pageable.getPageSize())) {
+			return new PageImpl<LoanDTO>(content, pageable, content.size());
+		}
+		return new PageImpl<LoanDTO>(content, pageable, countByBookIsbnOrCustomer(isbn, customer));
+	}
+
+	@Override
+	public Slice<LoanDTO> findDTOSliceByBookIsbnOrCustomer(String isbn, String customer, Pageable pageable) {
+		if (isbn == null && customer == null) {
+			return new SliceImpl<LoanDTO>(new ArrayList<>(), pageable, false);
+		}
+		return slice(createQuery(isbn, customer, "", orderBy(pageable.getSort())), pageable);
+	}
+
+	@Override
+	public long countByBookIsbnOrCustomer(String isbn, String customer) {
+		if (isbn == null && customer == null) {
+			return 0;
+		}
+		Query query = entityManager.createNativeQuery("select count(*) from (" + union(isbn, customer) + ") loans");
+		bind(query, isbn, customer);
+		return ((Number) query.getSingleResult()).longValue();
+	}
+
+	@Override
+	public Slice<LoanDTO> findSliceByBookIsbnOrCustomer(String isbn, String customer, Pageable pageable) {
+		if (isbn == null && customer == null) {
+			return new SliceImpl<LoanDTO>(new ArrayList<>(), pageable, false);
+		}
+		return slice(createQuery(isbn, customer, "", ORDER_BY_CURSOR), pageable);
+	}
+
+	// same cursor as LoanRepository.AFTER_CURSOR, split on the null date so no null is bound
+	@Override
+	public Slice<LoanDTO> findSliceByBookIsbnOrCustomerAfter(
+			String isbn, String customer, LocalDate loanDate, Long id, Pageable pageable) {
+		if (isbn == null && customer == null) {
+			return new SliceImpl<LoanDTO>(new ArrayList<>(), pageable, false);
+		}
+		String after = loanDate == null
+				? " where (loan_date is not null or id > :id)"
+				: " where (loan_date > :loanDate or (loan_date = :loanDate and id > :id))";
+		Query query = createQuery(isbn, customer, after, ORDER_BY_CURSOR);
+		if (loanDate != null) {
+			query.setParameter("loanDate", loanDate);
+		}
+		query.setParameter("id", id);
+		return slice(query, pageable);
+	}
+
+	private Query createQuery(String isbn, String customer, String where, String orderBy) {
+		Query query = entityManager.createNativeQuery("select id, customer, customer_email, loan_date, book_id, title, author, isbn "
+				+ "from (" + union(isbn, customer) + ") loans" + where + orderBy);
+		bind(query, isbn, customer);
+		return query;
+	}
+
+	// a null isbn or customer matches nothing, so its lookup is left out
+	private String union(String isbn, String customer) {
+		List<String> lookups = new ArrayList<>();
+		if (isbn != null) {
+			lookups.add(BY_ISBN);
+		}
+		if (customer != null) {
+			lookups.add(BY_CUSTOMER);
+		}
+		return String.join(" union ", lookups);
+	}
+
+	private void bind(Query query, String isbn, String customer) {
+		if (isbn != null) {
+			query.setParameter("isbn", isbn);
+		}
+		if (customer != null) {
+			query.setParameter("customer", customer);
+		}
+	}
+
+	private String orderBy(Sort sort) {
+		if (sort.isUnsorted()) {
+			return "";
+		}
+		return sort.stream()
+				.map( order -> {
+					String column = SORT_COLUMNS.get(order.getProperty());
+					if (column == null) {
+						throw new InvalidDataAccessApiUsageException("Loans cannot be sorted by " + order.getProperty());
+					}
+					return column + (order.isAscending() ? " asc" : " desc");
+				})
+				.collect(Collectors.joining(", ", " order by ", ""));
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<LoanDTO> toDTOs(Query query) {
+		return ((List<Object[]>) query.getResultList()).stream()
+				.map( row -> new LoanDTO(
+						((Number) row[0]).longValue(),
+						(String) row[1],
+						(String) row[2],
+						row[3] == null ? null : ((Date) row[3]).toLocalDate(),
+						((Number) row[4]).longValue(),
+						(String) row[5],
+						(String) row[6],
+						(String) row[7]) )
+				.collect(Collectors.toList());
+	}
+
+	private Slice<LoanDTO> slice(Query query, Pageable pageable) {
+		if (pageable.isUnpaged()) {
+			return new SliceImpl<LoanDTO>(toDTOs(query), pageable, false);
+		}
+		query.setFirstResult((int) pageable.getOffset());
+		query.setMaxResults(pageable.getPageSize() + 1);
+		List<LoanDTO> content = toDTOs(query);
+		boolean hasNext = content.size() > pageable.getPageSize();
+		return new SliceImpl<LoanDTO>(hasNext ? content.subList(0, pageable.getPageSize()) : content, pageable, hasNext);
+	}
+}
@@ -0,0 +1,16 @@
+package com.br.libraryapi.model.repository;
+
+public interface LoanState {
+
+	Long getId();
+
+	Long getBookId();
+
+	String getIsbn();
+
+	Boolean getReturned();
+
+	Long getCustomerId();
+
+	Boolean getOverdue();
+}
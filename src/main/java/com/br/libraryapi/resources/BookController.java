@@ -1,32 +1,47 @@
 package com.br.libraryapi.resources;
 
+import java.io.IOException;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 
-import org.modelmapper.ModelMapper;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
 
 import com.br.libraryapi.api.dto.BookDTO;
+import com.br.libraryapi.api.dto.BookImportResultDTO;
+import com.br.libraryapi.api.dto.CountMode;
+import com.br.libraryapi.api.dto.LoanCursor;
 import com.br.libraryapi.api.dto.LoanDTO;
+import com.br.libraryapi.api.dto.PageDTO;
+import com.br.libraryapi.api.mapper.BookMapper;
+import com.br.libraryapi.api.reader.BookImportReader;
 import com.br.libraryapi.model.entity.Book;
-import com.br.libraryapi.model.entity.Loan;
+import com.br.libraryapi.service.BookImportService;
 import com.br.libraryapi.service.BookService;
+import com.br.libraryapi.service.DatabaseExecutor;
 import com.br.libraryapi.service.LoanService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -43,25 +58,41 @@ import lombok.extern.slf4j.Slf4j;
 public class BookController {
 	
 	private final BookService service;
-	private final ModelMapper modelMapper;
+	private final BookMapper bookMapper;
 	private final LoanService loanService;
+	private final BookImportService importService;
+	private final ObjectMapper objectMapper;
+	private final DatabaseExecutor databaseExecutor;
 
 	@PostMapping
 	@ResponseStatus(value = HttpStatus.CREATED)
 	@ApiOperation("Create a book")
 	public BookDTO create( @RequestBody @Valid BookDTO dto) {
 		log.info("creating a book for isbn: {}", dto.getIsbn());
-		Book entity = modelMapper.map( dto, Book.class);
+		Book entity = bookMapper.toEntity(dto);
 		entity = service.save(entity);
-		return modelMapper.map( entity, BookDTO.class);
+		return bookMapper.toDTO(entity);
+	}
+	
+	@PostMapping(value = "bulk", consumes = { BookImportReader.NDJSON, BookImportReader.CSV })
+	@ApiOperation("Import books from a NDJSON or CSV stream")
+	public BookImportResultDTO importBooks( HttpServletRequest request ) throws IOException {
+		log.info("importing books from {}", request.getContentType());
+		try (BookImportReader reader = BookImportReader.of(request.getInputStream(), request.getContentType(), objectMapper)) {
+			return importService.importBooks(reader);
+		}
 	}
 	
 	@GetMapping("{id}")
 	@ApiOperation("Obtains a book details by id")
-	public BookDTO get( @PathVariable Long id) {
-		return service.getById(id)
-				.map(book -> modelMapper.map(book, BookDTO.class))
+	public BookDTO get( @PathVariable Long id, WebRequest request) {
+		Book book = service.getById(id)
 				.orElseThrow( () -> new ResponseStatusException( HttpStatus.NOT_FOUND ) );
+		// answers 304 before the book is mapped or serialized
+		if (request.checkNotModified(etag(book))) {
+			return null;
+		}
+		return bookMapper.toDTO(book);
 	}
 	
 	@DeleteMapping("{id}")
@@ -78,46 +109,76 @@ public class BookController {
 	
 	@PutMapping("{id}")
 	@ApiOperation("Updates a book")
-	public BookDTO update( @PathVariable Long id, BookDTO dto) {
-		return service.getById(id).map( book -> {
-			book.setAuthor(dto.getAuthor());
-			book.setTitle(dto.getTitle());
-			book = service.update(book);
-			return modelMapper.map(book, BookDTO.class);
-		}).orElseThrow( () -> new ResponseStatusException( HttpStatus.NOT_FOUND ) );
-		
+	public ResponseEntity<BookDTO> update( @PathVariable Long id, BookDTO dto,
+			@RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+		Book book = service.getById(id)
+				.orElseThrow( () -> new ResponseStatusException( HttpStatus.NOT_FOUND ) );
+		if (ifMatch != null && !matches(ifMatch, etag(book))) {
+			throw new ResponseStatusException( HttpStatus.PRECONDITION_FAILED );
+		}
+		Book changed = book.toBuilder()
+				.author(dto.getAuthor())
+				.title(dto.getTitle())
+				.build();
+		try {
+			book = service.update(changed);
+		} catch (OptimisticLockingFailureException e) {
+			// changed by someone else between the check above and the write
+			throw new ResponseStatusException( ifMatch != null ? HttpStatus.PRECONDITION_FAILED : HttpStatus.CONFLICT );
+		}
+		return ResponseEntity.ok().eTag(etag(book)).body(bookMapper.toDTO(book));
+	}
+	
+	static String etag(Book book) {
+		return "\"" + (book.getVersion() == null ? 0 : book.getVersion()) + "\"";
+	}
+	
+	// If-Match uses the strong comparison, so weak tags never match
+	private boolean matches(String ifMatch, String etag) {
+		for (String candidate : StringUtils.commaDelimitedListToStringArray(ifMatch)) {
+			String tag = candidate.trim();
+			if (tag.equals("*") || tag.equals(etag)) {
+				return true;
+			}
+		}
+		return false;
 	}
 	
 	@GetMapping
 	@ApiOperation("Find books by params")
-	public Page<BookDTO> find( BookDTO dto, Pageable pageRequest) {
-		Book filter = modelMapper.map(dto, Book.class);
-		Page<Book> result = service.find(filter, pageRequest);
-		List<BookDTO> list = result
-								.getContent()
-								.stream()
-								.map( entity -> modelMapper.map( entity, BookDTO.class))
-								.collect( Collectors.toList() );
-		return new PageImpl<BookDTO>( list, pageRequest, result.getTotalElements());
+	public CompletableFuture<PageDTO<BookDTO>> find( BookDTO dto, Pageable pageRequest,
+			@RequestParam(value = "count", defaultValue = "exact") String count) {
+		Book filter = bookMapper.toEntity(dto);
+		CountMode countMode = CountMode.of(count);
+		return databaseExecutor.supply( () -> PageDTO.of(service.findDTO(filter, pageRequest, countMode)) );
 	}
 
 	@GetMapping ("{id}/loans")
 	@ApiOperation("List loans by book")
-	public Page<LoanDTO> loansByBook( @PathVariable Long id, Pageable pageable ) {
+	public CompletableFuture<PageDTO<LoanDTO>> loansByBook( @PathVariable Long id, Pageable pageable ) {
 		
-		Book book = service.getById(id)
-			.orElseThrow( () -> new ResponseStatusException( HttpStatus.NOT_FOUND ));
-		Page<Loan> result =loanService.getLoansByBook(book, pageable);
-		List<LoanDTO> loansDTO = result.getContent()
-				.stream()
-				.map( loan -> {
-					Book loanBook = loan.getBook();
-					BookDTO bookDTO = modelMapper.map(loanBook , BookDTO.class);
-					LoanDTO loanDTO = modelMapper.map(loan , LoanDTO.class);
-					loanDTO.setBook(bookDTO);
-					return loanDTO;
-				})
-				.collect(Collectors.toList());
-		return new PageImpl<LoanDTO>(loansDTO, pageable, result.getTotalElements());
+		return databaseExecutor.supply( () -> {
+			Book book = service.getById(id)
+				.orElseThrow( () -> new ResponseStatusException( HttpStatus.NOT_FOUND ));
+			return PageDTO.of(loanService.getLoansByBook(book, pageable));
+		});
+	}
+
+	@GetMapping (value = "{id}/loans", params = "after")
+	@ApiOperation("List loans by book using a keyset cursor")
+	public CompletableFuture<PageDTO<LoanDTO>> loansByBookAfter( @PathVariable Long id,
+			@RequestParam("after") String after,
+			@RequestParam(value = "size", defaultValue = "20") int size ) {
+		
+		LoanCursor cursor = StringUtils.hasText(after) ? LoanCursor.decode(after) : null;
+		int pageSize = PageDTO.cursorSize(size);
+		return databaseExecutor.supply( () -> {
+			Book book = service.getById(id)
+				.orElseThrow( () -> new ResponseStatusException( HttpStatus.NOT_FOUND ));
+			Slice<LoanDTO> result = loanService.getLoansByBook(book, cursor, pageSize);
+			List<LoanDTO> loans = result.getContent();
+			String next = result.hasNext() ? LoanCursor.of(loans.get(loans.size() - 1)).encode() : null;
+			return PageDTO.cursor(loans, pageSize, next, result.hasNext());
+		});
 	}
 }
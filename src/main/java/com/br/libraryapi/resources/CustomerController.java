@@ -0,0 +1,56 @@
+package com.br.libraryapi.resources;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.br.libraryapi.api.dto.CustomerDTO;
+import com.br.libraryapi.api.dto.LoanDTO;
+import com.br.libraryapi.api.dto.PageDTO;
+import com.br.libraryapi.api.mapper.CustomerMapper;
+import com.br.libraryapi.model.entity.Customer;
+import com.br.libraryapi.service.CustomerService;
+import com.br.libraryapi.service.DatabaseExecutor;
+import com.br.libraryapi.service.LoanService;
+
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.RequiredArgsConstructor;
+
+@RestController
+@RequestMapping("/api/customers")
+@RequiredArgsConstructor
+@Api("Customer API")
+public class CustomerController {
+
+	private final CustomerService service;
+	private final CustomerMapper customerMapper;
+	private final LoanService loanService;
+	private final DatabaseExecutor databaseExecutor;
+
+	@GetMapping("{id}")
+	@ApiOperation("Obtains a customer with its open and overdue loan counts")
+	public CompletableFuture<CustomerDTO> get( @PathVariable Long id ) {
+		
+		return databaseExecutor.supply( () -> service.getById(id)
+				.map(customerMapper::toDTO)
+				.orElseThrow( () -> new ResponseStatusException( HttpStatus.NOT_FOUND )) );
+	}
+
+	@GetMapping("{id}/loans")
+	@ApiOperation("List loans by customer")
+	public CompletableFuture<PageDTO<LoanDTO>> loansByCustomer( @PathVariable Long id, Pageable pageable ) {
+		
+		return databaseExecutor.supply( () -> {
+			Customer customer = service.getById(id)
+				.orElseThrow( () -> new ResponseStatusException( HttpStatus.NOT_FOUND ));
+			return PageDTO.of(loanService.getLoansByCustomer(customer, pageable));
+		});
+	}
+}
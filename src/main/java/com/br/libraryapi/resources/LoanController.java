@@ -2,30 +2,42 @@ package com.br.libraryapi.resources;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
-import org.modelmapper.ModelMapper;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
 
-import com.br.libraryapi.api.dto.BookDTO;
+import com.br.libraryapi.api.dto.CountMode;
+import com.br.libraryapi.api.dto.LoanBatchResultDTO;
+import com.br.libraryapi.api.dto.LoanCursor;
 import com.br.libraryapi.api.dto.LoanDTO;
 import com.br.libraryapi.api.dto.LoanFilterDTO;
+import com.br.libraryapi.api.dto.LoanReturnRequestDTO;
+import com.br.libraryapi.api.dto.LoanReturnResultDTO;
+import com.br.libraryapi.api.dto.PageDTO;
 import com.br.libraryapi.api.dto.ReturnedLoanDTO;
 import com.br.libraryapi.model.entity.Book;
 import com.br.libraryapi.model.entity.Loan;
 import com.br.libraryapi.service.BookService;
+import com.br.libraryapi.service.DatabaseExecutor;
 import com.br.libraryapi.service.LoanService;
 
 import lombok.RequiredArgsConstructor;
@@ -37,41 +49,85 @@ public class LoanController {
 
 	private final LoanService service;
 	private final BookService bookService;
-	private final ModelMapper modelMapper;
+	private final DatabaseExecutor databaseExecutor;
 	
 	@PostMapping
 	@ResponseStatus(value = HttpStatus.CREATED)
 	public Long create(@RequestBody LoanDTO dto) {
 		Book book = bookService.getBookByIsbn(dto.getIsbn())
 				.orElseThrow( () -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "Book not found for passed isbn"));
-		Loan entity = Loan.builder().book(book).customer(dto.getCustomer()).loanDate(LocalDate.now()).build();
+		Loan entity = Loan.builder()
+				.book(book)
+				.customer(dto.getCustomer())
+				.customerEmail(dto.getCustomerEmail())
+				.loanDate(LocalDate.now())
+				.build();
 		
 		entity = service.save(entity);
 		return entity.getId();
 	}
 	
+	@PostMapping("batch")
+	public List<LoanBatchResultDTO> createBatch(@RequestBody List<LoanDTO> dtos) {
+		Set<String> isbns = dtos.stream().map(LoanDTO::getIsbn).filter(Objects::nonNull).collect(Collectors.toSet());
+		Map<String, Book> books = bookService.getBooksByIsbn(isbns)
+				.stream()
+				.collect(Collectors.toMap(Book::getIsbn, Function.identity(), (first, second) -> first));
+		
+		// items whose isbn is unknown keep a null book and are reported as not found
+		List<Loan> loans = dtos.stream()
+				.map( dto -> Loan.builder()
+						.book(books.get(dto.getIsbn()))
+						.customer(dto.getCustomer())
+						.customerEmail(dto.getCustomerEmail())
+						.loanDate(LocalDate.now())
+						.build() )
+				.collect(Collectors.toList());
+		
+		List<LoanBatchResultDTO> results = service.saveAll(loans);
+		for (int i = 0; i < results.size(); i++) {
+			results.get(i).setIsbn(dtos.get(i).getIsbn());
+		}
+		return results;
+	}
+	
+	@PatchMapping("returns")
+	public LoanReturnResultDTO returnBooks(@RequestBody LoanReturnRequestDTO dto) {
+		return service.returnAll(dto.getIds(), dto.getIsbns());
+	}
+	
 	@PatchMapping("{id}")
 	public void returnBook(@PathVariable Long id, @RequestBody ReturnedLoanDTO dto) {
 		
 		Loan loan = service.getById(id)
 				.orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
 		loan.setReturned(dto.getReturned());
-		service.update(loan);
+		try {
+			service.update(loan);
+		} catch (OptimisticLockingFailureException e) {
+			// returned by another request since it was read
+			throw new ResponseStatusException(HttpStatus.CONFLICT);
+		}
 	}
 
 	@GetMapping
-	public Page<LoanDTO> find(LoanFilterDTO dto, Pageable pageRequest) {
-		Page<Loan> result = service.find(dto, pageRequest);
-		List<LoanDTO> loansDTO = result
-			.getContent()
-			.stream()
-			.map( entity -> {
-				Book book = entity.getBook();
-				BookDTO bookDTO = modelMapper.map(book, BookDTO.class);
-				LoanDTO loanDTO = modelMapper.map( entity , LoanDTO.class);
-				loanDTO.setBook(bookDTO);
-				return loanDTO;
-			}).collect(Collectors.toList()) ;
-		return new PageImpl<LoanDTO>(loansDTO, pageRequest, result.getTotalElements());
+	public CompletableFuture<PageDTO<LoanDTO>> find(LoanFilterDTO dto, Pageable pageRequest,
+			@RequestParam(value = "count", defaultValue = "exact") String count) {
+		CountMode countMode = CountMode.of(count);
+		return databaseExecutor.supply( () -> PageDTO.of(service.find(dto, pageRequest, countMode)) );
+	}
+
+	@GetMapping(params = "after")
+	public CompletableFuture<PageDTO<LoanDTO>> findAfter(LoanFilterDTO dto,
+			@RequestParam("after") String after,
+			@RequestParam(value = "size", defaultValue = "20") int size) {
+		LoanCursor cursor = StringUtils.hasText(after) ? LoanCursor.decode(after) : null;
+		int pageSize = PageDTO.cursorSize(size);
+		return databaseExecutor.supply( () -> {
+			Slice<LoanDTO> result = service.find(dto, cursor, pageSize);
+			List<LoanDTO> loans = result.getContent();
+			String next = result.hasNext() ? LoanCursor.of(loans.get(loans.size() - 1)).encode() : null;
+			return PageDTO.cursor(loans, pageSize, next, result.hasNext());
+		});
 	}
 }
@@ -0,0 +1,13 @@
+package com.br.libraryapi.service;
+
+import java.util.function.Supplier;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+
+public interface ApproximateCountService {
+
+	long count(String key, Supplier<Long> counter);
+
+	<T> Page<T> toPage(Slice<T> slice, String key, Supplier<Long> counter);
+}
@@ -0,0 +1,20 @@
+package com.br.libraryapi.service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+public interface BookAvailabilityService {
+
+	boolean isLoaned(Long bookId);
+
+	void markLoaned(Long bookId);
+
+	void markReturned(Long bookId);
+
+	Lock lockFor(Long bookId);
+
+	List<Lock> locksFor(Collection<Long> bookIds);
+
+	void rebuild();
+}
@@ -0,0 +1,11 @@
+package com.br.libraryapi.service;
+
+import java.util.Iterator;
+
+import com.br.libraryapi.api.dto.BookImportResultDTO;
+import com.br.libraryapi.api.dto.BookImportRow;
+
+public interface BookImportService {
+
+	BookImportResultDTO importBooks(Iterator<BookImportRow> rows);
+}
@@ -0,0 +1,26 @@
+package com.br.libraryapi.service;
+
+import java.util.Collection;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import com.br.libraryapi.api.dto.BookDTO;
+import com.br.libraryapi.model.entity.Book;
+
+public interface BookSearchService {
+
+	boolean isReady();
+
+	void index(Book book);
+
+	void index(Collection<Book> books);
+
+	void remove(Long bookId);
+
+	Page<Book> search(Book filter, Pageable pageable);
+
+	Page<BookDTO> searchDTO(Book filter, Pageable pageable);
+
+	void rebuild();
+}
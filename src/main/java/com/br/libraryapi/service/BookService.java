@@ -1,16 +1,25 @@
 package com.br.libraryapi.service;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
+import com.br.libraryapi.api.dto.BookDTO;
+import com.br.libraryapi.api.dto.CountMode;
 import com.br.libraryapi.model.entity.Book;
 
 public interface BookService {
 	
 	Book save(Book any);
 
+	/**
+	 * The book comes from a cache shared by every caller and must not be modified; change a
+	 * {@link Book#toBuilder() copy} instead.
+	 */
 	Optional<Book> getById(Long id);
 
 	void delete(Book book);
@@ -19,5 +28,18 @@ public interface BookService {
 
 	Page<Book> find(Book filter, Pageable pageRequest);
 
+	Slice<Book> find(Book filter, Pageable pageRequest, CountMode countMode);
+
+	/**
+	 * Same filter as {@link #find(Book, Pageable, CountMode)}, read as DTOs that never enter
+	 * the persistence context.
+	 */
+	Slice<BookDTO> findDTO(Book filter, Pageable pageRequest, CountMode countMode);
+
+	/**
+	 * Cached like {@link #getById(Long)}, so the book must not be modified either.
+	 */
 	Optional<Book> getBookByIsbn(String isbn);
+
+	List<Book> getBooksByIsbn(Collection<String> isbns);
 }
@@ -0,0 +1,259 @@
+package com.br.libraryapi.service;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import com.br.libraryapi.model.entity.JobLease;
+import com.br.libraryapi.model.repository.JobLeaseRepository;
+import com.br.libraryapi.model.repository.JobNodeRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs scheduled jobs once per cluster. A job is split into partitions, each one a lease row
+ * in job_lease that a node must win before processing it. With a single partition the job
+ * simply runs on whichever node gets there first; with more, every live node claims its own
+ * range of partitions and processes them in parallel.
+ * <p>
+ * Leases are renewed by the heartbeat while the partition runs. A node that dies stops
+ * renewing, and once the lease expires the heartbeat of any other node takes the partition
+ * over, as it does for partitions that failed or that no node claimed.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ClusterJobRunner {
+
+	@Value("${application.jobs.node-id:}")
+	private String nodeId;
+
+	@Value("${application.jobs.lease-seconds:60}")
+	private long leaseSeconds;
+
+	@Value("${application.jobs.workers:4}")
+	private int workers;
+
+	private final JobLeaseRepository leaseRepository;
+	private final JobNodeRepository nodeRepository;
+	private final MeterRegistry meterRegistry;
+
+	private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+	private ExecutorService executor;
+
+	@FunctionalInterface
+	public interface PartitionTask {
+
+		/**
+		 * Processes one partition of the run of {@code runDate}. Throwing leaves the partition
+		 * open, to be claimed again once its lease expires.
+		 */
+		void run(int partition, int partitions, LocalDate runDate);
+	}
+
+	@PostConstruct
+	public void start() {
+		if (!StringUtils.hasText(nodeId)) {
+			nodeId = hostName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+		}
+		AtomicInteger threads = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(workers,
+				runnable -> new Thread(runnable, "cluster-job-" + threads.incrementAndGet()));
+		beat(LocalDateTime.now());
+		log.info("scheduled jobs run as node {}", nodeId);
+	}
+
+	// partitions still running here are handed to the other nodes right away instead of after their lease
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+		leaseRepository.releaseAll(nodeId);
+		nodeRepository.remove(nodeId);
+	}
+
+	public String getNodeId() {
+		return nodeId;
+	}
+
+	/**
+	 * Registers a job. {@code onRunCompleted} is called on a single node once every partition
+	 * of a run has completed.
+	 */
+	public void register(String name, int partitions, PartitionTask task, Consumer<LocalDate> onRunCompleted) {
+		Assert.isTrue(partitions > 0, "A job needs at least one partition");
+		jobs.put(name, new Job(name, partitions, task, onRunCompleted));
+	}
+
+	/**
+	 * Opens the run of {@code runDate} and claims this node's share of its partitions: the
+	 * n-th of the live nodes, in node id order, takes the n-th contiguous range. Partitions
+	 * of nodes that are down or late are left to the heartbeat. The returned future completes
+	 * when the partitions claimed here have been processed.
+	 */
+	public CompletableFuture<Void> run(String name, LocalDate runDate) {
+		Job job = jobs.get(name);
+		Assert.notNull(job, "Unknown job " + name);
+		createPartitions(job);
+		LocalDateTime now = LocalDateTime.now();
+		// until the lease time has passed, unclaimed partitions are left to the nodes they belong to
+		leaseRepository.openRun(job.name, job.partitions, runDate, now.plusSeconds(leaseSeconds));
+
+		List<String> live = new ArrayList<>(nodeRepository.findLiveNodeIds(now.minusSeconds(leaseSeconds)));
+		if (!live.contains(nodeId)) {
+			live.add(nodeId);
+			live.sort(null);
+		}
+		int share = (job.partitions + live.size() - 1) / live.size();
+		int first = live.indexOf(nodeId) * share;
+
+		List<CompletableFuture<Void>> claimed = new ArrayList<>();
+		for (int partition = first; partition < Math.min(job.partitions, first + share); partition++) {
+			if (leaseRepository.claimOpened(leaseName(job.name, partition), runDate, nodeId, now.plusSeconds(leaseSeconds)) == 1) {
+				claimed.add(submit(job, partition, runDate));
+			}
+		}
+		log.info("{} run {}: claimed {} of {} partitions on {} live nodes", job.name, runDate, claimed.size(), job.partitions, live.size());
+		return CompletableFuture.allOf(claimed.toArray(new CompletableFuture[0]));
+	}
+
+	@Scheduled(fixedDelayString = "${application.jobs.heartbeat-interval:10000}",
+			initialDelayString = "${application.jobs.heartbeat-interval:10000}")
+	public void heartbeat() {
+		LocalDateTime now = LocalDateTime.now();
+		beat(now);
+		leaseRepository.renew(nodeId, now.plusSeconds(leaseSeconds));
+		takeOver();
+	}
+
+	/**
+	 * Claims the partitions of open runs that nobody holds. The returned future completes
+	 * when they have been processed.
+	 */
+	public CompletableFuture<Void> takeOver() {
+		LocalDateTime now = LocalDateTime.now();
+		List<CompletableFuture<Void>> claimed = new ArrayList<>();
+		for (Job job : jobs.values()) {
+			for (JobLease lease : leaseRepository.findClaimable(job.name, job.partitions, now)) {
+				if (leaseRepository.claim(lease.getName(), lease.getRunDate(), nodeId, now.plusSeconds(leaseSeconds), now) == 1) {
+					log.warn("{} run {}: taking over partition {}", job.name, lease.getRunDate(), lease.getPartitionNo());
+					meterRegistry.counter("library.jobs.partitions.takeovers", "job", job.name).increment();
+					claimed.add(submit(job, lease.getPartitionNo(), lease.getRunDate()));
+				}
+			}
+		}
+		return CompletableFuture.allOf(claimed.toArray(new CompletableFuture[0]));
+	}
+
+	private CompletableFuture<Void> submit(Job job, int partition, LocalDate runDate) {
+		return CompletableFuture.runAsync( () -> process(job, partition, runDate), executor );
+	}
+
+	private void process(Job job, int partition, LocalDate runDate) {
+		String name = leaseName(job.name, partition);
+		try {
+			job.task.run(partition, job.partitions, runDate);
+		} catch (RuntimeException e) {
+			leaseRepository.release(name, nodeId, LocalDateTime.now().plusSeconds(leaseSeconds));
+			count(job, "failed");
+			log.error("{} run {}: partition {} failed, it will be retried", job.name, runDate, partition, e);
+			return;
+		}
+
+		// a lease that expired while the partition ran may already belong to another node
+		if (leaseRepository.complete(name, nodeId, LocalDateTime.now()) == 0) {
+			count(job, "lost");
+			log.warn("{} run {}: lease of partition {} was lost before it completed", job.name, runDate, partition);
+			return;
+		}
+		count(job, "completed");
+		if (leaseRepository.countPending(job.name, job.partitions, runDate) == 0
+				&& leaseRepository.finishRun(job.name, runDate, nodeId) == 1) {
+			log.info("{} run {}: all {} partitions completed", job.name, runDate, job.partitions);
+			try {
+				job.onRunCompleted.accept(runDate);
+			} catch (RuntimeException e) {
+				log.error("{} run {}: error completing the run", job.name, runDate, e);
+			}
+		}
+	}
+
+	private void createPartitions(Job job) {
+		Set<Integer> existing = leaseRepository.findPartitions(job.name, job.partitions).stream()
+				.map(JobLease::getPartitionNo)
+				.collect(Collectors.toSet());
+		for (int partition = 0; partition < job.partitions; partition++) {
+			if (existing.contains(partition)) {
+				continue;
+			}
+			try {
+				leaseRepository.insert(leaseName(job.name, partition), job.name, partition);
+			} catch (DataIntegrityViolationException e) {
+				// created by another node in the meantime
+			}
+		}
+	}
+
+	private void beat(LocalDateTime now) {
+		if (nodeRepository.heartbeat(nodeId, now) == 0) {
+			nodeRepository.insert(nodeId, now);
+		}
+	}
+
+	private void count(Job job, String outcome) {
+		meterRegistry.counter("library.jobs.partitions", "job", job.name, "outcome", outcome).increment();
+	}
+
+	static String leaseName(String job, int partition) {
+		return job + "#" + partition;
+	}
+
+	private static String hostName() {
+		try {
+			return InetAddress.getLocalHost().getHostName();
+		} catch (UnknownHostException e) {
+			return "node";
+		}
+	}
+
+	private static final class Job {
+
+		private final String name;
+		private final int partitions;
+		private final PartitionTask task;
+		private final Consumer<LocalDate> onRunCompleted;
+
+		private Job(String name, int partitions, PartitionTask task, Consumer<LocalDate> onRunCompleted) {
+			this.name = name;
+			this.partitions = partitions;
+			this.task = task;
+			this.onRunCompleted = onRunCompleted;
+		}
+	}
+}
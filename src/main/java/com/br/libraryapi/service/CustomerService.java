@@ -0,0 +1,32 @@
+package com.br.libraryapi.service;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+
+import com.br.libraryapi.model.entity.Customer;
+import com.br.libraryapi.model.entity.Loan;
+
+public interface CustomerService {
+
+	Optional<Customer> getById(Long id);
+
+	/**
+	 * Sets the customer of every loan that has an email but no customer yet, creating the
+	 * customers seen for the first time. Must run in the transaction that saves the loans; a
+	 * customer created concurrently fails it with a violation of {@link Customer#EMAIL_CONSTRAINT}.
+	 */
+	void assignCustomers(Collection<Loan> loans);
+
+	/**
+	 * Adds the given changes, per customer id, to the open and overdue loan counters. Must run
+	 * in the transaction that changed the loans.
+	 */
+	void addLoans(Map<Long, Integer> openLoans, Map<Long, Integer> overdueLoans);
+
+	/**
+	 * Counts the open and overdue loans of the customers again. Must run in the transaction
+	 * that changed the loans.
+	 */
+	void recount(Collection<Long> customerIds);
+}
@@ -0,0 +1,122 @@
+package com.br.libraryapi.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.br.libraryapi.config.ReplicaRoutingContext;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs the blocking service calls of the async endpoints off the Tomcat threads. It is sized
+ * to the connection pool and rejects work once its queue is full, which the API answers
+ * with 503. A request pinned to the primary stays pinned on the executor thread.
+ */
+@Service
+@Slf4j
+public class DatabaseExecutor {
+
+	@Value("${application.database.executor.threads:${spring.datasource.hikari.maximum-pool-size:10}}")
+	private int threads;
+
+	@Value("${application.database.executor.queue-capacity:200}")
+	private int queueCapacity;
+
+	@Value("${application.database.executor.virtual-threads:false}")
+	private boolean virtualThreads;
+
+	private ExecutorService executor;
+
+	// only set for virtual threads, which are not pooled and need their own bounds: calls admitted
+	// in total, as the pool's threads plus its queue, and calls running JDBC at once, as its threads
+	private Semaphore admitted;
+
+	private Semaphore running;
+
+	@PostConstruct
+	public void start() {
+		if (virtualThreads) {
+			executor = newVirtualThreadPerTaskExecutor();
+		}
+		if (executor != null) {
+			admitted = new Semaphore(threads + queueCapacity);
+			running = new Semaphore(threads);
+			return;
+		}
+		AtomicInteger count = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueCapacity),
+				runnable -> new Thread(runnable, "database-" + count.incrementAndGet()),
+				new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	@PreDestroy
+	public void stop() {
+		executor.shutdown();
+	}
+
+	/**
+	 * @throws RejectedExecutionException when every thread is busy and the queue is full
+	 */
+	public <T> CompletableFuture<T> supply(Supplier<T> call) {
+		Supplier<T> task = ReplicaRoutingContext.propagate(call);
+		if (admitted == null) {
+			return CompletableFuture.supplyAsync(task, executor);
+		}
+		if (!admitted.tryAcquire()) {
+			throw new RejectedExecutionException("Database executor saturated");
+		}
+		try {
+			return CompletableFuture.supplyAsync(() -> runBounded(task), executor)
+					.whenComplete( (result, error) -> admitted.release() );
+		} catch (RejectedExecutionException e) {
+			admitted.release();
+			throw e;
+		}
+	}
+
+	// admitted calls past the first threads park their virtual thread here, as queued tasks wait in the pool
+	private <T> T runBounded(Supplier<T> task) {
+		try {
+			running.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RejectedExecutionException("Interrupted waiting for a database slot", e);
+		}
+		try {
+			return task.get();
+		} finally {
+			running.release();
+		}
+	}
+
+	// looked up reflectively so the application still builds and runs on Java 8
+	private ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			ExecutorService virtual = (ExecutorService) Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor")
+					.invoke(null);
+			log.info("database executor running on virtual threads, {} calls at once and at most {} in flight",
+					threads, threads + queueCapacity);
+			return virtual;
+		} catch (ReflectiveOperationException e) {
+			log.warn("virtual threads are not available on Java {}, using a pool of {} threads",
+					System.getProperty("java.version"), threads);
+			return null;
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package com.br.libraryapi.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.br.libraryapi.model.entity.EmailOutbox;
+import com.br.libraryapi.model.entity.EmailOutboxStatus;
+import com.br.libraryapi.model.repository.EmailOutboxRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EmailOutboxWorker {
+
+	private static final List<EmailOutboxStatus> CLAIMABLE = Arrays.asList(EmailOutboxStatus.PENDING, EmailOutboxStatus.SENDING);
+	
+	@Value("${application.mail.outbox.batch-size:100}")
+	private int batchSize;
+	
+	@Value("${application.mail.outbox.workers:4}")
+	private int workers;
+	
+	@Value("${application.mail.outbox.max-attempts:6}")
+	private int maxAttempts;
+	
+	@Value("${application.mail.outbox.backoff-seconds:30}")
+	private long backoffSeconds;
+	
+	@Value("${application.mail.outbox.claim-timeout-seconds:300}")
+	private long claimTimeoutSeconds;
+	
+	private final EmailOutboxRepository repository;
+	private final EmailService emailService;
+	private final MeterRegistry meterRegistry;
+	
+	private final AtomicLong pending = new AtomicLong();
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private ThreadPoolExecutor executor;
+	
+	@PostConstruct
+	public void start() {
+		AtomicInteger threads = new AtomicInteger();
+		// the poller never submits more parts than there are idle workers, so a queue of workers parts
+		// is enough; should it fill anyway, the claimed part is delivered by the poller instead of dropped
+		this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(workers),
+				runnable -> new Thread(runnable, "mail-outbox-" + threads.incrementAndGet()),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		meterRegistry.gauge("library.mail.outbox.pending", pending);
+	}
+	
+	@PreDestroy
+	public void stop() {
+		executor.shutdown();
+	}
+	
+	/**
+	 * Claims only as many mails as the idle workers can take and hands them over without
+	 * waiting, so the shared scheduler thread is free again for the other scheduled tasks.
+	 */
+	@Scheduled(fixedDelayString = "${application.mail.outbox.poll-interval:5000}",
+			initialDelayString = "${application.mail.outbox.initial-delay:5000}")
+	public void drain() {
+		int idle;
+		// unclaimed rows stay PENDING for the next poll while the queue is full
+		while ((idle = workers - inFlight.get()) > 0 && executor.getQueue().remainingCapacity() > 0) {
+			int size = Math.max(1, batchSize * idle / workers);
+			List<EmailOutbox> batch = claimBatch(size);
+			deliver(batch, idle);
+			if (batch.size() < size) {
+				break;
+			}
+		}
+		pending.set(repository.countByStatus(EmailOutboxStatus.PENDING));
+	}
+	
+	int inFlight() {
+		return inFlight.get();
+	}
+	
+	private List<EmailOutbox> claimBatch(int size) {
+		LocalDateTime now = LocalDateTime.now();
+		List<Long> ready = repository.findReadyIds(CLAIMABLE, now, PageRequest.of(0, size));
+		if (ready.isEmpty()) {
+			return Collections.emptyList();
+		}
+		// one conditional update claims the page, the token tells the rows this claim won from those another poller took
+		String token = UUID.randomUUID().toString();
+		if (repository.claim(ready, EmailOutboxStatus.SENDING, now.plusSeconds(claimTimeoutSeconds), token, CLAIMABLE, now) == 0) {
+			return Collections.emptyList();
+		}
+		return repository.findClaimed(ready, token);
+	}
+	
+	private void deliver(List<EmailOutbox> batch, int parts) {
+		if (batch.isEmpty()) {
+			return;
+		}
+		int partSize = Math.max(1, (batch.size() + parts - 1) / parts);
+		for (int start = 0; start < batch.size(); start += partSize) {
+			List<EmailOutbox> part = batch.subList(start, Math.min(batch.size(), start + partSize));
+			inFlight.incrementAndGet();
+			executor.execute( () -> {
+				try {
+					deliverPart(part);
+				} catch (RuntimeException e) {
+					// rows left in SENDING are claimed again once the claim expires
+					log.error("error delivering outbox mails", e);
+				} finally {
+					inFlight.decrementAndGet();
+				}
+			});
+		}
+	}
+	
+	private void deliverPart(List<EmailOutbox> part) {
+		Timer.Sample sample = Timer.start(meterRegistry);
+		Map<Long, String> failures = emailService.deliver(part);
+		sample.stop(meterRegistry.timer("library.mail.outbox.send.duration"));
+		
+		LocalDateTime now = LocalDateTime.now();
+		// a part comes from a single claim, and each completion only applies while the row still holds its token
+		String token = part.get(0).getClaimToken();
+		List<Long> sent = new ArrayList<>();
+		int lost = 0;
+		for (EmailOutbox mail : part) {
+			int attempts = mail.getAttempts() + 1;
+			String error = failures.get(mail.getId());
+			if (error == null) {
+				sent.add(mail.getId());
+				meterRegistry.counter("library.mail.outbox.mails", "outcome", "sent").increment();
+				meterRegistry.timer("library.mail.outbox.latency").record(Duration.between(mail.getCreatedAt(), now));
+			} else if (attempts >= maxAttempts) {
+				lost += 1 - repository.completeFailed(mail.getId(), token, EmailOutboxStatus.DEAD, attempts,
+						mail.getNextAttemptAt(), truncate(error));
+				meterRegistry.counter("library.mail.outbox.mails", "outcome", "dead").increment();
+				log.warn("mail {} to {} dead after {} attempts: {}", mail.getId(), mail.getRecipient(), attempts, error);
+			} else {
+				lost += 1 - repository.completeFailed(mail.getId(), token, EmailOutboxStatus.PENDING, attempts,
+						now.plusSeconds(backoffSeconds << Math.min(attempts - 1, 16)), truncate(error));
+				meterRegistry.counter("library.mail.outbox.mails", "outcome", "retry").increment();
+			}
+		}
+		if (!sent.isEmpty()) {
+			lost += sent.size() - repository.completeSent(sent, token, EmailOutboxStatus.SENT, now);
+		}
+		if (lost > 0) {
+			log.warn("{} outbox mails were claimed again before their delivery completed", lost);
+		}
+	}
+	
+	private String truncate(String error) {
+		return error.length() > 500 ? error.substring(0, 500) : error;
+	}
+}
@@ -1,9 +1,18 @@
 package com.br.libraryapi.service;
 
 import java.util.List;
+import java.util.Map;
+
+import com.br.libraryapi.model.entity.EmailOutbox;
+import com.br.libraryapi.model.entity.Loan;
 
 public interface EmailService {
 
-	void sendMails(String mesage, List<String> mailList);
+	/**
+	 * Queues one mail per loan and stamps every loan's lastNotifiedAt in the same transaction.
+	 */
+	int enqueueLateLoanMails(String mesage, List<Loan> loans);
+	
+	Map<Long, String> deliver(List<EmailOutbox> mails);
 
 }
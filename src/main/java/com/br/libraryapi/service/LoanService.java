@@ -1,26 +1,67 @@
 package com.br.libraryapi.service;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
+import com.br.libraryapi.api.dto.CountMode;
+import com.br.libraryapi.api.dto.LoanBatchResultDTO;
+import com.br.libraryapi.api.dto.LoanCursor;
+import com.br.libraryapi.api.dto.LoanDTO;
 import com.br.libraryapi.api.dto.LoanFilterDTO;
+import com.br.libraryapi.api.dto.LoanReturnResultDTO;
 import com.br.libraryapi.model.entity.Book;
+import com.br.libraryapi.model.entity.Customer;
 import com.br.libraryapi.model.entity.Loan;
 
 public interface LoanService {
 	
 	Loan save(Loan loan);
 	
+	List<LoanBatchResultDTO> saveAll(List<Loan> loans);
+	
 	Optional<Loan> getById(Long id);
 
 	Loan update(Loan loan);
 	
-	Page<Loan> find(LoanFilterDTO filter, org.springframework.data.domain.Pageable pageable);
+	LoanReturnResultDTO returnAll(List<Long> ids, List<String> isbns);
+	
+	Page<LoanDTO> find(LoanFilterDTO filter, Pageable pageable);
+
+	Slice<LoanDTO> find(LoanFilterDTO filter, Pageable pageable, CountMode countMode);
+
+	Page<LoanDTO> getLoansByBook(Book book, Pageable pageable);
+
+	Slice<LoanDTO> find(LoanFilterDTO filter, LoanCursor after, int size);
 
-	Page<Loan> getLoansByBook(Book book, Pageable pageable);
+	Slice<LoanDTO> getLoansByBook(Book book, LoanCursor after, int size);
+
+	Page<LoanDTO> getLoansByCustomer(Customer customer, Pageable pageable);
 
 	List<Loan> getAllLateLoan();
+
+	/**
+	 * Flags the open loans of one id partition that fell due in [since, today) as overdue and
+	 * adds them to their customers' overdue counters, in chunks of {@code size}. Returns how
+	 * many were flagged.
+	 */
+	int markOverdue(LocalDate since, LocalDate today, int partition, int partitions, int size);
+
+	/**
+	 * Open loans that fell due on or after {@code since} and before {@code today} and were
+	 * never notified, in id order after {@code afterId}. Only loans whose id modulo
+	 * {@code partitions} is {@code partition} are read.
+	 */
+	List<Loan> getNewlyLateLoans(LocalDate since, LocalDate today, int partition, int partitions, Long afterId, int size);
+
+	/**
+	 * Open loans last notified before {@code notifiedBefore}, in id order after {@code afterId},
+	 * restricted to one id partition like {@link #getNewlyLateLoans}.
+	 */
+	List<Loan> getLateLoansDueForReminder(LocalDateTime notifiedBefore, int partition, int partitions, Long afterId, int size);
 }
@@ -1,37 +1,135 @@
 package com.br.libraryapi.service;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.function.LongFunction;
+
+import javax.annotation.PostConstruct;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import com.br.libraryapi.model.entity.JobWatermark;
 import com.br.libraryapi.model.entity.Loan;
+import com.br.libraryapi.model.repository.JobWatermarkRepository;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class ScheduleService {
 
+	public static final String LATE_LOANS_JOB = "late-loans";
+	
 	private static final String CRON_LATE_LOANS = "0 0 0 1/1 * ?";
 	
+	// without a watermark the first run covers every overdue loan that was never notified
+	private static final LocalDate NO_WATERMARK = LocalDate.of(1970, 1, 1);
+	
 	@Value("${application.mail.lateloans.message}")	
 	private String mesage;
 	
+	@Value("${application.mail.lateloans.chunk-size:500}")
+	private int chunkSize;
+	
+	@Value("${application.mail.lateloans.reminder-days:7}")
+	private int reminderDays;
+	
+	@Value("${application.jobs.late-loans.partitions:1}")
+	private int partitions;
+	
 	private final LoanService loanService;
 	private final EmailService emailService;
+	private final JobWatermarkRepository watermarkRepository;
+	private final ClusterJobRunner jobRunner;
+	private final MeterRegistry meterRegistry;
+	
+	@PostConstruct
+	public void register() {
+		jobRunner.register(LATE_LOANS_JOB, partitions, this::notifyLateLoans, this::advanceWatermark);
+	}
 	
+	/**
+	 * Fires on every node; the runner makes sure each partition of the day's run is processed
+	 * by only one of them.
+	 */
 	@Scheduled(cron = CRON_LATE_LOANS)
 	public void sendMailToLateLoans() {
-		List<Loan> allLateLoans = loanService.getAllLateLoan();
-		List<String> mailList = allLateLoans.stream()
-			.map( loan -> loan.getCustomerEmail())
-			.collect(Collectors.toList());
-
-		emailService.sendMails(mesage ,mailList);
+		jobRunner.run(LATE_LOANS_JOB, LocalDate.now());
 	}
 	
+	/**
+	 * Counts the loans of one partition that fell due since the previous run as overdue and
+	 * notifies them, then re-notifies the ones whose last notice is reminder-days old. Loans
+	 * already told about and not yet due a reminder are never read. A failed chunk fails the
+	 * partition, so that it is retried.
+	 */
+	public void notifyLateLoans(int partition, int partitions, LocalDate today) {
+		LocalDate since = watermarkRepository.findById(LATE_LOANS_JOB)
+				.map(JobWatermark::getWatermark)
+				.orElse(NO_WATERMARK);
+		LocalDateTime notifiedBefore = today.minusDays(reminderDays - 1).atStartOfDay();
+		
+		int marked = loanService.markOverdue(since, today, partition, partitions, chunkSize);
+		Run overdue = enqueue("overdue", afterId -> loanService.getNewlyLateLoans(since, today, partition, partitions, afterId, chunkSize));
+		Run reminders = enqueue("reminder", afterId -> loanService.getLateLoansDueForReminder(notifiedBefore, partition, partitions, afterId, chunkSize));
+		
+		log.info("late loans partition {} of {} finished: {} loans became overdue, {} overdue and {} reminder mails enqueued",
+				partition, partitions, marked, overdue.enqueued, reminders.enqueued);
+		// a failed chunk is still unnotified, and would fall below a moved watermark
+		if (overdue.failed + reminders.failed > 0) {
+			throw new IllegalStateException(overdue.failed + reminders.failed + " late loan chunks failed in partition " + partition);
+		}
+	}
+	
+	// only once every partition completed, the next run starts from today
+	public void advanceWatermark(LocalDate today) {
+		watermarkRepository.save(JobWatermark.builder()
+				.name(LATE_LOANS_JOB)
+				.watermark(today)
+				.updatedAt(LocalDateTime.now())
+				.build());
+	}
+	
+	private Run enqueue(String kind, LongFunction<List<Loan>> nextChunk) {
+		Run run = new Run();
+		List<Loan> lateLoans = nextChunk.apply(0l);
+		while (!lateLoans.isEmpty()) {
+			run.chunks++;
+			enqueueChunk(kind, run, lateLoans);
+			if (lateLoans.size() < chunkSize) {
+				break;
+			}
+			Long lastId = lateLoans.get(lateLoans.size() - 1).getId();
+			lateLoans = nextChunk.apply(lastId);
+		}
+		return run;
+	}
+	
+	private void enqueueChunk(String kind, Run run, List<Loan> lateLoans) {
+		int enqueued = 0;
+		try {
+			// delivery happens later through the outbox workers
+			enqueued = emailService.enqueueLateLoanMails(mesage, lateLoans);
+		} catch (RuntimeException e) {
+			run.failed++;
+			log.error("error enqueueing {} chunk {}", kind, run.chunks, e);
+		}
+		run.enqueued += enqueued;
+		meterRegistry.counter("library.lateloans.chunks").increment();
+		meterRegistry.counter("library.lateloans.mails.enqueued").increment(enqueued);
+		log.info("{} chunk {}: {} loans, {} mails enqueued", kind, run.chunks, lateLoans.size(), enqueued);
+	}
 	
+	private static final class Run {
+		
+		private int chunks;
+		private int failed;
+		private int enqueued;
+	}
 }
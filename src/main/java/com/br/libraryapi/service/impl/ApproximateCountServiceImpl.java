@@ -0,0 +1,70 @@
+package com.br.libraryapi.service.impl;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Service;
+
+import com.br.libraryapi.service.ApproximateCountService;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+
+@Service
+public class ApproximateCountServiceImpl implements ApproximateCountService {
+
+	private static final int MAXIMUM_KEYS = 10000;
+
+	private final LoadingCache<Key, Long> counts;
+
+	// stale counts are served while a refresh runs in the background
+	public ApproximateCountServiceImpl(
+			@Value("${application.count.approximate.refresh-seconds:30}") long refreshSeconds,
+			@Value("${application.count.approximate.expire-seconds:300}") long expireSeconds) {
+		this.counts = Caffeine.newBuilder()
+				.maximumSize(MAXIMUM_KEYS)
+				.refreshAfterWrite(Duration.ofSeconds(refreshSeconds))
+				.expireAfterWrite(Duration.ofSeconds(expireSeconds))
+				.build(key -> key.counter.get());
+	}
+
+	@Override
+	public long count(String key, Supplier<Long> counter) {
+		return counts.get(new Key(key, counter));
+	}
+
+	@Override
+	public <T> Page<T> toPage(Slice<T> slice, String key, Supplier<Long> counter) {
+		long seen = slice.getPageable().isPaged()
+				? slice.getPageable().getOffset() + slice.getNumberOfElements()
+				: slice.getNumberOfElements();
+		// never report fewer rows than this slice proves exist
+		long total = Math.max(count(key, counter), slice.hasNext() ? seen + 1 : seen);
+		return new PageImpl<T>(slice.getContent(), slice.getPageable(), total);
+	}
+
+	private static final class Key {
+
+		private final String name;
+		private final Supplier<Long> counter;
+
+		private Key(String name, Supplier<Long> counter) {
+			this.name = name;
+			this.counter = counter;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Key && name.equals(((Key) other).name);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(name);
+		}
+	}
+}
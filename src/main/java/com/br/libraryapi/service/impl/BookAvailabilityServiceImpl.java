@@ -0,0 +1,79 @@
+package com.br.libraryapi.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.stereotype.Service;
+
+import com.br.libraryapi.model.repository.LoanRepository;
+import com.br.libraryapi.service.BookAvailabilityService;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Service
+@Slf4j
+public class BookAvailabilityServiceImpl implements BookAvailabilityService {
+
+	private static final int LOCK_STRIPES = 64;
+
+	private final LoanRepository repository;
+	private final Lock[] locks = new Lock[LOCK_STRIPES];
+	private volatile LoanedBookSet loanedBooks = new LoanedBookSet();
+
+	public BookAvailabilityServiceImpl(LoanRepository repository) {
+		this.repository = repository;
+		for (int i = 0; i < LOCK_STRIPES; i++) {
+			locks[i] = new ReentrantLock();
+		}
+	}
+
+	@Override
+	public boolean isLoaned(Long bookId) {
+		return loanedBooks.contains(bookId);
+	}
+
+	@Override
+	public void markLoaned(Long bookId) {
+		loanedBooks.add(bookId);
+	}
+
+	@Override
+	public void markReturned(Long bookId) {
+		loanedBooks.remove(bookId);
+	}
+
+	@Override
+	public Lock lockFor(Long bookId) {
+		return locks[stripe(bookId)];
+	}
+
+	// distinct stripes in ascending order, so callers taking several locks cannot deadlock
+	@Override
+	public List<Lock> locksFor(Collection<Long> bookIds) {
+		TreeSet<Integer> stripes = new TreeSet<>();
+		bookIds.forEach( bookId -> stripes.add(stripe(bookId)) );
+		List<Lock> result = new ArrayList<>(stripes.size());
+		stripes.forEach( stripe -> result.add(locks[stripe]) );
+		return result;
+	}
+
+	private int stripe(Long bookId) {
+		int hash = Long.hashCode(bookId);
+		return (hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1);
+	}
+
+	@Override
+	@PostConstruct
+	public void rebuild() {
+		LoanedBookSet rebuilt = new LoanedBookSet();
+		repository.findNotReturnedBookIds().forEach(rebuilt::add);
+		loanedBooks = rebuilt;
+		log.info("book availability rebuilt with {} loaned books", rebuilt.size());
+	}
+}
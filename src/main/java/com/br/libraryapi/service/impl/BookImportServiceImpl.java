@@ -0,0 +1,148 @@
+package com.br.libraryapi.service.impl;
+
+import static com.br.libraryapi.service.impl.ConstraintViolations.isViolationOf;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import com.br.libraryapi.api.dto.BookDTO;
+import com.br.libraryapi.api.dto.BookImportResultDTO;
+import com.br.libraryapi.api.dto.BookImportRow;
+import com.br.libraryapi.model.entity.Book;
+import com.br.libraryapi.model.repository.BookRepository;
+import com.br.libraryapi.service.BookImportService;
+import com.br.libraryapi.service.BookSearchService;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Service
+@Slf4j
+public class BookImportServiceImpl implements BookImportService {
+
+	static final String DUPLICATED = "DUPLICATED";
+	static final String INVALID = "INVALID";
+	
+	@Value("${application.books.import.chunk-size:1000}")
+	private int chunkSize;
+	
+	private BookRepository repository;
+	private BookSearchService searchService;
+	private TransactionTemplate transactionTemplate;
+	
+	public BookImportServiceImpl(BookRepository repository, BookSearchService searchService, PlatformTransactionManager transactionManager) {
+		this.repository = repository;
+		this.searchService = searchService;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+	
+	@Override
+	public BookImportResultDTO importBooks(Iterator<BookImportRow> rows) {
+		BookImportResultDTO result = new BookImportResultDTO();
+		List<BookImportRow> chunk = new ArrayList<>(chunkSize);
+		while (rows.hasNext()) {
+			chunk.add(rows.next());
+			if (chunk.size() == chunkSize) {
+				importChunk(chunk, result);
+				chunk.clear();
+			}
+		}
+		if (!chunk.isEmpty()) {
+			importChunk(chunk, result);
+		}
+		log.info("book import finished: {} rows, {} imported, {} duplicated, {} invalid",
+				result.getTotal(), result.getImported(), result.getDuplicated(), result.getInvalid());
+		return result;
+	}
+	
+	private void importChunk(List<BookImportRow> chunk, BookImportResultDTO result) {
+		Map<String, BookImportRow> byIsbn = new LinkedHashMap<>();
+		for (BookImportRow row : chunk) {
+			result.setTotal(result.getTotal() + 1);
+			BookDTO book = row.getBook();
+			if (row.getError() != null) {
+				invalid(result, row, row.getError());
+			} else if (!StringUtils.hasText(book.getTitle()) || !StringUtils.hasText(book.getAuthor()) || !StringUtils.hasText(book.getIsbn())) {
+				invalid(result, row, "Title, author and isbn are required");
+			} else if (byIsbn.putIfAbsent(book.getIsbn(), row) != null) {
+				duplicated(result, row);
+			}
+		}
+		if (byIsbn.isEmpty()) {
+			return;
+		}
+		
+		List<Book> imported;
+		try {
+			imported = insert(byIsbn.values());
+		} catch (DataIntegrityViolationException e) {
+			if (!isViolationOf(e, Book.ISBN_CONSTRAINT)) {
+				throw e;
+			}
+			// an isbn was saved elsewhere after the check, so each row is retried alone to find the losers
+			log.warn("book import chunk hit an isbn saved concurrently, retrying {} rows one by one", byIsbn.size());
+			imported = new ArrayList<>();
+			for (BookImportRow row : byIsbn.values()) {
+				try {
+					imported.addAll(insert(Collections.singletonList(row)));
+				} catch (DataIntegrityViolationException rowError) {
+					if (!isViolationOf(rowError, Book.ISBN_CONSTRAINT)) {
+						throw rowError;
+					}
+				}
+			}
+		}
+		searchService.index(imported);
+		result.setImported(result.getImported() + imported.size());
+		Set<String> importedIsbns = imported.stream().map(Book::getIsbn).collect(Collectors.toSet());
+		byIsbn.values()
+			.stream()
+			.filter( row -> !importedIsbns.contains(row.getBook().getIsbn()) )
+			.forEach( row -> duplicated(result, row) );
+	}
+	
+	// earlier chunks are already committed, so one IN query covers duplicates across the whole file
+	private List<Book> insert(Collection<BookImportRow> rows) {
+		return transactionTemplate.execute( status -> {
+			Set<String> existing = new HashSet<>(repository.findExistingIsbns(
+					rows.stream().map( row -> row.getBook().getIsbn() ).collect(Collectors.toList())));
+			List<Book> books = rows
+					.stream()
+					.filter( row -> !existing.contains(row.getBook().getIsbn()) )
+					.map( row -> Book.builder()
+							.title(row.getBook().getTitle())
+							.author(row.getBook().getAuthor())
+							.isbn(row.getBook().getIsbn())
+							.build() )
+					.collect(Collectors.toList());
+			List<Book> saved = repository.saveAll(books);
+			// flushed here so a concurrent isbn fails this call and not the commit
+			repository.flush();
+			return saved;
+		});
+	}
+	
+	private void invalid(BookImportResultDTO result, BookImportRow row, String message) {
+		result.setInvalid(result.getInvalid() + 1);
+		result.reject(row.getLine(), row.getBook() == null ? null : row.getBook().getIsbn(), INVALID, message);
+	}
+	
+	private void duplicated(BookImportResultDTO result, BookImportRow row) {
+		result.setDuplicated(result.getDuplicated() + 1);
+		result.reject(row.getLine(), row.getBook().getIsbn(), DUPLICATED, "Isbn já cadastrado");
+	}
+}
@@ -0,0 +1,130 @@
+package com.br.libraryapi.service.impl;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.br.libraryapi.api.dto.BookDTO;
+import com.br.libraryapi.model.entity.Book;
+import com.br.libraryapi.model.repository.BookIndexState;
+import com.br.libraryapi.model.repository.BookRepository;
+import com.br.libraryapi.service.BookSearchService;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Service
+@Slf4j
+public class BookSearchServiceImpl implements BookSearchService {
+
+	private static final int REBUILD_PAGE_SIZE = 1000;
+
+	private final BookRepository repository;
+	private volatile BookTrigramIndex index = new BookTrigramIndex();
+	private volatile String indexedState;
+	private volatile boolean ready;
+
+	public BookSearchServiceImpl(BookRepository repository) {
+		this.repository = repository;
+	}
+
+	@Override
+	public boolean isReady() {
+		return ready;
+	}
+
+	@Override
+	public void index(Book book) {
+		index.put(book);
+	}
+
+	@Override
+	public void index(Collection<Book> books) {
+		books.forEach(index::put);
+	}
+
+	@Override
+	public void remove(Long bookId) {
+		index.remove(bookId);
+	}
+
+	@Override
+	public Page<Book> search(Book filter, Pageable pageable) {
+		return search(filter, pageable, repository::findAllById, Book::getId);
+	}
+
+	@Override
+	public Page<BookDTO> searchDTO(Book filter, Pageable pageable) {
+		return search(filter, pageable, repository::findDTOByIdIn, BookDTO::getId);
+	}
+
+	private <T> Page<T> search(Book filter, Pageable pageable, Function<List<Long>, List<T>> loader, Function<T, Long> id) {
+		List<Long> ids = index.search(filter.getTitle(), filter.getAuthor(), filter.getIsbn());
+		List<Long> pageIds = ids;
+		if (pageable.isPaged()) {
+			int from = (int) Math.min(pageable.getOffset(), ids.size());
+			pageIds = ids.subList(from, Math.min(ids.size(), from + pageable.getPageSize()));
+		}
+		
+		Map<Long, T> rows = loader.apply(pageIds)
+				.stream()
+				.collect(Collectors.toMap(id, Function.identity()));
+		List<T> content = pageIds.stream()
+				.map(rows::get)
+				.filter(Objects::nonNull)
+				.collect(Collectors.toList());
+		return new PageImpl<T>(content, pageable, ids.size());
+	}
+
+	// runs once the server is up: searches use the database until the index is complete
+	@Override
+	@EventListener(ApplicationReadyEvent.class)
+	public synchronized void rebuild() {
+		// read first: a change made while the pages are read leaves the state behind, and the next refresh builds again
+		String state = stateOf(repository.findIndexState());
+		BookTrigramIndex fresh = new BookTrigramIndex();
+		Long lastId = 0l;
+		Slice<Book> page;
+		do {
+			page = repository.findByIdGreaterThan(lastId, PageRequest.of(0, REBUILD_PAGE_SIZE, Sort.by("id")));
+			page.forEach(fresh::put);
+			if (page.hasContent()) {
+				lastId = page.getContent().get(page.getNumberOfElements() - 1).getId();
+			}
+		} while (page.hasNext());
+		index = fresh;
+		indexedState = state;
+		ready = true;
+		log.info("book search index rebuilt with {} books", fresh.size());
+	}
+
+	/**
+	 * Builds the index again when the books changed since it was built, through this node or
+	 * any other. Searches use the database until the new index is swapped in.
+	 */
+	@Scheduled(fixedDelayString = "${application.books.search.refresh-interval:30000}",
+			initialDelayString = "${application.books.search.refresh-interval:30000}")
+	public void refresh() {
+		if (!stateOf(repository.findIndexState()).equals(indexedState)) {
+			ready = false;
+			rebuild();
+		}
+	}
+
+	private static String stateOf(BookIndexState state) {
+		return state.getCount() + ":" + state.getMaxId() + ":" + state.getVersionSum();
+	}
+}
@@ -1,27 +1,47 @@
 package com.br.libraryapi.service.impl;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.ExampleMatcher;
 import org.springframework.data.domain.ExampleMatcher.StringMatcher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.repository.support.PageableExecutionUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
 
+import com.br.libraryapi.api.dto.BookDTO;
+import com.br.libraryapi.api.dto.CountMode;
+import com.br.libraryapi.config.CacheConfig;
 import com.br.libraryapi.exception.BusinessException;
 import com.br.libraryapi.model.entity.Book;
 import com.br.libraryapi.model.repository.BookRepository;
+import com.br.libraryapi.service.ApproximateCountService;
+import com.br.libraryapi.service.BookSearchService;
 import com.br.libraryapi.service.BookService;
 
 @Service
 public class BookServiceImpl implements BookService {
 
 	private BookRepository repository;
+	private BookSearchService searchService;
+	private ApproximateCountService countService;
 
-	public BookServiceImpl(BookRepository repository) {
+	public BookServiceImpl(BookRepository repository, BookSearchService searchService, ApproximateCountService countService) {
 		super();
 		this.repository = repository;
+		this.searchService = searchService;
+		this.countService = countService;
 	}
 
 	@Override
@@ -29,43 +49,135 @@ public class BookServiceImpl implements BookService {
 		if (repository.existsByIsbn(book.getIsbn())) {
 			throw new BusinessException("Isbn já cadastrado");
 		}
-		return repository.save(book);
+		Book saved;
+		try {
+			saved = repository.save(book);
+		} catch (DataIntegrityViolationException e) {
+			throw new BusinessException("Isbn já cadastrado");
+		}
+		searchService.index(saved);
+		return saved;
 	}
 	
 	@Override
+	@Cacheable(cacheNames = CacheConfig.BOOKS_BY_ID, key = "#id", unless = "#result == null")
 	public Optional<Book> getById(Long id) {
-		return repository.findById(id);
+		return repository.findById(id).map(this::detached);
 	}
 
 	@Override
+	@Caching(evict = {
+			@CacheEvict(cacheNames = CacheConfig.BOOKS_BY_ID, key = "#book.id"),
+			@CacheEvict(cacheNames = CacheConfig.BOOKS_BY_ISBN, key = "#book.isbn", condition = "#book.isbn != null") })
 	public void delete(Book book) {
 		if (book == null || book.getId() == null) {
 			throw new IllegalArgumentException("O Id do Livro não pode ser nulo");
 		}
-		this.repository.delete(book);		
+		this.repository.delete(book);
+		searchService.remove(book.getId());
 	}
 
+	// evicted up front so a failed write never leaves the old version cached next to the new one
 	@Override
+	@Caching(evict = {
+			@CacheEvict(cacheNames = CacheConfig.BOOKS_BY_ID, key = "#book.id", beforeInvocation = true),
+			@CacheEvict(cacheNames = CacheConfig.BOOKS_BY_ISBN, key = "#book.isbn", condition = "#book.isbn != null", beforeInvocation = true) })
 	public Book update(Book book) {
 		if (book == null || book.getId() == null) {
 			throw new IllegalArgumentException("O Id do Livro não pode ser nulo");
 		}
-		return this.repository.save(book);
+		Book updated = this.repository.save(book);
+		searchService.index(updated);
+		return updated;
 	}
 	
 	@Override
+	@Transactional(readOnly = true)
 	public Page<Book> find(Book filter, Pageable pageRequest) {
-		Example example = Example.of(filter,
-								ExampleMatcher
-									.matching()
-									.withIgnoreCase()
-									.withIgnoreNullValues()
-									.withStringMatcher( StringMatcher.CONTAINING ));
-		return repository.findAll(example, pageRequest);
+		if (isTextSearch(filter, pageRequest)) {
+			return searchService.search(filter, pageRequest);
+		}
+		return repository.findAll(example(filter), pageRequest);
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public Slice<Book> find(Book filter, Pageable pageRequest, CountMode countMode) {
+		if (isTextSearch(filter, pageRequest)) {
+			// the index knows the total for free
+			Page<Book> page = searchService.search(filter, pageRequest);
+			return countMode == CountMode.NONE ? new SliceImpl<Book>(page.getContent(), pageRequest, page.hasNext()) : page;
+		}
+		Example<Book> example = example(filter);
+		switch (countMode) {
+			case NONE:
+				return repository.findSlice(example, pageRequest);
+			case APPROX:
+				return countService.toPage(repository.findSlice(example, pageRequest), countKey(filter), () -> repository.count(example));
+			default:
+				return repository.findAll(example, pageRequest);
+		}
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public Slice<BookDTO> findDTO(Book filter, Pageable pageRequest, CountMode countMode) {
+		if (isTextSearch(filter, pageRequest)) {
+			Page<BookDTO> page = searchService.searchDTO(filter, pageRequest);
+			return countMode == CountMode.NONE ? new SliceImpl<BookDTO>(page.getContent(), pageRequest, page.hasNext()) : page;
+		}
+		Example<Book> example = example(filter);
+		Slice<BookDTO> slice = repository.findDTOSlice(example, pageRequest);
+		switch (countMode) {
+			case NONE:
+				return slice;
+			case APPROX:
+				return countService.toPage(slice, countKey(filter), () -> repository.count(example));
+			default:
+				// skips the count when the slice already tells the total
+				return PageableExecutionUtils.getPage(slice.getContent(), pageRequest, () -> repository.count(example));
+		}
+	}
+
+	private Example<Book> example(Book filter) {
+		return Example.of(filter,
+				ExampleMatcher
+					.matching()
+					.withIgnoreCase()
+					.withIgnoreNullValues()
+					.withStringMatcher( StringMatcher.CONTAINING ));
+	}
+
+	private String countKey(Book filter) {
+		return String.join("|", "books", lower(filter.getTitle()), lower(filter.getAuthor()), lower(filter.getIsbn()));
+	}
+
+	private String lower(String value) {
+		return value == null ? "" : value.toLowerCase();
+	}
+
+	// relevance ordering only applies when the client did not ask for a sort
+	private boolean isTextSearch(Book filter, Pageable pageRequest) {
+		return searchService.isReady()
+				&& filter.getId() == null
+				&& pageRequest.getSort().isUnsorted()
+				&& (StringUtils.hasText(filter.getTitle()) || StringUtils.hasText(filter.getAuthor()));
 	}
 
 	@Override
+	@Cacheable(cacheNames = CacheConfig.BOOKS_BY_ISBN, key = "#isbn", unless = "#result == null")
 	public Optional<Book> getBookByIsbn(String isbn) {
-		return repository.findByIsbn(isbn);
+		return repository.findByIsbn(isbn).map(this::detached);
+	}
+
+	// the cache shares one instance across requests, so it never holds the managed entity
+	private Book detached(Book book) {
+		return book.toBuilder().loans(null).build();
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public List<Book> getBooksByIsbn(Collection<String> isbns) {
+		return repository.findByIsbnIn(isbns);
 	}
 }
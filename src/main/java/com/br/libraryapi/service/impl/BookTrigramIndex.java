@@ -0,0 +1,176 @@
+package com.br.libraryapi.service.impl;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import com.br.libraryapi.model.entity.Book;
+
+/**
+ * In-memory trigram inverted index over book titles and authors. Queries of
+ * three or more characters only visit the books listed under their rarest
+ * trigram; every candidate is then checked with a plain substring match, so
+ * results have the same containment semantics as the old LIKE query, minus
+ * case and accents. Writers are serialized, readers never block.
+ */
+public final class BookTrigramIndex {
+
+	private static final char TITLE = 't';
+	private static final char AUTHOR = 'a';
+
+	private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+	private final Map<String, Set<Long>> postings = new ConcurrentHashMap<>();
+
+	public synchronized void put(Book book) {
+		remove(book.getId());
+		Entry entry = new Entry(book.getId(), normalize(book.getTitle()), normalize(book.getAuthor()), normalize(book.getIsbn()));
+		entries.put(entry.id, entry);
+		for (String key : keys(entry)) {
+			postings.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(entry.id);
+		}
+	}
+
+	public synchronized void remove(Long id) {
+		Entry entry = entries.remove(id);
+		if (entry == null) {
+			return;
+		}
+		for (String key : keys(entry)) {
+			postings.computeIfPresent(key, (k, ids) -> {
+				ids.remove(id);
+				return ids.isEmpty() ? null : ids;
+			});
+		}
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Ids of the books whose title, author and isbn contain the given values
+	 * (null values match everything), best matches first.
+	 */
+	public List<Long> search(String title, String author, String isbn) {
+		String normalizedTitle = normalize(title);
+		String normalizedAuthor = normalize(author);
+		String normalizedIsbn = normalize(isbn);
+
+		List<Scored> matches = new ArrayList<>();
+		for (Long id : candidates(normalizedTitle, normalizedAuthor)) {
+			Entry entry = entries.get(id);
+			if (entry != null
+					&& contains(entry.title, normalizedTitle)
+					&& contains(entry.author, normalizedAuthor)
+					&& contains(entry.isbn, normalizedIsbn)) {
+				matches.add(new Scored(id, score(entry.title, normalizedTitle) + score(entry.author, normalizedAuthor)));
+			}
+		}
+		return matches.stream()
+				.sorted(Comparator.comparingDouble((Scored scored) -> scored.score).reversed().thenComparing(scored -> scored.id))
+				.map(scored -> scored.id)
+				.collect(Collectors.toList());
+	}
+
+	private Collection<Long> candidates(String title, String author) {
+		Set<Long> smallest = null;
+		List<String> keys = new ArrayList<>();
+		keys.addAll(trigrams(TITLE, title));
+		keys.addAll(trigrams(AUTHOR, author));
+		for (String key : keys) {
+			Set<Long> ids = postings.get(key);
+			if (ids == null) {
+				return new ArrayList<>();
+			}
+			if (smallest == null || ids.size() < smallest.size()) {
+				smallest = ids;
+			}
+		}
+		// queries shorter than a trigram fall back to scanning every entry
+		return smallest == null ? entries.keySet() : new ArrayList<>(smallest);
+	}
+
+	private static Set<String> keys(Entry entry) {
+		Set<String> keys = new LinkedHashSet<>();
+		keys.addAll(trigrams(TITLE, entry.title));
+		keys.addAll(trigrams(AUTHOR, entry.author));
+		return keys;
+	}
+
+	private static Set<String> trigrams(char field, String value) {
+		Set<String> trigrams = new LinkedHashSet<>();
+		if (value == null) {
+			return trigrams;
+		}
+		for (int i = 0; i + 3 <= value.length(); i++) {
+			trigrams.add(field + value.substring(i, i + 3));
+		}
+		return trigrams;
+	}
+
+	private static boolean contains(String value, String query) {
+		return query == null || (value != null && value.contains(query));
+	}
+
+	// exact > prefix > word start > anywhere, with shorter fields ranked higher
+	private static double score(String value, String query) {
+		if (query == null || value == null) {
+			return 0;
+		}
+		double score = (double) query.length() / value.length();
+		if (value.equals(query)) {
+			return score + 3;
+		}
+		if (value.startsWith(query)) {
+			return score + 2;
+		}
+		for (int index = value.indexOf(query); index > 0; index = value.indexOf(query, index + 1)) {
+			if (!Character.isLetterOrDigit(value.charAt(index - 1))) {
+				return score + 1;
+			}
+		}
+		return score;
+	}
+
+	static String normalize(String value) {
+		if (value == null || value.trim().isEmpty()) {
+			return null;
+		}
+		String decomposed = Normalizer.normalize(value.trim().toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+		return decomposed.replaceAll("\\p{M}", "");
+	}
+
+	private static final class Entry {
+
+		private final Long id;
+		private final String title;
+		private final String author;
+		private final String isbn;
+
+		private Entry(Long id, String title, String author, String isbn) {
+			this.id = id;
+			this.title = title;
+			this.author = author;
+			this.isbn = isbn;
+		}
+	}
+
+	private static final class Scored {
+
+		private final Long id;
+		private final double score;
+
+		private Scored(Long id, double score) {
+			this.id = id;
+			this.score = score;
+		}
+	}
+}
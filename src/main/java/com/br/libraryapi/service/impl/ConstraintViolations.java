@@ -0,0 +1,19 @@
+package com.br.libraryapi.service.impl;
+
+import java.util.Locale;
+
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+
+final class ConstraintViolations {
+
+	private ConstraintViolations() {
+	}
+
+	// any other violation, such as a missing book or customer, is a real error and not a conflict
+	static boolean isViolationOf(DataIntegrityViolationException e, String constraintName) {
+		Throwable cause = e.getCause();
+		String constraint = cause instanceof ConstraintViolationException ? ((ConstraintViolationException) cause).getConstraintName() : null;
+		return constraint != null && constraint.toLowerCase(Locale.ROOT).contains(constraintName);
+	}
+}
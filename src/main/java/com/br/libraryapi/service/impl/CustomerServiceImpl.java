@@ -0,0 +1,85 @@
+package com.br.libraryapi.service.impl;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
+
+import com.br.libraryapi.model.entity.Customer;
+import com.br.libraryapi.model.entity.Loan;
+import com.br.libraryapi.model.repository.CustomerRepository;
+import com.br.libraryapi.service.CustomerService;
+
+@Service
+public class CustomerServiceImpl implements CustomerService {
+
+	private CustomerRepository repository;
+
+	public CustomerServiceImpl(CustomerRepository repository) {
+		this.repository = repository;
+	}
+
+	@Override
+	public Optional<Customer> getById(Long id) {
+		return repository.findById(id);
+	}
+
+	@Override
+	@Transactional(propagation = Propagation.MANDATORY)
+	public void assignCustomers(Collection<Loan> loans) {
+		Map<String, String> names = new LinkedHashMap<>();
+		for (Loan loan : loans) {
+			if (loan.getCustomerId() == null && StringUtils.hasText(loan.getCustomerEmail())) {
+				names.putIfAbsent(Customer.normalizeEmail(loan.getCustomerEmail()), loan.getCustomer());
+			}
+		}
+		if (names.isEmpty()) {
+			return;
+		}
+		
+		Map<String, Long> ids = new HashMap<>();
+		repository.findByEmailIn(names.keySet()).forEach( customer -> ids.put(customer.getEmail(), customer.getId()) );
+		names.forEach( (email, name) -> ids.computeIfAbsent(email, key -> create(name, key)) );
+		for (Loan loan : loans) {
+			if (loan.getCustomerId() == null && StringUtils.hasText(loan.getCustomerEmail())) {
+				loan.setCustomerId(ids.get(Customer.normalizeEmail(loan.getCustomerEmail())));
+			}
+		}
+	}
+	
+	// flushed now, so a customer created concurrently fails here rather than with the loans
+	private Long create(String name, String email) {
+		return repository.saveAndFlush(Customer.builder().name(name).email(email).build()).getId();
+	}
+
+	@Override
+	@Transactional(propagation = Propagation.MANDATORY)
+	public void addLoans(Map<Long, Integer> openLoans, Map<Long, Integer> overdueLoans) {
+		// in id order, so two transactions never wait on each other's customer rows
+		Set<Long> ids = new TreeSet<>(openLoans.keySet());
+		ids.addAll(overdueLoans.keySet());
+		for (Long id : ids) {
+			int open = openLoans.getOrDefault(id, 0);
+			int overdue = overdueLoans.getOrDefault(id, 0);
+			if (open != 0 || overdue != 0) {
+				repository.addLoans(id, open, overdue);
+			}
+		}
+	}
+
+	@Override
+	@Transactional(propagation = Propagation.MANDATORY)
+	public void recount(Collection<Long> customerIds) {
+		if (!customerIds.isEmpty()) {
+			repository.recount(new TreeSet<>(customerIds));
+		}
+	}
+}
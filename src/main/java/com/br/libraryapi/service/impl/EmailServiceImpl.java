@@ -1,36 +1,120 @@
 package com.br.libraryapi.service.impl;
 
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.br.libraryapi.model.entity.EmailOutbox;
+import com.br.libraryapi.model.entity.EmailOutboxStatus;
+import com.br.libraryapi.model.entity.Loan;
+import com.br.libraryapi.model.repository.EmailOutboxRepository;
+import com.br.libraryapi.model.repository.LoanRepository;
 import com.br.libraryapi.service.EmailService;
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class EmailServiceImpl implements EmailService {
 
+	private static final String LATE_LOAN_SUBJECT = "Livro com empréstimo atrasado";
+	
 	@Value("${application.mail.default.remetent}")
 	private String remetent;
 	
 	private final JavaMailSender javaMailSend;
+	private final EmailOutboxRepository outboxRepository;
+	private final LoanRepository loanRepository;
+	
+	@Override
+	@Transactional
+	public int enqueueLateLoanMails(String mesage, List<Loan> loans) {
+		LocalDateTime now = LocalDateTime.now();
+		Map<String, EmailOutbox> mails = new LinkedHashMap<>();
+		for (Loan loan : loans) {
+			if (loan.getCustomerEmail() == null) {
+				continue;
+			}
+			String dedupKey = loan.getCustomerEmail() + "|" + loan.getId() + "|" + now.toLocalDate();
+			mails.putIfAbsent(dedupKey, EmailOutbox.builder()
+					.recipient(loan.getCustomerEmail())
+					.subject(LATE_LOAN_SUBJECT)
+					.body(mesage)
+					.loanId(loan.getId())
+					.dedupKey(dedupKey)
+					.status(EmailOutboxStatus.PENDING)
+					.attempts(0)
+					.nextAttemptAt(now)
+					.createdAt(now)
+					.build());
+		}
+		// committed with the mails, so a failed chunk is picked up again by the next run
+		if (!loans.isEmpty()) {
+			loanRepository.markNotified(loans.stream().map(Loan::getId).collect(Collectors.toList()), now);
+		}
+		if (mails.isEmpty()) {
+			return 0;
+		}
+		
+		outboxRepository.findExistingDedupKeys(mails.keySet()).forEach(mails::remove);
+		outboxRepository.saveAll(mails.values());
+		return mails.size();
+	}
 	
 	@Override
-	public void sendMails(String mesage, List<String> mailList) {
-		String[] mails = mailList.toArray(new String[mailList.size()]);
+	public Map<Long, String> deliver(List<EmailOutbox> mails) {
+		Map<SimpleMailMessage, Long> ids = new IdentityHashMap<>();
+		SimpleMailMessage[] messages = new SimpleMailMessage[mails.size()];
+		for (int i = 0; i < mails.size(); i++) {
+			messages[i] = createMessage(mails.get(i));
+			ids.put(messages[i], mails.get(i).getId());
+		}
 		
+		try {
+			// one connection to the SMTP server is reused for every message
+			javaMailSend.send(messages);
+			return Collections.emptyMap();
+		} catch (MailSendException e) {
+			if (e.getFailedMessages().isEmpty()) {
+				log.error("error sending {} mails", mails.size(), e);
+				return failAll(mails, e);
+			}
+			log.error("error sending {} of {} mails", e.getFailedMessages().size(), mails.size(), e);
+			Map<Long, String> failed = new HashMap<>();
+			e.getFailedMessages().forEach( (message, error) -> failed.put(ids.get(message), String.valueOf(error.getMessage())) );
+			return failed;
+		} catch (MailException e) {
+			log.error("error sending {} mails", mails.size(), e);
+			return failAll(mails, e);
+		}
+	}
+	
+	private Map<Long, String> failAll(List<EmailOutbox> mails, Exception e) {
+		return mails.stream().collect(Collectors.toMap(EmailOutbox::getId, mail -> String.valueOf(e.getMessage())));
+	}
+
+	private SimpleMailMessage createMessage(EmailOutbox mail) {
 		SimpleMailMessage mailMessage = new SimpleMailMessage();
 		mailMessage.setFrom(remetent);
-		mailMessage.setSubject("Livro com empréstimo atrasado");
-		mailMessage.setText(mesage);
-		mailMessage.setTo(mails);
-		
-		javaMailSend.send(mailMessage);
+		mailMessage.setSubject(mail.getSubject());
+		mailMessage.setText(mail.getBody());
+		mailMessage.setTo(mail.getRecipient());
+		return mailMessage;
 	}
 
 }
@@ -1,35 +1,231 @@
 package com.br.libraryapi.service.impl;
 
+import static com.br.libraryapi.service.impl.ConstraintViolations.isViolationOf;
+
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import com.br.libraryapi.api.dto.CountMode;
+import com.br.libraryapi.api.dto.LoanBatchResultDTO;
+import com.br.libraryapi.api.dto.LoanCursor;
+import com.br.libraryapi.api.dto.LoanDTO;
 import com.br.libraryapi.api.dto.LoanFilterDTO;
+import com.br.libraryapi.api.dto.LoanReturnResultDTO;
 import com.br.libraryapi.exception.BusinessException;
 import com.br.libraryapi.model.entity.Book;
+import com.br.libraryapi.model.entity.Customer;
 import com.br.libraryapi.model.entity.Loan;
 import com.br.libraryapi.model.repository.LoanRepository;
+import com.br.libraryapi.model.repository.LoanState;
+import com.br.libraryapi.service.ApproximateCountService;
+import com.br.libraryapi.service.BookAvailabilityService;
+import com.br.libraryapi.service.CustomerService;
 import com.br.libraryapi.service.LoanService;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
 @Service
 public class LoanServiceImpl implements LoanService {
 
+	private static final int RETURN_CHUNK_SIZE = 500;
+
 	private LoanRepository repository;
+	private BookAvailabilityService availability;
+	private ApproximateCountService countService;
+	private CustomerService customerService;
+	private TransactionTemplate transactions;
+	private Counter loansCreated;
+	private Counter loansReturned;
+	private Counter lateLoansFound;
 	
-	public LoanServiceImpl(LoanRepository repository) {
+	@Value("${application.loans.period-days:4}")
+	private int loanDays = Loan.DEFAULT_LOAN_DAYS;
+	
+	public LoanServiceImpl(LoanRepository repository, BookAvailabilityService availability,
+			ApproximateCountService countService, CustomerService customerService,
+			PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
 		this.repository = repository;
+		this.availability = availability;
+		this.countService = countService;
+		this.customerService = customerService;
+		this.transactions = new TransactionTemplate(transactionManager);
+		this.loansCreated = meterRegistry.counter("library.loans.created");
+		this.loansReturned = meterRegistry.counter("library.loans.returned");
+		this.lateLoansFound = meterRegistry.counter("library.loans.late.found");
 	}
 
 	@Override
 	public Loan save(Loan loan) {
-		if (repository.existsByBookAndNotReturned(loan.getBook())) {
+		assignDueDate(loan);
+		Long bookId = loan.getBook().getId();
+		Lock lock = availability.lockFor(bookId);
+		lock.lock();
+		try {
+			// the in-memory set may be stale when the book was returned through another instance
+			if (availability.isLoaned(bookId) && repository.existsByBookAndNotReturned(loan.getBook())) {
+				throw new BusinessException("Book already loaned");
+			}
+			Loan saved = inTransaction(Collections.singletonList(loan), () -> {
+				customerService.assignCustomers(Collections.singletonList(loan));
+				Loan inserted = repository.save(loan);
+				customerService.addLoans(byCustomer(Collections.singletonList(inserted), Loan::getCustomerId), Collections.emptyMap());
+				return inserted;
+			});
+			availability.markLoaned(bookId);
+			loansCreated.increment();
+			return saved;
+		} catch (DataIntegrityViolationException e) {
+			if (!isViolationOf(e, Loan.OPEN_BOOK_CONSTRAINT)) {
+				throw e;
+			}
+			availability.markLoaned(bookId);
 			throw new BusinessException("Book already loaned");
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public List<LoanBatchResultDTO> saveAll(List<Loan> loans) {
+		List<LoanBatchResultDTO> results = new ArrayList<>(loans.size());
+		Set<Long> bookIds = new HashSet<>();
+		for (int i = 0; i < loans.size(); i++) {
+			Loan loan = loans.get(i);
+			results.add(LoanBatchResultDTO.builder()
+					.index(i)
+					.isbn(loan.getBook() == null ? null : loan.getBook().getIsbn())
+					.build());
+			if (loan.getBook() == null) {
+				reject(results.get(i), LoanBatchResultDTO.NOT_FOUND, "Book not found for passed isbn");
+			} else {
+				bookIds.add(loan.getBook().getId());
+			}
+		}
+		if (bookIds.isEmpty()) {
+			return results;
 		}
-		return repository.save(loan);
+		
+		List<Lock> locks = availability.locksFor(bookIds);
+		locks.forEach(Lock::lock);
+		try {
+			// only books flagged in memory can be loaned, the query confirms them in one round-trip
+			List<Long> flagged = bookIds.stream().filter(availability::isLoaned).collect(Collectors.toList());
+			Set<Long> unavailable = new HashSet<>(flagged.isEmpty() ? Collections.emptyList() : repository.findOpenBookIds(flagged));
+			
+			List<Loan> accepted = new ArrayList<>();
+			List<LoanBatchResultDTO> acceptedResults = new ArrayList<>();
+			for (int i = 0; i < loans.size(); i++) {
+				Loan loan = loans.get(i);
+				if (loan.getBook() == null) {
+					continue;
+				}
+				if (!unavailable.add(loan.getBook().getId())) {
+					reject(results.get(i), LoanBatchResultDTO.CONFLICT, "Book already loaned");
+					continue;
+				}
+				assignDueDate(loan);
+				accepted.add(loan);
+				acceptedResults.add(results.get(i));
+			}
+			
+			List<Loan> saved;
+			try {
+				saved = inTransaction(accepted, () -> {
+					customerService.assignCustomers(accepted);
+					List<Loan> inserted = repository.saveAll(accepted);
+					customerService.addLoans(byCustomer(inserted, Loan::getCustomerId), Collections.emptyMap());
+					return inserted;
+				});
+				loansCreated.increment(saved.size());
+			} catch (DataIntegrityViolationException e) {
+				if (!isViolationOf(e, Loan.OPEN_BOOK_CONSTRAINT)) {
+					throw e;
+				}
+				// another instance loaned one of the books: retry one by one to find out which
+				saved = saveEachOrNull(accepted);
+			}
+			for (int i = 0; i < saved.size(); i++) {
+				if (saved.get(i) == null) {
+					reject(acceptedResults.get(i), LoanBatchResultDTO.CONFLICT, "Book already loaned");
+				} else {
+					acceptedResults.get(i).setStatus(LoanBatchResultDTO.CREATED);
+					acceptedResults.get(i).setId(saved.get(i).getId());
+					availability.markLoaned(saved.get(i).getBook().getId());
+				}
+			}
+			return results;
+		} finally {
+			locks.forEach(Lock::unlock);
+		}
+	}
+	
+	private List<Loan> saveEachOrNull(List<Loan> loans) {
+		List<Loan> saved = new ArrayList<>(loans.size());
+		for (Loan loan : loans) {
+			try {
+				saved.add(save(loan));
+			} catch (BusinessException e) {
+				saved.add(null);
+			}
+		}
+		return saved;
+	}
+	
+	/**
+	 * Runs the work in a new transaction, retried once when a concurrent loan created one of
+	 * the customers first: the retry then finds it. The ids assigned by a rolled back attempt
+	 * are taken off the loans.
+	 */
+	private <T> T inTransaction(List<Loan> loans, Supplier<T> work) {
+		List<Long> ids = loans.stream().map(Loan::getId).collect(Collectors.toList());
+		List<Long> customerIds = loans.stream().map(Loan::getCustomerId).collect(Collectors.toList());
+		for (int attempt = 1; ; attempt++) {
+			try {
+				return transactions.execute( status -> work.get() );
+			} catch (DataIntegrityViolationException e) {
+				for (int i = 0; i < loans.size(); i++) {
+					loans.get(i).setId(ids.get(i));
+					loans.get(i).setCustomerId(customerIds.get(i));
+				}
+				if (attempt > 1 || !isViolationOf(e, Customer.EMAIL_CONSTRAINT)) {
+					throw e;
+				}
+			}
+		}
+	}
+	
+	private void reject(LoanBatchResultDTO result, String status, String message) {
+		result.setStatus(status);
+		result.setMessage(message);
 	}
 
 	@Override
@@ -39,24 +235,222 @@ public class LoanServiceImpl implements LoanService {
 
 	@Override
 	public Loan update(Loan loan) {
-		return repository.save(loan);
+		// a returned loan has no open_book_id, reopening it would bypass the availability and customer counters
+		if (!Boolean.TRUE.equals(loan.getReturned()) && loan.getOpenBookId() == null && loan.getBook() != null) {
+			throw new BusinessException("Loan already returned");
+		}
+		boolean returning = Boolean.TRUE.equals(loan.getReturned()) && loan.getOpenBookId() != null;
+		// a concurrent return of the same loan fails its optimistic check, and the counters roll back with it
+		Loan updated = transactions.execute( status -> {
+			Loan saved = repository.save(loan);
+			if (returning) {
+				countReturned(Collections.singletonList(saved), Loan::getCustomerId, Loan::getOverdue);
+			}
+			return saved;
+		});
+		if (Boolean.TRUE.equals(updated.getReturned()) && updated.getBook() != null) {
+			availability.markReturned(updated.getBook().getId());
+		}
+		if (returning) {
+			loansReturned.increment();
+		}
+		return updated;
+	}
+
+	@Override
+	@Transactional
+	public LoanReturnResultDTO returnAll(List<Long> ids, List<String> isbns) {
+		LoanReturnResultDTO result = new LoanReturnResultDTO();
+		Map<Long, LoanState> loans = new LinkedHashMap<>();
+		
+		Set<Long> distinctIds = ids == null ? Collections.emptySet() : new LinkedHashSet<>(ids);
+		for (List<Long> chunk : chunks(new ArrayList<>(distinctIds))) {
+			repository.findStateByIdIn(chunk).forEach( state -> loans.put(state.getId(), state) );
+		}
+		distinctIds.stream().filter( id -> !loans.containsKey(id) ).forEach(result.getUnknown()::add);
+		
+		Set<String> distinctIsbns = isbns == null ? Collections.emptySet() : new LinkedHashSet<>(isbns);
+		Set<String> matchedIsbns = new HashSet<>();
+		for (List<String> chunk : chunks(new ArrayList<>(distinctIsbns))) {
+			repository.findOpenStateByIsbnIn(chunk).forEach( state -> {
+				loans.putIfAbsent(state.getId(), state);
+				matchedIsbns.add(state.getIsbn());
+			});
+		}
+		distinctIsbns.stream().filter( isbn -> !matchedIsbns.contains(isbn) ).forEach(result.getUnmatchedIsbns()::add);
+		
+		List<LoanState> open = new ArrayList<>();
+		for (LoanState state : loans.values()) {
+			if (Boolean.TRUE.equals(state.getReturned())) {
+				result.getAlreadyReturned().add(state.getId());
+			} else {
+				open.add(state);
+			}
+		}
+		// the states were read under row locks, so no other request returned these loans in between
+		for (List<LoanState> chunk : chunks(open)) {
+			repository.markReturned(chunk.stream().map(LoanState::getId).collect(Collectors.toList()));
+			countReturned(chunk, LoanState::getCustomerId, LoanState::getOverdue);
+			chunk.forEach( state -> result.getReturned().add(state.getId()) );
+		}
+		
+		List<Long> bookIds = open.stream().map(LoanState::getBookId).collect(Collectors.toList());
+		afterCommit( () -> {
+			bookIds.forEach(availability::markReturned);
+			loansReturned.increment(bookIds.size());
+		});
+		return result;
+	}
+	
+	private <T> void countReturned(List<T> loans, Function<T, Long> customerId, Function<T, Boolean> overdue) {
+		List<T> wereOverdue = loans.stream().filter( loan -> Boolean.TRUE.equals(overdue.apply(loan)) ).collect(Collectors.toList());
+		customerService.addLoans(byCustomer(loans, customerId, -1), byCustomer(wereOverdue, customerId, -1));
+	}
+	
+	private static <T> Map<Long, Integer> byCustomer(List<T> loans, Function<T, Long> customerId) {
+		return byCustomer(loans, customerId, 1);
+	}
+	
+	// loans without a customer are not counted anywhere
+	private static <T> Map<Long, Integer> byCustomer(List<T> loans, Function<T, Long> customerId, int delta) {
+		Map<Long, Integer> counts = new HashMap<>();
+		for (T loan : loans) {
+			Long id = customerId.apply(loan);
+			if (id != null) {
+				counts.merge(id, delta, Integer::sum);
+			}
+		}
+		return counts;
+	}
+	
+	private static <T> List<List<T>> chunks(List<T> values) {
+		List<List<T>> chunks = new ArrayList<>();
+		for (int start = 0; start < values.size(); start += RETURN_CHUNK_SIZE) {
+			chunks.add(values.subList(start, Math.min(values.size(), start + RETURN_CHUNK_SIZE)));
+		}
+		return chunks;
+	}
+	
+	private void afterCommit(Runnable action) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			action.run();
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCommit() {
+				action.run();
+			}
+		});
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public Page<LoanDTO> find(LoanFilterDTO filter, Pageable pageable) {
+		return repository.findDTOByBookIsbnOrCustomer(filter.getIsbn(), filter.getCustomer(), pageable);
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public Slice<LoanDTO> find(LoanFilterDTO filter, Pageable pageable, CountMode countMode) {
+		String isbn = filter.getIsbn();
+		String customer = filter.getCustomer();
+		switch (countMode) {
+			case NONE:
+				return repository.findDTOSliceByBookIsbnOrCustomer(isbn, customer, pageable);
+			case APPROX:
+				return countService.toPage(repository.findDTOSliceByBookIsbnOrCustomer(isbn, customer, pageable),
+						String.join("|", "loans", String.valueOf(isbn), String.valueOf(customer)),
+						() -> repository.countByBookIsbnOrCustomer(isbn, customer));
+			default:
+				return find(filter, pageable);
+		}
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public Page<LoanDTO> getLoansByBook(Book book, Pageable pageable) {
+		return repository.findDTOByBookId(book.getId(), pageable);
 	}
 
 	@Override
-	public Page<Loan> find(LoanFilterDTO filter, Pageable pageable) {
-		return repository.findByBookIsbnOrCustomer(filter.getIsbn(), filter.getCustomer(), pageable);
+	@Transactional(readOnly = true)
+	public Slice<LoanDTO> find(LoanFilterDTO filter, LoanCursor after, int size) {
+		Pageable pageable = PageRequest.of(0, size);
+		if (after == null) {
+			return repository.findSliceByBookIsbnOrCustomer(filter.getIsbn(), filter.getCustomer(), pageable);
+		}
+		return repository.findSliceByBookIsbnOrCustomerAfter(
+				filter.getIsbn(), filter.getCustomer(), after.getLoanDate(), after.getId(), pageable);
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public Slice<LoanDTO> getLoansByBook(Book book, LoanCursor after, int size) {
+		Pageable pageable = PageRequest.of(0, size);
+		if (after == null) {
+			return repository.findSliceByBookId(book.getId(), pageable);
+		}
+		return repository.findSliceByBookIdAfter(book.getId(), after.getLoanDate(), after.getId(), pageable);
 	}
 
 	@Override
-	public Page<Loan> getLoansByBook(Book book, Pageable pageable) {
-		return repository.findByBook(book, pageable);
+	@Transactional(readOnly = true)
+	public Page<LoanDTO> getLoansByCustomer(Customer customer, Pageable pageable) {
+		return repository.findDTOByCustomerId(customer.getId(), pageable);
 	}
 
 	@Override
+	public int markOverdue(LocalDate since, LocalDate today, int partition, int partitions, int size) {
+		int marked = 0;
+		Long afterId = 0l;
+		List<LoanState> chunk;
+		do {
+			Long lastId = afterId;
+			// each chunk flags its loans and moves their customers' counters in one transaction
+			chunk = transactions.execute( status -> {
+				List<LoanState> due = repository.findNewlyOverdueStateAfter(since, today, partition, partitions, lastId, PageRequest.of(0, size));
+				if (!due.isEmpty() && repository.markOverdue(due.stream().map(LoanState::getId).collect(Collectors.toList())) == due.size()) {
+					customerService.addLoans(Collections.emptyMap(), byCustomer(due, LoanState::getCustomerId));
+				} else if (!due.isEmpty()) {
+					customerService.recount(due.stream().map(LoanState::getCustomerId).filter(Objects::nonNull).collect(Collectors.toSet()));
+				}
+				return due;
+			});
+			marked += chunk.size();
+			if (!chunk.isEmpty()) {
+				afterId = chunk.get(chunk.size() - 1).getId();
+			}
+		} while (chunk.size() == size);
+		return marked;
+	}
+
+	@Override
+	@Transactional(readOnly = true)
 	public List<Loan> getAllLateLoan() {
-		final Integer loanDays = 4;
-		LocalDate threeDaysAgo = LocalDate.now().minusDays(loanDays);
-		return repository.findByLoanDateLessThanAndNotReturned(threeDaysAgo);
+		List<Loan> loans = repository.findOverdue(LocalDate.now());
+		lateLoansFound.increment(loans.size());
+		return loans;
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public List<Loan> getNewlyLateLoans(LocalDate since, LocalDate today, int partition, int partitions, Long afterId, int size) {
+		List<Loan> loans = repository.findNewlyOverdueAfter(since, today, partition, partitions, afterId, PageRequest.of(0, size));
+		lateLoansFound.increment(loans.size());
+		return loans;
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public List<Loan> getLateLoansDueForReminder(LocalDateTime notifiedBefore, int partition, int partitions, Long afterId, int size) {
+		return repository.findDueForReminderAfter(notifiedBefore, partition, partitions, afterId, PageRequest.of(0, size));
+	}
+
+	private void assignDueDate(Loan loan) {
+		if (loan.getDueDate() == null && loan.getLoanDate() != null) {
+			loan.setDueDate(loan.getLoanDate().plusDays(loanDays));
+		}
 	}
 
 }
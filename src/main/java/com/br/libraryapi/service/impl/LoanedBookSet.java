@@ -0,0 +1,98 @@
+package com.br.libraryapi.service.impl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Concurrent bit set of book ids. Bits are flipped with CAS, so reads and
+ * writes do not block each other; the read/write lock only keeps writers out
+ * while the backing array grows.
+ */
+public final class LoanedBookSet {
+
+	private static final int INITIAL_WORDS = 1024;
+
+	private final ReadWriteLock resizeLock = new ReentrantReadWriteLock();
+	private volatile AtomicLongArray words = new AtomicLongArray(INITIAL_WORDS);
+
+	public boolean contains(long id) {
+		int index = wordIndex(id);
+		AtomicLongArray current = words;
+		return index < current.length() && (current.get(index) & bit(id)) != 0;
+	}
+
+	public void add(long id) {
+		int index = wordIndex(id);
+		ensureCapacity(index);
+		long mask = bit(id);
+		resizeLock.readLock().lock();
+		try {
+			AtomicLongArray current = words;
+			long value;
+			do {
+				value = current.get(index);
+			} while (!current.compareAndSet(index, value, value | mask));
+		} finally {
+			resizeLock.readLock().unlock();
+		}
+	}
+
+	public void remove(long id) {
+		int index = wordIndex(id);
+		long mask = bit(id);
+		resizeLock.readLock().lock();
+		try {
+			AtomicLongArray current = words;
+			if (index >= current.length()) {
+				return;
+			}
+			long value;
+			do {
+				value = current.get(index);
+			} while (!current.compareAndSet(index, value, value & ~mask));
+		} finally {
+			resizeLock.readLock().unlock();
+		}
+	}
+
+	public int size() {
+		AtomicLongArray current = words;
+		int size = 0;
+		for (int i = 0; i < current.length(); i++) {
+			size += Long.bitCount(current.get(i));
+		}
+		return size;
+	}
+
+	private void ensureCapacity(int index) {
+		if (index < words.length()) {
+			return;
+		}
+		resizeLock.writeLock().lock();
+		try {
+			AtomicLongArray current = words;
+			if (index < current.length()) {
+				return;
+			}
+			AtomicLongArray grown = new AtomicLongArray(Math.max(current.length() * 2, index + 1));
+			for (int i = 0; i < current.length(); i++) {
+				grown.set(i, current.get(i));
+			}
+			words = grown;
+		} finally {
+			resizeLock.writeLock().unlock();
+		}
+	}
+
+	private static int wordIndex(long id) {
+		if (id < 0 || (id >>> 6) >= Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Id do livro fora do intervalo suportado: " + id);
+		}
+		return (int) (id >>> 6);
+	}
+
+	private static long bit(long id) {
+		return 1L << id;
+	}
+}
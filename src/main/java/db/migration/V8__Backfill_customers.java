@@ -0,0 +1,105 @@
+package db.migration;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+/**
+ * Creates a customer for every email found on the existing loans and links the loans to it,
+ * in id order and BATCH_SIZE loans at a time. Open loans already past their due date are
+ * flagged overdue, and the counters of the customers seen in a batch are counted again from
+ * their loans, so a customer spread over several batches ends up with its full counts.
+ */
+public class V8__Backfill_customers extends BaseJavaMigration {
+
+	static final int BATCH_SIZE = 1000;
+
+	private static final String NOT_RETURNED = "(l.returned is null or l.returned = false)";
+
+	private static final String RECOUNT = "update customer c set "
+			+ "open_loans = (select count(*) from loan l where l.customer_id = c.id and " + NOT_RETURNED + "), "
+			+ "overdue_loans = (select count(*) from loan l where l.customer_id = c.id and l.overdue = true and " + NOT_RETURNED + ") "
+			+ "where c.id in (:ids)";
+
+	@Override
+	public void migrate(Context context) {
+		JdbcTemplate jdbc = new JdbcTemplate(new SingleConnectionDataSource(context.getConnection(), true));
+		backfill(jdbc, LocalDate.now(), BATCH_SIZE);
+	}
+
+	// returns how many loans were linked to a customer
+	int backfill(JdbcTemplate jdbc, LocalDate today, int batchSize) {
+		NamedParameterJdbcTemplate named = new NamedParameterJdbcTemplate(jdbc);
+		int linked = 0;
+		long afterId = 0;
+		List<Map<String, Object>> loans;
+		do {
+			loans = jdbc.queryForList("select id, customer, customer_email from loan "
+					+ "where id > ? and customer_id is null and customer_email is not null order by id limit " + batchSize, afterId);
+			if (loans.isEmpty()) {
+				break;
+			}
+			afterId = ((Number) loans.get(loans.size() - 1).get("id")).longValue();
+			
+			Map<String, String> names = new LinkedHashMap<>();
+			for (Map<String, Object> loan : loans) {
+				String email = normalizeEmail((String) loan.get("customer_email"));
+				if (!email.isEmpty()) {
+					names.putIfAbsent(email, (String) loan.get("customer"));
+				}
+			}
+			if (names.isEmpty()) {
+				continue;
+			}
+			
+			Map<String, Long> customers = new HashMap<>();
+			named.query("select id, email from customer where email in (:emails)", Collections.singletonMap("emails", names.keySet()),
+					row -> { customers.put(row.getString("email"), row.getLong("id")); });
+			for (Map.Entry<String, String> customer : names.entrySet()) {
+				if (!customers.containsKey(customer.getKey())) {
+					Long id = jdbc.queryForObject("select nextval('customer_seq')", Long.class);
+					jdbc.update("insert into customer (id, name, email, open_loans, overdue_loans) values (?, ?, ?, 0, 0)",
+							id, customer.getValue(), customer.getKey());
+					customers.put(customer.getKey(), id);
+				}
+			}
+			
+			List<Object[]> links = new ArrayList<>();
+			List<Long> loanIds = new ArrayList<>();
+			for (Map<String, Object> loan : loans) {
+				Long customerId = customers.get(normalizeEmail((String) loan.get("customer_email")));
+				if (customerId != null) {
+					Long loanId = ((Number) loan.get("id")).longValue();
+					links.add(new Object[] { customerId, loanId });
+					loanIds.add(loanId);
+				}
+			}
+			jdbc.batchUpdate("update loan set customer_id = ? where id = ?", links);
+			named.update("update loan l set overdue = true where l.id in (:ids) and l.due_date < :today and " + NOT_RETURNED,
+					new MapSqlParameterSource("ids", loanIds).addValue("today", today));
+			Set<Long> customerIds = new TreeSet<>(customers.values());
+			named.update(RECOUNT, Collections.singletonMap("ids", customerIds));
+			linked += links.size();
+		} while (loans.size() == batchSize);
+		return linked;
+	}
+
+	// a copy of Customer.normalizeEmail as it was at this version, so later changes to the entity never alter the migration
+	private static String normalizeEmail(String email) {
+		return email.trim().toLowerCase(Locale.ROOT);
+	}
+}
@@ -0,0 +1,42 @@
+create sequence book_seq start with 1 increment by 50;
+create sequence loan_seq start with 1 increment by 50;
+
+create table book (
+	id bigint not null,
+	title varchar(255),
+	author varchar(255),
+	isbn varchar(255),
+	constraint pk_book primary key (id)
+);
+
+create table loan (
+	id bigint not null,
+	customer varchar(100),
+	customer_email varchar(255),
+	id_book bigint,
+	loan_date date,
+	returned boolean,
+	open_book_id bigint,
+	constraint pk_loan primary key (id),
+	constraint fk_loan_book foreign key (id_book) references book (id),
+	constraint uk_loan_open_book_id unique (open_book_id)
+);
+
+create table email_outbox (
+	id bigint generated by default as identity,
+	recipient varchar(255) not null,
+	subject varchar(255),
+	body varchar(2000),
+	loan_id bigint,
+	dedup_key varchar(255) not null,
+	status varchar(20) not null,
+	attempts integer not null,
+	next_attempt_at timestamp not null,
+	created_at timestamp not null,
+	sent_at timestamp,
+	last_error varchar(500),
+	constraint pk_email_outbox primary key (id),
+	constraint uk_email_outbox_dedup_key unique (dedup_key)
+);
+
+create index idx_email_outbox_status on email_outbox (status, next_attempt_at);
@@ -0,0 +1,11 @@
+-- findByIsbn, existsByIsbn and the bulk import ISBN checks
+alter table book add constraint uk_book_isbn unique (isbn);
+
+-- existsByBookAndNotReturned and the loans by book listings
+create index idx_loan_book on loan (id_book);
+
+-- findByBookIsbnOrCustomer
+create index idx_loan_customer on loan (customer);
+
+-- late loan scans
+create index idx_loan_loan_date_returned on loan (loan_date, returned);
@@ -0,0 +1,7 @@
+create table replication_heartbeat (
+	id int not null,
+	beat_at timestamp not null,
+	constraint pk_replication_heartbeat primary key (id)
+);
+
+insert into replication_heartbeat (id, beat_at) values (1, current_timestamp);
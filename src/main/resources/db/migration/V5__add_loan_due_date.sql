@@ -0,0 +1,15 @@
+alter table loan add column due_date date;
+alter table loan add column last_notified_at timestamp;
+
+-- existing loans keep the period the late-loan job used to hard-code
+update loan set due_date = loan_date + 4 where loan_date is not null;
+
+create index idx_loan_due_date_returned on loan (due_date, returned);
+create index idx_loan_last_notified_at_returned on loan (last_notified_at, returned);
+
+create table job_watermark (
+	name varchar(100) not null,
+	watermark date not null,
+	updated_at timestamp not null,
+	constraint pk_job_watermark primary key (name)
+);
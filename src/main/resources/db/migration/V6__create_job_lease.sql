@@ -0,0 +1,18 @@
+create table job_node (
+	node_id varchar(100) not null,
+	heartbeat_at timestamp not null,
+	constraint pk_job_node primary key (node_id)
+);
+
+create table job_lease (
+	name varchar(120) not null,
+	job varchar(100) not null,
+	partition_no integer not null,
+	run_date date,
+	owner varchar(100),
+	lease_until timestamp,
+	completed_at timestamp,
+	constraint pk_job_lease primary key (name)
+);
+
+create index idx_job_lease_job on job_lease (job, partition_no);
@@ -0,0 +1,17 @@
+create sequence customer_seq start with 1 increment by 50;
+
+create table customer (
+	id bigint not null,
+	name varchar(100),
+	email varchar(255) not null,
+	open_loans integer default 0 not null,
+	overdue_loans integer default 0 not null,
+	constraint pk_customer primary key (id),
+	constraint uk_customer_email unique (email)
+);
+
+alter table loan add column customer_id bigint;
+alter table loan add column overdue boolean default false not null;
+alter table loan add constraint fk_loan_customer foreign key (customer_id) references customer (id);
+
+create index idx_loan_customer_id on loan (customer_id, loan_date);
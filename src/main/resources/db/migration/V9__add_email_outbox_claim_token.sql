@@ -0,0 +1,2 @@
+-- the claim that owns a SENDING mail, so a claim that expired and lost the mail cannot complete it
+alter table email_outbox add column claim_token varchar(36);
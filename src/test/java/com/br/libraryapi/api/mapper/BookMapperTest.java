@@ -0,0 +1,61 @@
+package com.br.libraryapi.api.mapper;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import com.br.libraryapi.api.dto.BookDTO;
+import com.br.libraryapi.api.mapper.impl.BookMapperImpl;
+import com.br.libraryapi.model.entity.Book;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class BookMapperTest {
+
+	BookMapper mapper;
+	
+	@BeforeEach
+	public void setUp() {
+		this.mapper = new BookMapperImpl();
+	}
+	
+	@Test
+	@DisplayName("Deve converter um livro em DTO")
+	public void toDTOTest() {
+		Book book = Book.builder().id(1l).title("Aventuras").author("Fulano").isbn("123").version(2l).build();
+		
+		BookDTO dto = mapper.toDTO(book);
+		
+		assertThat(dto.getId()).isEqualTo(1l);
+		assertThat(dto.getTitle()).isEqualTo("Aventuras");
+		assertThat(dto.getAuthor()).isEqualTo("Fulano");
+		assertThat(dto.getIsbn()).isEqualTo("123");
+	}
+	
+	@Test
+	@DisplayName("Deve converter um DTO em livro")
+	public void toEntityTest() {
+		BookDTO dto = BookDTO.builder().id(1l).title("Aventuras").author("Fulano").isbn("123").build();
+		
+		Book book = mapper.toEntity(dto);
+		
+		assertThat(book.getId()).isEqualTo(1l);
+		assertThat(book.getTitle()).isEqualTo("Aventuras");
+		assertThat(book.getAuthor()).isEqualTo("Fulano");
+		assertThat(book.getIsbn()).isEqualTo("123");
+		assertThat(book.getVersion()).isNull();
+		assertThat(book.getLoans()).isNull();
+	}
+	
+	@Test
+	@DisplayName("Deve converter nulo em nulo")
+	public void nullTest() {
+		assertThat(mapper.toDTO(null)).isNull();
+		assertThat(mapper.toEntity(null)).isNull();
+	}
+}
@@ -0,0 +1,176 @@
+package com.br.libraryapi.api.resources;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+import com.br.libraryapi.model.entity.Book;
+import com.br.libraryapi.model.entity.Loan;
+import com.br.libraryapi.model.repository.BookRepository;
+import com.br.libraryapi.model.repository.LoanRepository;
+import com.br.libraryapi.service.BookAvailabilityService;
+import com.br.libraryapi.service.BookSearchService;
+import com.br.libraryapi.support.SqlCounter;
+import com.br.libraryapi.support.SqlCounterConfig;
+
+/**
+ * BookControllerTest against the real repositories, asserting how many statements each call
+ * sends to the database.
+ */
+@SpringBootTest(properties = "application.mail.outbox.initial-delay=3600000")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@Import(SqlCounterConfig.class)
+public class BookControllerIntegrationTest {
+
+	static String BOOK_API = "/api/books";
+	static int BOOKS = 150;
+
+	@Autowired
+	MockMvc mvc;
+
+	@Autowired
+	BookRepository bookRepository;
+
+	@Autowired
+	LoanRepository loanRepository;
+
+	@Autowired
+	BookSearchService searchService;
+
+	@Autowired
+	BookAvailabilityService availability;
+
+	@Autowired
+	CacheManager cacheManager;
+
+	Book book;
+
+	@BeforeEach
+	public void setUp() {
+		List<Book> books = new ArrayList<>();
+		for (int i = 0; i < BOOKS; i++) {
+			books.add(Book.builder().title("Livro " + i).author("Autor").isbn("book-it-" + i).build());
+		}
+		books = bookRepository.saveAll(books);
+		book = books.get(0);
+		List<Loan> loans = new ArrayList<>();
+		for (int i = 0; i < BOOKS; i++) {
+			loans.add(Loan.builder().book(book).customer("Cliente " + i).loanDate(LocalDate.now()).returned(true).build());
+		}
+		loanRepository.saveAll(loans);
+		searchService.rebuild();
+		cacheManager.getCacheNames().forEach( name -> cacheManager.getCache(name).clear() );
+		SqlCounter.reset();
+	}
+
+	@AfterEach
+	public void tearDown() {
+		loanRepository.deleteAll();
+		bookRepository.deleteAll();
+		searchService.rebuild();
+		availability.rebuild();
+	}
+
+	@Test
+	@DisplayName("Deve obter um livro com um comando SQL e depois pelo cache")
+	public void getBookStatements() throws Exception {
+
+		mvc.perform( MockMvcRequestBuilders.get(BOOK_API + "/" + book.getId()) )
+			.andExpect( status().isOk() )
+			.andExpect( header().exists(HttpHeaders.ETAG) );
+		SqlCounter.assertStatements(1);
+
+		SqlCounter.reset();
+		mvc.perform( MockMvcRequestBuilders.get(BOOK_API + "/" + book.getId())
+				.header(HttpHeaders.IF_NONE_MATCH, "\"" + book.getVersion() + "\"") )
+			.andExpect( status().isNotModified() );
+		SqlCounter.assertStatements(0);
+	}
+
+	@Test
+	@DisplayName("Deve buscar 100 livros pelo indice com um unico comando SQL")
+	public void searchBooksStatements() throws Exception {
+
+		perform(MockMvcRequestBuilders.get(BOOK_API + "?title=Livro&size=100"))
+			.andExpect( jsonPath("content", hasSize(100)) )
+			.andExpect( jsonPath("total").value(BOOKS) );
+
+		SqlCounter.assertStatements(1);
+		SqlCounter.assertRows(100);
+	}
+
+	@Test
+	@DisplayName("Deve filtrar 100 livros ordenados sem contagem com um unico comando SQL")
+	public void findBooksWithoutCountStatements() throws Exception {
+
+		perform(MockMvcRequestBuilders.get(BOOK_API + "?title=Livro&size=100&sort=title&count=none"))
+			.andExpect( jsonPath("content", hasSize(100)) )
+			.andExpect( jsonPath("hasNext").value(true) );
+
+		SqlCounter.assertStatements(1);
+		SqlCounter.assertRows(101);
+	}
+
+	@Test
+	@DisplayName("Deve listar 100 emprestimos de um livro com no maximo 3 comandos SQL")
+	public void loansByBookStatements() throws Exception {
+
+		perform(MockMvcRequestBuilders.get(BOOK_API + "/" + book.getId() + "/loans?size=100"))
+			.andExpect( jsonPath("content", hasSize(100)) )
+			.andExpect( jsonPath("total").value(BOOKS) );
+
+		// the book, the page and its count
+		SqlCounter.assertStatements(3);
+		SqlCounter.assertRows(102);
+	}
+
+	@Test
+	@DisplayName("Deve atualizar um livro com no maximo 3 comandos SQL")
+	public void updateBookStatements() throws Exception {
+
+		mvc.perform( MockMvcRequestBuilders.put(BOOK_API + "/" + book.getId() + "?title=Novo&author=Outro")
+				.header(HttpHeaders.IF_MATCH, "\"" + book.getVersion() + "\"") )
+			.andExpect( status().isOk() )
+			.andExpect( header().string(HttpHeaders.ETAG, "\"" + (book.getVersion() + 1) + "\"") );
+
+		// the lookup, the merge read and the update
+		SqlCounter.assertStatements(3);
+	}
+
+	private ResultActions perform(MockHttpServletRequestBuilder request) throws Exception {
+		MvcResult result = mvc
+			.perform( request.accept(MediaType.APPLICATION_JSON) )
+			.andExpect( MockMvcResultMatchers.request().asyncStarted() )
+			.andReturn();
+
+		return mvc
+			.perform( asyncDispatch(result) )
+			.andExpect( status().isOk() );
+	}
+}
@@ -1,11 +1,16 @@
 package com.br.libraryapi.api.resources;
 
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Optional;
 
 import org.junit.jupiter.api.DisplayName;
@@ -17,28 +22,39 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
 import com.br.libraryapi.api.dto.BookDTO;
+import com.br.libraryapi.api.dto.BookImportResultDTO;
+import com.br.libraryapi.api.dto.BookImportRow;
+import com.br.libraryapi.api.dto.CountMode;
 import com.br.libraryapi.exception.BusinessException;
 import com.br.libraryapi.model.entity.Book;
 import com.br.libraryapi.resources.BookController;
+import com.br.libraryapi.service.BookImportService;
 import com.br.libraryapi.service.BookService;
+import com.br.libraryapi.service.DatabaseExecutor;
 import com.br.libraryapi.service.LoanService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 @ExtendWith(SpringExtension.class) // Junit 5
 @ActiveProfiles("test")
 @WebMvcTest(controllers =  BookController.class)
+@Import(DatabaseExecutor.class)
 @AutoConfigureMockMvc
 public class BookControllerTest {
 
@@ -53,6 +69,9 @@ public class BookControllerTest {
 	@MockBean
 	LoanService loanService;
 	
+	@MockBean
+	BookImportService importService;
+	
 	@Test
 	@DisplayName("Deve criar um livro com sucesso.")
 	public void createBookTest() throws Exception {
@@ -207,7 +226,7 @@ public class BookControllerTest {
 				.author("Autor")
 				.isbn("321")
 				.build();
-		BDDMockito.given( service.update(updatingBook) ).willReturn( updatedBook );
+		BDDMockito.given( service.update(Mockito.any(Book.class)) ).willReturn( updatedBook );
 		
 		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
 				.put(BOOK_API.concat("/"+11))
@@ -222,8 +241,106 @@ public class BookControllerTest {
 			.andExpect( MockMvcResultMatchers.jsonPath("author").value(updatedBook.getAuthor()) )
 			.andExpect( MockMvcResultMatchers.jsonPath("isbn").value(updatedBook.getIsbn()) );
 		
+		// the cached book is copied, never edited in place
+		assertThat(updatingBook.getTitle()).isEqualTo("some title");
+		assertThat(updatingBook.getAuthor()).isEqualTo("some author");
+	}
+		
+	@Test
+	@DisplayName("Deve retornar 304 quando o ETag do livro não mudou")
+	public void getBookNotModified() throws Exception {
+		
+		Long id = Long.valueOf("11");
+		Book book = Book.builder().id(id).title("Meu Livro").author("Autor").isbn("001").version(3L).build();
+		BDDMockito.given(service.getById(id)).willReturn(Optional.of(book));
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.get(BOOK_API.concat("/"+id))
+				.header(HttpHeaders.IF_NONE_MATCH, "\"3\"")
+				.accept(MediaType.APPLICATION_JSON);
+		
+		mvc.perform(request)
+			.andExpect( status().isNotModified() )
+			.andExpect( header().string(HttpHeaders.ETAG, "\"3\"") )
+			.andExpect( content().string("") );
+	}
+	
+	@Test
+	@DisplayName("Deve retornar o livro com ETag quando a versão mudou")
+	public void getBookModified() throws Exception {
+		
+		Long id = Long.valueOf("11");
+		Book book = Book.builder().id(id).title("Meu Livro").author("Autor").isbn("001").version(4L).build();
+		BDDMockito.given(service.getById(id)).willReturn(Optional.of(book));
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.get(BOOK_API.concat("/"+id))
+				.header(HttpHeaders.IF_NONE_MATCH, "\"3\"")
+				.accept(MediaType.APPLICATION_JSON);
+		
+		mvc.perform(request)
+			.andExpect( status().isOk() )
+			.andExpect( header().string(HttpHeaders.ETAG, "\"4\"") )
+			.andExpect( jsonPath("title").value("Meu Livro") );
+	}
+	
+	@Test
+	@DisplayName("Deve retornar 412 ao atualizar um livro com If-Match desatualizado")
+	public void updateBookWithStaleIfMatch() throws Exception {
+		
+		Long id = Long.valueOf("11");
+		Book book = Book.builder().id(id).title("some title").author("some author").isbn("321").version(2L).build();
+		BDDMockito.given( service.getById(id) ).willReturn( Optional.of(book) );
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.put(BOOK_API.concat("/"+id))
+				.header(HttpHeaders.IF_MATCH, "\"1\"")
+				.accept(MediaType.APPLICATION_JSON);
+		
+		mvc.perform( request )
+			.andExpect( status().isPreconditionFailed() );
+		
+		Mockito.verify(service, Mockito.never()).update(Mockito.any());
 	}
+	
+	@Test
+	@DisplayName("Deve atualizar um livro com If-Match atual e devolver o novo ETag")
+	public void updateBookWithIfMatch() throws Exception {
+		
+		Long id = Long.valueOf("11");
+		Book book = Book.builder().id(id).title("some title").author("some author").isbn("321").version(2L).build();
+		BDDMockito.given( service.getById(id) ).willReturn( Optional.of(book) );
+		Book updated = Book.builder().id(id).title("Meu Livro").author("Autor").isbn("321").version(3L).build();
+		BDDMockito.given( service.update(Mockito.argThat( changed -> changed.getVersion() == 2L )) ).willReturn( updated );
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.put(BOOK_API.concat("/"+id))
+				.header(HttpHeaders.IF_MATCH, "\"2\"")
+				.accept(MediaType.APPLICATION_JSON);
+		
+		mvc.perform( request )
+			.andExpect( status().isOk() )
+			.andExpect( header().string(HttpHeaders.ETAG, "\"3\"") )
+			.andExpect( jsonPath("title").value("Meu Livro") );
+	}
+	
+	@Test
+	@DisplayName("Deve retornar 409 quando o livro for alterado durante a atualização")
+	public void updateBookConcurrently() throws Exception {
+		
+		Long id = Long.valueOf("11");
+		Book book = Book.builder().id(id).title("some title").author("some author").isbn("321").version(2L).build();
+		BDDMockito.given( service.getById(id) ).willReturn( Optional.of(book) );
+		BDDMockito.given( service.update(Mockito.any(Book.class)) ).willThrow( new ObjectOptimisticLockingFailureException(Book.class, id) );
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.put(BOOK_API.concat("/"+id))
+				.accept(MediaType.APPLICATION_JSON);
 		
+		mvc.perform( request )
+			.andExpect( status().isConflict() );
+	}
+	
 	@Test
 	@DisplayName("Deve filtrar livros")
 	public void findBooks() throws Exception {
@@ -236,8 +353,9 @@ public class BookControllerTest {
 				.isbn(createNewBook().getIsbn())
 				.build();
 		
-		BDDMockito.given( service.find( Mockito.any(Book.class) , Mockito.any( Pageable.class)))
-			.willReturn(new PageImpl<Book>( Arrays.asList(book) , PageRequest.of(0, 100), 1));
+		BookDTO dto = new BookDTO(book.getId(), book.getTitle(), book.getAuthor(), book.getIsbn());
+		BDDMockito.given( service.findDTO( Mockito.any(Book.class) , Mockito.any( Pageable.class), Mockito.eq(CountMode.EXACT)))
+			.willReturn(new PageImpl<BookDTO>( Arrays.asList(dto) , PageRequest.of(0, 100), 1));
 		
 		String queryString = String.format("?title=%s&author=%s&page=0&size=100", 
 					book.getTitle(), book.getAuthor());
@@ -246,16 +364,114 @@ public class BookControllerTest {
 				.get(BOOK_API.concat(queryString))
 				.accept(MediaType.APPLICATION_JSON);
 		
+		MvcResult result = mvc
+			.perform( request )
+			.andExpect( MockMvcResultMatchers.request().asyncStarted() )
+			.andReturn();
+		
 		mvc
+			.perform( asyncDispatch(result) )
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath("content", hasSize(1)))
+			.andExpect( jsonPath( "total").value(1))
+			.andExpect( jsonPath( "size").value(100))
+			.andExpect( jsonPath( "page").value(0))
+			.andExpect( jsonPath( "hasNext").value(false))
+			.andExpect( jsonPath( "pageable").doesNotExist());	
+		
+	}
+	
+	
+	@Test
+	@DisplayName("Deve filtrar livros sem contar o total quando count=none")
+	public void findBooksWithoutCount() throws Exception {
+		
+		BookDTO book = BookDTO.builder().id(1l).author("Autor").title("Meu Livro").isbn("001").build();
+		BDDMockito.given( service.findDTO( Mockito.any(Book.class) , Mockito.any( Pageable.class), Mockito.eq(CountMode.NONE)))
+			.willReturn(new SliceImpl<BookDTO>( Arrays.asList(book) , PageRequest.of(0, 1), true));
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.get(BOOK_API.concat("?title=Livro&page=0&size=1&count=none"))
+				.accept(MediaType.APPLICATION_JSON);
+		
+		MvcResult result = mvc
 			.perform( request )
+			.andExpect( MockMvcResultMatchers.request().asyncStarted() )
+			.andReturn();
+		
+		mvc
+			.perform( asyncDispatch(result) )
 			.andExpect( status().isOk() )
 			.andExpect( jsonPath("content", hasSize(1)))
-			.andExpect( jsonPath( "totalElements").value(1))
-			.andExpect( jsonPath( "pageable.pageSize").value(100))
-			.andExpect( jsonPath( "pageable.pageNumber").value(0));	
+			.andExpect( jsonPath("hasNext").value(true))
+			.andExpect( jsonPath("total").doesNotExist());
+	}
+	
+	@Test
+	@DisplayName("Deve rejeitar modo de contagem invalido")
+	public void findBooksWithInvalidCount() throws Exception {
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.get(BOOK_API.concat("?title=Livro&count=talvez"))
+				.accept(MediaType.APPLICATION_JSON);
 		
+		mvc
+			.perform( request )
+			.andExpect( status().isBadRequest() )
+			.andExpect( jsonPath("errors[0]").value("Invalid count mode"));
 	}
 	
+	@Test
+	@DisplayName("Deve importar livros em lote a partir de NDJSON")
+	public void importBooksFromNdjson() throws Exception {
+		
+		BookImportResultDTO result = new BookImportResultDTO();
+		result.setTotal(2);
+		result.setImported(1);
+		result.setDuplicated(1);
+		result.reject(2, "001", "DUPLICATED", "Isbn já cadastrado");
+		BDDMockito.given( importService.importBooks(Mockito.any()) ).willAnswer( invocation -> {
+			Iterator<BookImportRow> rows = invocation.getArgument(0);
+			assertThat(rows.next().getBook().getIsbn()).isEqualTo("001");
+			assertThat(rows.next().getBook().getIsbn()).isEqualTo("001");
+			assertThat(rows.hasNext()).isFalse();
+			return result;
+		});
+		
+		String ndjson = "{\"title\":\"Meu Livro\",\"author\":\"Autor\",\"isbn\":\"001\"}\n"
+				+ "{\"title\":\"Outro Livro\",\"author\":\"Autor\",\"isbn\":\"001\"}\n";
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.post(BOOK_API.concat("/bulk"))
+				.contentType("application/x-ndjson")
+				.accept(MediaType.APPLICATION_JSON)
+				.content(ndjson);
+		
+		mvc
+			.perform( request )
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath("total").value(2) )
+			.andExpect( jsonPath("imported").value(1) )
+			.andExpect( jsonPath("duplicated").value(1) )
+			.andExpect( jsonPath("rejected", hasSize(1)) )
+			.andExpect( jsonPath("rejected[0].line").value(2) );
+	}
+	
+	@Test
+	@DisplayName("Deve rejeitar importação em lote com formato não suportado")
+	public void importBooksWithUnsupportedFormat() throws Exception {
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.post(BOOK_API.concat("/bulk"))
+				.contentType(MediaType.APPLICATION_XML)
+				.content("<books/>");
+		
+		mvc
+			.perform( request )
+			.andExpect( status().isUnsupportedMediaType() );
+		
+		Mockito.verify(importService, Mockito.never()).importBooks(Mockito.any());
+	}
 	
 	private BookDTO createNewBook() {
 		return BookDTO.builder().id(Long.valueOf(10)).author("Autor").title("Meu Livro").isbn("001").build();
@@ -0,0 +1,115 @@
+package com.br.libraryapi.api.resources;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.BDDMockito;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+import com.br.libraryapi.api.dto.LoanDTO;
+import com.br.libraryapi.model.entity.Customer;
+import com.br.libraryapi.resources.CustomerController;
+import com.br.libraryapi.service.CustomerService;
+import com.br.libraryapi.service.DatabaseExecutor;
+import com.br.libraryapi.service.LoanService;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+@WebMvcTest(controllers = CustomerController.class)
+@Import(DatabaseExecutor.class)
+public class CustomerControllerTest {
+
+	static final String CUSTOMER_API = "/api/customers";
+
+	@Autowired
+	MockMvc mvc;
+
+	@MockBean
+	private CustomerService customerService;
+
+	@MockBean
+	private LoanService loanService;
+
+	@Test
+	@DisplayName("Deve obter o cliente com seus contadores de emprestimos")
+	public void getCustomerTest() throws Exception {
+
+		Customer customer = Customer.builder().id(1l).name("Fulano").email("fulano@email.com").openLoans(3).overdueLoans(1).build();
+		BDDMockito.given( customerService.getById(1l) ).willReturn(Optional.of(customer));
+
+		MvcResult result = mvc
+			.perform( MockMvcRequestBuilders.get(CUSTOMER_API.concat("/1")).accept(MediaType.APPLICATION_JSON) )
+			.andExpect( MockMvcResultMatchers.request().asyncStarted() )
+			.andReturn();
+
+		mvc
+			.perform( asyncDispatch(result) )
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath("email").value("fulano@email.com") )
+			.andExpect( jsonPath("openLoans").value(3) )
+			.andExpect( jsonPath("overdueLoans").value(1) );
+	}
+
+	@Test
+	@DisplayName("Deve retornar 404 quando o cliente nao existir")
+	public void customerNotFoundTest() throws Exception {
+
+		BDDMockito.given( customerService.getById(Mockito.anyLong()) ).willReturn(Optional.empty());
+
+		MvcResult result = mvc
+			.perform( MockMvcRequestBuilders.get(CUSTOMER_API.concat("/1")).accept(MediaType.APPLICATION_JSON) )
+			.andExpect( MockMvcResultMatchers.request().asyncStarted() )
+			.andReturn();
+
+		mvc
+			.perform( asyncDispatch(result) )
+			.andExpect( status().isNotFound() );
+	}
+
+	@Test
+	@DisplayName("Deve listar os emprestimos do cliente")
+	public void loansByCustomerTest() throws Exception {
+
+		Customer customer = Customer.builder().id(1l).email("fulano@email.com").build();
+		BDDMockito.given( customerService.getById(1l) ).willReturn(Optional.of(customer));
+		LoanDTO loan = LoanDTO.builder().id(7l).isbn("123").customer("Fulano").build();
+		BDDMockito.given( loanService.getLoansByCustomer(Mockito.eq(customer), Mockito.any(Pageable.class)) )
+			.willReturn(new PageImpl<LoanDTO>(Arrays.asList(loan), PageRequest.of(0, 10), 1));
+
+		MvcResult result = mvc
+			.perform( MockMvcRequestBuilders.get(CUSTOMER_API.concat("/1/loans?page=0&size=10")).accept(MediaType.APPLICATION_JSON) )
+			.andExpect( MockMvcResultMatchers.request().asyncStarted() )
+			.andReturn();
+
+		mvc
+			.perform( asyncDispatch(result) )
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath("content", hasSize(1)) )
+			.andExpect( jsonPath("content[0].id").value(7) )
+			.andExpect( jsonPath("total").value(1) );
+	}
+}
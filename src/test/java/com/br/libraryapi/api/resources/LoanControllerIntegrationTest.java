@@ -0,0 +1,152 @@
+package com.br.libraryapi.api.resources;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+import com.br.libraryapi.model.entity.Book;
+import com.br.libraryapi.model.entity.Loan;
+import com.br.libraryapi.model.repository.BookRepository;
+import com.br.libraryapi.model.repository.LoanRepository;
+import com.br.libraryapi.service.BookAvailabilityService;
+import com.br.libraryapi.support.SqlCounter;
+import com.br.libraryapi.support.SqlCounterConfig;
+
+/**
+ * LoanControllerTest against the real repositories, asserting how many statements each call
+ * sends to the database.
+ */
+@SpringBootTest(properties = "application.mail.outbox.initial-delay=3600000")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@Import(SqlCounterConfig.class)
+public class LoanControllerIntegrationTest {
+
+	static String LOAN_API = "/api/loans";
+	static String CUSTOMER = "ClienteIntegracao";
+	static int LOANS = 150;
+
+	@Autowired
+	MockMvc mvc;
+
+	@Autowired
+	BookRepository bookRepository;
+
+	@Autowired
+	LoanRepository loanRepository;
+
+	@Autowired
+	BookAvailabilityService availability;
+
+	@BeforeEach
+	public void setUp() {
+		List<Book> books = new ArrayList<>();
+		for (int i = 0; i < LOANS; i++) {
+			books.add(Book.builder().title("Livro " + i).author("Autor").isbn("loan-it-" + i).build());
+		}
+		List<Loan> loans = new ArrayList<>();
+		for (Book book : bookRepository.saveAll(books)) {
+			loans.add(Loan.builder().book(book).customer(CUSTOMER).loanDate(LocalDate.now()).build());
+		}
+		loanRepository.saveAll(loans);
+		availability.rebuild();
+		SqlCounter.reset();
+	}
+
+	@AfterEach
+	public void tearDown() {
+		loanRepository.deleteAll();
+		bookRepository.deleteAll();
+		availability.rebuild();
+	}
+
+	@Test
+	@DisplayName("Deve listar 100 emprestimos com no maximo 2 comandos SQL")
+	public void findLoansStatements() throws Exception {
+
+		perform(MockMvcRequestBuilders.get(LOAN_API + "?customer=" + CUSTOMER + "&size=100"))
+			.andExpect( jsonPath("content", hasSize(100)) )
+			.andExpect( jsonPath("total").value(LOANS) );
+
+		// the page query and its count, with the book fetched in the same join
+		SqlCounter.assertStatements(2);
+		SqlCounter.assertRows(101);
+	}
+
+	@Test
+	@DisplayName("Deve listar emprestimos sem contagem com um unico comando SQL")
+	public void findLoansWithoutCountStatements() throws Exception {
+
+		perform(MockMvcRequestBuilders.get(LOAN_API + "?customer=" + CUSTOMER + "&size=100&count=none"))
+			.andExpect( jsonPath("content", hasSize(100)) )
+			.andExpect( jsonPath("hasNext").value(true) );
+
+		SqlCounter.assertStatements(1);
+		SqlCounter.assertRows(101);
+	}
+
+	@Test
+	@DisplayName("Deve listar emprestimos por cursor com um unico comando SQL")
+	public void findLoansAfterCursorStatements() throws Exception {
+
+		perform(MockMvcRequestBuilders.get(LOAN_API + "?customer=" + CUSTOMER + "&size=100&after="))
+			.andExpect( jsonPath("content", hasSize(100)) )
+			.andExpect( jsonPath("next").isNotEmpty() );
+
+		SqlCounter.assertStatements(1);
+		SqlCounter.assertRows(101);
+	}
+
+	@Test
+	@DisplayName("Deve devolver emprestimos em lote sem um comando por emprestimo")
+	public void returnBooksInBatchStatements() throws Exception {
+
+		StringBuilder ids = new StringBuilder();
+		for (Loan loan : loanRepository.findAll()) {
+			ids.append(ids.length() == 0 ? "" : ",").append(loan.getId());
+		}
+		SqlCounter.reset();
+
+		mvc.perform( MockMvcRequestBuilders.patch(LOAN_API + "/returns")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"ids\": [" + ids + "]}") )
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath("returned", hasSize(LOANS)) );
+
+		// one state lookup and one update
+		SqlCounter.assertStatements(2);
+	}
+
+	private ResultActions perform(MockHttpServletRequestBuilder request) throws Exception {
+		MvcResult result = mvc
+			.perform( request.accept(MediaType.APPLICATION_JSON) )
+			.andExpect( MockMvcResultMatchers.request().asyncStarted() )
+			.andReturn();
+
+		return mvc
+			.perform( asyncDispatch(result) )
+			.andExpect( status().isOk() );
+	}
+}
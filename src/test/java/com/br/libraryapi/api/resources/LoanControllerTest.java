@@ -1,12 +1,15 @@
 package com.br.libraryapi.api.resources;
 
-import static com.br.libraryapi.service.LoanServiceTest.createLoan;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.time.LocalDate;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 
 import org.junit.jupiter.api.DisplayName;
@@ -18,25 +21,37 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
+import com.br.libraryapi.api.dto.BookDTO;
+import com.br.libraryapi.api.dto.CountMode;
+import com.br.libraryapi.api.dto.LoanBatchResultDTO;
+import com.br.libraryapi.api.dto.LoanCursor;
 import com.br.libraryapi.api.dto.LoanDTO;
 import com.br.libraryapi.api.dto.LoanFilterDTO;
+import com.br.libraryapi.api.dto.LoanReturnRequestDTO;
+import com.br.libraryapi.api.dto.LoanReturnResultDTO;
+import com.br.libraryapi.api.dto.PageDTO;
 import com.br.libraryapi.api.dto.ReturnedLoanDTO;
 import com.br.libraryapi.exception.BusinessException;
 import com.br.libraryapi.model.entity.Book;
 import com.br.libraryapi.model.entity.Loan;
 import com.br.libraryapi.resources.LoanController;
 import com.br.libraryapi.service.BookService;
+import com.br.libraryapi.service.DatabaseExecutor;
 import com.br.libraryapi.service.LoanService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -44,6 +59,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 @ActiveProfiles("test")
 @AutoConfigureMockMvc
 @WebMvcTest(controllers = LoanController.class)
+@Import(DatabaseExecutor.class)
 public class LoanControllerTest {
 	
 	static final String LOAN_API = "/api/loans";
@@ -149,6 +165,25 @@ public class LoanControllerTest {
 		Mockito.verify(loanService, Mockito.times(1)).update(loan);
 	}
 	
+	@Test
+	@DisplayName("Deve retornar 409 quando o emprestimo for devolvido por outra requisicao ao mesmo tempo")
+	public void returnBookConcurrentlyTest() throws Exception {
+			
+		ReturnedLoanDTO dto = ReturnedLoanDTO.builder().returned(true).build();
+		String json = new ObjectMapper().writeValueAsString(dto);
+		
+		Loan loan = Loan.builder().id(1l).build();
+		BDDMockito.given(loanService.getById(Mockito.any())).willReturn(Optional.of(loan));
+		BDDMockito.given(loanService.update(loan)).willThrow(new ObjectOptimisticLockingFailureException(Loan.class, 1l));
+		
+		mvc.perform(
+				MockMvcRequestBuilders.patch(LOAN_API.concat("/1"))
+				.accept(MediaType.APPLICATION_JSON)
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(json))
+		.andExpect(MockMvcResultMatchers.status().isConflict());
+	}
+	
 	@Test
 	@DisplayName("Deve retornar 404 quanto tentar devolver um livro inexistente")
 	public void returnInexistentBookTest() throws Exception {
@@ -173,13 +208,11 @@ public class LoanControllerTest {
 		
 		Long id = 1l;
 		
-		Loan loan = createLoan();
-		loan.setId(id);
-		Book book = Book.builder().id(id).isbn("321").build();
-		loan.setBook(book);
+		BookDTO book = BookDTO.builder().id(id).isbn("321").build();
+		LoanDTO loan = LoanDTO.builder().id(id).customer("Beltrano").isbn("321").book(book).build();
 				
-		BDDMockito.given( loanService.find( Mockito.any(LoanFilterDTO.class) , Mockito.any( Pageable.class)))
-			.willReturn(new PageImpl<Loan>( Arrays.asList(loan) , PageRequest.of(0, 10), 1));
+		BDDMockito.given( loanService.find( Mockito.any(LoanFilterDTO.class) , Mockito.any( Pageable.class), Mockito.eq(CountMode.EXACT)))
+			.willReturn(new PageImpl<LoanDTO>( Arrays.asList(loan) , PageRequest.of(0, 10), 1));
 		
 		String queryString = String.format("?isbn=%s&customer=%s&page=0&size=10", 
 					book.getIsbn(), loan.getCustomer());
@@ -188,13 +221,161 @@ public class LoanControllerTest {
 				.get(LOAN_API.concat(queryString))
 				.accept(MediaType.APPLICATION_JSON);
 		
+		MvcResult result = mvc
+			.perform( request )
+			.andExpect( MockMvcResultMatchers.request().asyncStarted() )
+			.andReturn();
+		
 		mvc
+			.perform( asyncDispatch(result) )
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath("content", hasSize(1)))
+			.andExpect( jsonPath("content[0].book.isbn").value("321"))
+			.andExpect( jsonPath( "total").value(1))
+			.andExpect( jsonPath( "size").value(10))
+			.andExpect( jsonPath( "page").value(0));	
+		
+	}
+	
+	@Test
+	@DisplayName("Deve filtrar emprestimos usando cursor")
+	public void findLoansAfterCursor() throws Exception {
+		
+		BookDTO book = BookDTO.builder().id(1l).isbn("321").build();
+		LoanDTO loan = LoanDTO.builder().id(2l).customer("Beltrano").isbn("321")
+				.loanDate(LocalDate.now()).book(book).build();
+		LoanCursor after = new LoanCursor(LocalDate.now(), 1l);
+		
+		BDDMockito.given( loanService.find( Mockito.any(LoanFilterDTO.class), Mockito.eq(after), Mockito.eq(1)))
+			.willReturn(new SliceImpl<LoanDTO>( Arrays.asList(loan), PageRequest.of(0, 1), true));
+		
+		String queryString = String.format("?isbn=%s&after=%s&size=1", book.getIsbn(), after.encode());
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.get(LOAN_API.concat(queryString))
+				.accept(MediaType.APPLICATION_JSON);
+		
+		MvcResult result = mvc
 			.perform( request )
+			.andExpect( MockMvcResultMatchers.request().asyncStarted() )
+			.andReturn();
+		
+		mvc
+			.perform( asyncDispatch(result) )
 			.andExpect( status().isOk() )
 			.andExpect( jsonPath("content", hasSize(1)))
-			.andExpect( jsonPath( "totalElements").value(1))
-			.andExpect( jsonPath( "pageable.pageSize").value(10))
-			.andExpect( jsonPath( "pageable.pageNumber").value(0));	
+			.andExpect( jsonPath("size").value(1))
+			.andExpect( jsonPath("hasNext").value(true))
+			.andExpect( jsonPath("next").value(LoanCursor.of(loan).encode()))
+			.andExpect( jsonPath("page").doesNotExist());
+	}
+	
+	@Test
+	@DisplayName("Deve limitar o tamanho da pagina por cursor como nas paginas por offset")
+	public void findLoansAfterCursorWithBoundedSize() throws Exception {
+		
+		BDDMockito.given( loanService.find( Mockito.any(LoanFilterDTO.class), Mockito.isNull(), Mockito.anyInt()))
+			.willReturn(new SliceImpl<LoanDTO>( Collections.emptyList()));
+		
+		for (String size : Arrays.asList("0", "-5", "100000")) {
+			MvcResult result = mvc
+				.perform( MockMvcRequestBuilders.get(LOAN_API.concat("?isbn=321&after=&size=" + size)).accept(MediaType.APPLICATION_JSON) )
+				.andExpect( MockMvcResultMatchers.request().asyncStarted() )
+				.andReturn();
+			mvc
+				.perform( asyncDispatch(result) )
+				.andExpect( status().isOk() );
+		}
+		
+		Mockito.verify(loanService, Mockito.times(2)).find(Mockito.any(LoanFilterDTO.class), Mockito.isNull(), Mockito.eq(PageDTO.DEFAULT_SIZE));
+		Mockito.verify(loanService).find(Mockito.any(LoanFilterDTO.class), Mockito.isNull(), Mockito.eq(PageDTO.MAX_SIZE));
+	}
+	
+	@Test
+	@DisplayName("Deve gerar o cursor de um emprestimo sem data")
+	public void cursorOfLoanWithoutDate() {
+		
+		LoanCursor cursor = new LoanCursor(null, 7l);
+		
+		assertThat(LoanCursor.decode(cursor.encode())).isEqualTo(cursor);
+	}
+	
+	@Test
+	@DisplayName("Deve retornar erro ao filtrar emprestimos com cursor invalido")
+	public void findLoansWithInvalidCursor() throws Exception {
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.get(LOAN_API.concat("?isbn=321&after=invalido"))
+				.accept(MediaType.APPLICATION_JSON);
+		
+		mvc
+			.perform( request )
+			.andExpect( status().isBadRequest() )
+			.andExpect( jsonPath("errors[0]").value("Invalid cursor"));
+	}
+	
+	@Test
+	@DisplayName("Deve realizar emprestimos em lote resolvendo os isbns em uma unica consulta")
+	@SuppressWarnings("unchecked")
+	public void createLoanBatchTest() throws Exception {
+		
+		List<LoanDTO> dtos = Arrays.asList(
+				LoanDTO.builder().isbn("123").customer("Beltrano").customerEmail("beltrano@email.com").build(),
+				LoanDTO.builder().isbn("999").customer("Beltrano").customerEmail("beltrano@email.com").build());
+		String json = new ObjectMapper().writeValueAsString(dtos);
+		
+		Book book = Book.builder().id(1l).isbn("123").build();
+		BDDMockito.given( bookService.getBooksByIsbn(Mockito.anyCollection()) ).willReturn(Arrays.asList(book));
+		BDDMockito.given( loanService.saveAll(Mockito.anyList()) ).willAnswer( invocation -> {
+			List<Loan> loans = invocation.getArgument(0);
+			assertThat(loans.get(0).getBook()).isEqualTo(book);
+			assertThat(loans.get(1).getBook()).isNull();
+			return Arrays.asList(
+					LoanBatchResultDTO.builder().index(0).status(LoanBatchResultDTO.CREATED).id(1l).build(),
+					LoanBatchResultDTO.builder().index(1).status(LoanBatchResultDTO.NOT_FOUND).build());
+		});
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.post(LOAN_API.concat("/batch"))
+				.accept( MediaType.APPLICATION_JSON )
+				.contentType( MediaType.APPLICATION_JSON )
+				.content( json );
+		
+		mvc
+			.perform( request )
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath("$", hasSize(2)) )
+			.andExpect( jsonPath("[0].status").value(LoanBatchResultDTO.CREATED) )
+			.andExpect( jsonPath("[0].id").value(1) )
+			.andExpect( jsonPath("[1].isbn").value("999") )
+			.andExpect( jsonPath("[1].status").value(LoanBatchResultDTO.NOT_FOUND) );
+		
+		Mockito.verify(bookService, Mockito.never()).getBookByIsbn(Mockito.anyString());
+	}
+	
+	@Test
+	@DisplayName("Deve devolver livros em lote")
+	public void returnBooksInBatchTest() throws Exception {
+		
+		LoanReturnRequestDTO dto = LoanReturnRequestDTO.builder().ids(Arrays.asList(1l, 2l)).isbns(Arrays.asList("123")).build();
+		String json = new ObjectMapper().writeValueAsString(dto);
+		
+		LoanReturnResultDTO result = new LoanReturnResultDTO();
+		result.getReturned().add(1l);
+		result.getUnknown().add(2l);
+		result.getUnmatchedIsbns().add("123");
+		BDDMockito.given(loanService.returnAll(Arrays.asList(1l, 2l), Arrays.asList("123"))).willReturn(result);
+		
+		mvc.perform(
+				MockMvcRequestBuilders.patch(LOAN_API.concat("/returns"))
+				.accept(MediaType.APPLICATION_JSON)
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(json))
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath("returned[0]").value(1) )
+			.andExpect( jsonPath("unknown[0]").value(2) )
+			.andExpect( jsonPath("unmatchedIsbns[0]").value("123") );
 		
+		Mockito.verify(loanService, Mockito.never()).getById(Mockito.any());
 	}
 }
@@ -0,0 +1,73 @@
+package com.br.libraryapi.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Optional;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import com.br.libraryapi.model.entity.Book;
+import com.br.libraryapi.model.repository.BookRepository;
+import com.br.libraryapi.service.BookSearchService;
+import com.br.libraryapi.service.BookService;
+import com.br.libraryapi.service.impl.ApproximateCountServiceImpl;
+import com.br.libraryapi.service.impl.BookServiceImpl;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class MetricsAspectTest {
+
+	MeterRegistry meterRegistry;
+
+	BookRepository repository;
+
+	BookService service;
+
+	@BeforeEach
+	public void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		repository = Mockito.mock(BookRepository.class);
+		BookServiceImpl target = new BookServiceImpl(repository, Mockito.mock(BookSearchService.class), new ApproximateCountServiceImpl(30, 300));
+		AspectJProxyFactory factory = new AspectJProxyFactory(target);
+		factory.addAspect(new MetricsAspect(meterRegistry));
+		service = factory.getProxy();
+	}
+
+	@Test
+	@DisplayName("Deve medir as chamadas de serviço por classe, método e resultado")
+	public void timeServiceCalls() {
+		Mockito.when(repository.findById(1l)).thenReturn(Optional.of(Book.builder().id(1l).build()));
+
+		service.getById(1l);
+		service.getById(1l);
+
+		Timer timer = meterRegistry.get(MetricsAspect.SERVICE_TIMER)
+				.tag("class", "BookServiceImpl")
+				.tag("method", "getById")
+				.tag("outcome", "success")
+				.timer();
+		assertThat(timer.count()).isEqualTo(2);
+	}
+
+	@Test
+	@DisplayName("Deve medir as chamadas de serviço com erro pelo tipo da exceção")
+	public void timeFailedServiceCalls() {
+
+		Throwable exception = Assertions.catchThrowable( () -> service.delete(new Book()) );
+
+		assertThat(exception).isInstanceOf(IllegalArgumentException.class);
+		Timer timer = meterRegistry.get(MetricsAspect.SERVICE_TIMER)
+				.tag("method", "delete")
+				.tag("outcome", "error")
+				.tag("exception", "IllegalArgumentException")
+				.timer();
+		assertThat(timer.count()).isEqualTo(1);
+	}
+}
@@ -0,0 +1,179 @@
+package com.br.libraryapi.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.servlet.http.Cookie;
+import javax.sql.DataSource;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.br.libraryapi.model.entity.Book;
+import com.br.libraryapi.model.repository.BookRepository;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Routing against two separate H2 databases. Nothing replicates between them, so a row is
+ * only found by reads that were routed to the database it was written to.
+ */
+@SpringBootTest(properties = {
+		"application.mail.outbox.initial-delay=3600000",
+		"spring.datasource.url=" + ReplicaRoutingTest.PRIMARY_URL,
+		"application.datasource.routing.enabled=true",
+		"application.datasource.routing.max-lag=1h",
+		"application.datasource.routing.lag-check-interval=3600000",
+		"application.datasource.replicas[0].url=" + ReplicaRoutingTest.REPLICA_URL })
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class ReplicaRoutingTest {
+
+	static final String PRIMARY_URL = "jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1";
+	static final String REPLICA_URL = "jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1";
+
+	@Autowired
+	MockMvc mvc;
+
+	@Autowired
+	BookRepository repository;
+
+	@Autowired
+	ReplicaSelector selector;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	@Autowired
+	@Qualifier("primaryDataSource")
+	DataSource primaryDataSource;
+
+	JdbcTemplate primary;
+
+	JdbcTemplate replica;
+
+	// runs before the context starts, so the replica has the schema before the first lag check
+	@BeforeAll
+	public static void createReplica() {
+		Flyway.configure().dataSource(REPLICA_URL, "sa", "").load().migrate();
+	}
+
+	@BeforeEach
+	public void setUp() {
+		primary = new JdbcTemplate(primaryDataSource);
+		replica = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", ""));
+	}
+
+	@AfterEach
+	public void tearDown() {
+		primary.update("delete from book");
+		replica.update("delete from book");
+		replica.update("update replication_heartbeat set beat_at = ? where id = 1", new Timestamp(System.currentTimeMillis()));
+		selector.check();
+	}
+
+	@Test
+	@DisplayName("Deve gravar no primário e ler da réplica nas transações somente leitura")
+	public void routeReadsToReplica() {
+		repository.save(Book.builder().title("Livro").author("Autor").isbn("primary-only").build());
+		replica.update("insert into book (id, title, author, isbn, version) values (-1, 'Livro', 'Autor', 'replica-only', 0)");
+
+		assertThat(primary.queryForObject("select count(*) from book where isbn = 'primary-only'", Integer.class)).isEqualTo(1);
+		assertThat(replica.queryForObject("select count(*) from book where isbn = 'primary-only'", Integer.class)).isZero();
+		assertThat(findReadOnly("primary-only")).isEmpty();
+		assertThat(findReadOnly("replica-only")).isPresent();
+	}
+
+	@Test
+	@DisplayName("Deve ler do primário quando a réplica estiver atrasada")
+	public void skipLaggingReplica() {
+		repository.save(Book.builder().title("Livro").author("Autor").isbn("primary-only").build());
+		replica.update("update replication_heartbeat set beat_at = ? where id = 1",
+				new Timestamp(System.currentTimeMillis() - Duration.ofHours(2).toMillis()));
+
+		selector.check();
+
+		assertThat(selector.next()).isNull();
+		assertThat(findReadOnly("primary-only")).isPresent();
+	}
+
+	@Test
+	@DisplayName("Deve manter o cliente no primário durante a janela após uma escrita")
+	public void readYourWrites() throws Exception {
+		String json = "{\"title\":\"Livro\",\"author\":\"Autor\",\"isbn\":\"sticky\"}";
+		MvcResult created = mvc.perform(MockMvcRequestBuilders.post("/api/books")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(json))
+			.andExpect(status().isCreated())
+			.andReturn();
+		Cookie cookie = created.getResponse().getCookie(ReadYourWritesFilter.COOKIE);
+		assertThat(cookie).isNotNull();
+
+		MvcResult sticky = mvc.perform(MockMvcRequestBuilders.get("/api/books?isbn=sticky").cookie(cookie)).andReturn();
+		mvc.perform(asyncDispatch(sticky))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("total").value(1));
+
+		MvcResult anonymous = mvc.perform(MockMvcRequestBuilders.get("/api/books?isbn=sticky")).andReturn();
+		mvc.perform(asyncDispatch(anonymous))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("total").value(0));
+	}
+
+	@Test
+	@DisplayName("Deve alternar as leituras entre as réplicas sincronizadas")
+	public void roundRobin() {
+		Map<String, HikariDataSource> replicas = new LinkedHashMap<>();
+		replicas.put("replica-a", replica("replica-a"));
+		replicas.put("replica-b", replica("replica-b"));
+		ReplicaSelector twoReplicas = new ReplicaSelector(primaryDataSource, replicas, Duration.ofHours(1));
+		try {
+			twoReplicas.check();
+
+			assertThat(twoReplicas.next()).isEqualTo("replica-a");
+			assertThat(twoReplicas.next()).isEqualTo("replica-b");
+			assertThat(twoReplicas.next()).isEqualTo("replica-a");
+		} finally {
+			twoReplicas.close();
+		}
+	}
+
+	// derived queries open no transaction of their own, so the read-only one is opened here
+	private Optional<Book> findReadOnly(String isbn) {
+		TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+		transaction.setReadOnly(true);
+		return transaction.execute( status -> repository.findByIsbn(isbn) );
+	}
+
+	private HikariDataSource replica(String name) {
+		HikariDataSource dataSource = new HikariDataSource();
+		dataSource.setJdbcUrl(REPLICA_URL);
+		dataSource.setUsername("sa");
+		dataSource.setPoolName(name);
+		return dataSource;
+	}
+}
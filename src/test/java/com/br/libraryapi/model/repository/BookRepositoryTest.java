@@ -1,16 +1,29 @@
 package com.br.libraryapi.model.repository;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
 
+import java.util.Arrays;
+import java.util.List;
+
+import org.hibernate.Session;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.data.domain.ExampleMatcher.StringMatcher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import com.br.libraryapi.api.dto.BookDTO;
 import com.br.libraryapi.model.entity.Book;
 import com.br.libraryapi.model.repository.BookRepository;
 
@@ -47,6 +60,23 @@ public class BookRepositoryTest {
 		assertThat(exists).isFalse();
 	}
 	
+	@Test
+	@DisplayName("Deve rejeitar atualização de um livro com versão desatualizada")
+	public void rejectStaleBookUpdate() {
+		Book book = createNewBook("123");
+		entityManger.persist(book);
+		entityManger.flush();
+		entityManger.detach(book);
+		
+		Book stale = Book.builder().id(book.getId()).title("Outro").author("Fulano").isbn("123").version(book.getVersion()).build();
+		book.setTitle("Novo titulo");
+		repository.saveAndFlush(book);
+		
+		Throwable exception = catchThrowable( () -> repository.saveAndFlush(stale) );
+		
+		assertThat(exception).isInstanceOf(ObjectOptimisticLockingFailureException.class);
+	}
+	
 	@Test
 	@DisplayName("Deve salvar um livro")
 	public void saveBookTest() { 
@@ -75,6 +105,81 @@ public class BookRepositoryTest {
 			
 	}
 	
+	@Test
+	@DisplayName("Deve retornar somente os Isbns já cadastrados")
+	public void findExistingIsbnsTest() {
+		
+		entityManger.persist(createNewBook("123"));
+		entityManger.persist(createNewBook("456"));
+		
+		List<String> existing = repository.findExistingIsbns(Arrays.asList("123", "456", "789"));
+		
+		assertThat(existing).containsExactlyInAnyOrder("123", "456");
+	}
+	
+	@Test
+	@DisplayName("Deve mudar o estado do indice ao criar, alterar e deletar livros")
+	public void findIndexStateTest() {
+		
+		Book book = entityManger.persist(createNewBook("123"));
+		entityManger.flush();
+		BookIndexState created = repository.findIndexState();
+		
+		book.setTitle("Outro titulo");
+		entityManger.flush();
+		BookIndexState updated = repository.findIndexState();
+		
+		entityManger.remove(book);
+		entityManger.flush();
+		BookIndexState deleted = repository.findIndexState();
+		
+		assertThat(created.getCount()).isEqualTo(1l);
+		assertThat(created.getMaxId()).isEqualTo(book.getId());
+		assertThat(updated.getVersionSum()).isGreaterThan(created.getVersionSum());
+		assertThat(deleted.getCount()).isEqualTo(0l);
+		assertThat(deleted.getMaxId()).isEqualTo(0l);
+	}
+	
+	@Test
+	@DisplayName("Deve filtrar livros por exemplo sem contar o total")
+	public void findSliceByExampleTest() {
+		
+		entityManger.persist(Book.builder().isbn("1").author("Fulano").title("Aventuras I").build());
+		entityManger.persist(Book.builder().isbn("2").author("Fulano").title("Aventuras II").build());
+		entityManger.persist(Book.builder().isbn("3").author("Fulano").title("Outro").build());
+		Example<Book> example = Example.of(Book.builder().title("AVENTURAS").build(),
+				ExampleMatcher.matching().withIgnoreCase().withIgnoreNullValues().withStringMatcher(StringMatcher.CONTAINING));
+		
+		Slice<Book> first = repository.findSlice(example, PageRequest.of(0, 1, Sort.by("isbn")));
+		Slice<Book> second = repository.findSlice(example, PageRequest.of(1, 1, Sort.by("isbn")));
+		
+		assertThat(first.getContent()).extracting(Book::getIsbn).containsExactly("1");
+		assertThat(first.hasNext()).isTrue();
+		assertThat(second.getContent()).extracting(Book::getIsbn).containsExactly("2");
+		assertThat(second.hasNext()).isFalse();
+	}
+	
+	@Test
+	@DisplayName("Deve filtrar livros como DTOs sem carregar entidades no contexto de persistência")
+	public void findDTOSliceByExampleTest() {
+		
+		entityManger.persist(Book.builder().isbn("1").author("Fulano").title("Aventuras I").build());
+		entityManger.persist(Book.builder().isbn("2").author("Fulano").title("Aventuras II").build());
+		entityManger.persist(Book.builder().isbn("3").author("Fulano").title("Outro").build());
+		entityManger.flush();
+		entityManger.clear();
+		Example<Book> example = Example.of(Book.builder().title("AVENTURAS").build(),
+				ExampleMatcher.matching().withIgnoreCase().withIgnoreNullValues().withStringMatcher(StringMatcher.CONTAINING));
+		
+		Slice<BookDTO> first = repository.findDTOSlice(example, PageRequest.of(0, 1, Sort.by("isbn")));
+		List<BookDTO> byId = repository.findDTOByIdIn(Arrays.asList(first.getContent().get(0).getId()));
+		
+		assertThat(first.getContent()).extracting(BookDTO::getIsbn).containsExactly("1");
+		assertThat(first.hasNext()).isTrue();
+		assertThat(byId).extracting(BookDTO::getTitle).containsExactly("Aventuras I");
+		assertThat(entityManger.getEntityManager().unwrap(Session.class).getStatistics().getEntityCount()).isZero();
+	}
+	
 	public static Book createNewBook(String isbn) {
 		return Book.builder().isbn(isbn).author("Beltrano").title("Aventuras").build();
 	}
@@ -0,0 +1,102 @@
+package com.br.libraryapi.model.repository;
+
+import static com.br.libraryapi.model.repository.BookRepositoryTest.createNewBook;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import com.br.libraryapi.model.entity.Book;
+import com.br.libraryapi.model.entity.Customer;
+import com.br.libraryapi.model.entity.Loan;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+public class CustomerRepositoryTest {
+
+	@Autowired
+	CustomerRepository repository;
+
+	@Autowired
+	TestEntityManager entityManager;
+
+	@Test
+	@DisplayName("Nao deve permitir dois clientes com o mesmo email")
+	public void uniqueEmailTest() throws Exception {
+		entityManager.persist(createCustomer("fulano@email.com"));
+
+		Throwable exception = Assertions.catchThrowable( () -> repository.saveAndFlush(createCustomer("fulano@email.com")) );
+
+		assertThat(exception).isInstanceOf(DataIntegrityViolationException.class);
+	}
+
+	@Test
+	@DisplayName("Deve somar e subtrair dos contadores de emprestimos do cliente")
+	public void addLoansTest() throws Exception {
+		Customer customer = entityManager.persist(createCustomer("fulano@email.com"));
+
+		repository.addLoans(customer.getId(), 2, 1);
+		repository.addLoans(customer.getId(), -1, 0);
+		entityManager.clear();
+
+		Customer found = repository.findById(customer.getId()).get();
+		assertThat(found.getOpenLoans()).isEqualTo(1);
+		assertThat(found.getOverdueLoans()).isEqualTo(1);
+	}
+
+	@Test
+	@DisplayName("Deve recontar os emprestimos abertos e atrasados do cliente a partir dos emprestimos")
+	public void recountTest() throws Exception {
+		Customer customer = entityManager.persist(createCustomer("fulano@email.com"));
+		persistLoan("1", customer, false, false);
+		persistLoan("2", customer, true, false);
+		persistLoan("3", customer, true, true);
+		entityManager.flush();
+
+		int updated = repository.recount(Collections.singletonList(customer.getId()));
+		entityManager.clear();
+
+		Customer found = repository.findById(customer.getId()).get();
+		assertThat(updated).isEqualTo(1);
+		assertThat(found.getOpenLoans()).isEqualTo(2);
+		assertThat(found.getOverdueLoans()).isEqualTo(1);
+	}
+
+	@Test
+	@DisplayName("Deve obter os clientes pelos emails informados")
+	public void findByEmailInTest() throws Exception {
+		Customer fulano = entityManager.persist(createCustomer("fulano@email.com"));
+		entityManager.persist(createCustomer("beltrano@email.com"));
+
+		assertThat(repository.findByEmailIn(Arrays.asList("fulano@email.com", "ciclano@email.com"))).containsExactly(fulano);
+	}
+
+	private void persistLoan(String isbn, Customer customer, boolean overdue, boolean returned) {
+		Book book = entityManager.persist(createNewBook(isbn));
+		entityManager.persist(Loan.builder()
+				.book(book)
+				.customer(customer.getName())
+				.customerId(customer.getId())
+				.loanDate(LocalDate.now())
+				.overdue(overdue)
+				.returned(returned)
+				.build());
+	}
+
+	public static Customer createCustomer(String email) {
+		return Customer.builder().name("Fulano").email(email).build();
+	}
+}
@@ -4,25 +4,36 @@ import static com.br.libraryapi.model.repository.BookRepositoryTest.createNewBoo
 import static org.assertj.core.api.Assertions.assertThat;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.List;
 
+import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import com.br.libraryapi.api.dto.LoanDTO;
 import com.br.libraryapi.model.entity.Book;
+import com.br.libraryapi.model.entity.Customer;
 import com.br.libraryapi.model.entity.Loan;
+import com.br.libraryapi.support.SqlCounter;
+import com.br.libraryapi.support.SqlCounterConfig;
 
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("test")
 @DataJpaTest
+@Import(SqlCounterConfig.class)
 public class LoanRepositoryTest {
 
 	@Autowired
@@ -42,12 +53,75 @@ public class LoanRepositoryTest {
 		assertThat(exists).isTrue();
 	}
 
+	@Test
+	@DisplayName("Nao deve permitir dois emprestimos abertos para o mesmo livro")
+	public void uniqueOpenLoanByBookTest() throws Exception {
+		
+		Loan loan = createAndPersistLoan();
+		Loan duplicated = Loan.builder().book(loan.getBook()).customer("Fulano").loanDate(LocalDate.now()).build();
+		
+		Throwable exception = Assertions.catchThrowable( () -> repository.saveAndFlush(duplicated));
+		
+		assertThat(exception).isInstanceOf(DataIntegrityViolationException.class);
+	}
+	
+	@Test
+	@DisplayName("Deve listar os livros com emprestimo em aberto")
+	public void findNotReturnedBookIdsTest() throws Exception {
+		
+		Loan loan = createAndPersistLoan();
+		
+		assertThat(repository.findNotReturnedBookIds()).containsExactly(loan.getBook().getId());
+		
+		loan.setReturned(true);
+		entityManager.flush();
+		
+		assertThat(repository.findNotReturnedBookIds()).isEmpty();
+	}
+	
+	@Test
+	@DisplayName("Deve retornar somente os livros informados que possuem emprestimo em aberto")
+	public void findOpenBookIdsTest() throws Exception {
+		
+		Loan loan = createAndPersistLoan();
+		Long bookId = loan.getBook().getId();
+		
+		assertThat(repository.findOpenBookIds(Arrays.asList(bookId, bookId + 1000))).containsExactly(bookId);
+		
+		loan.setReturned(true);
+		entityManager.flush();
+		
+		assertThat(repository.findOpenBookIds(Arrays.asList(bookId))).isEmpty();
+	}
+	
+	@Test
+	@DisplayName("Deve devolver emprestimos em lote liberando o livro")
+	public void markReturnedTest() throws Exception {
+		
+		Loan open = createAndPersistLoan();
+		Book book = createNewBook("456");
+		entityManager.persist(book);
+		Loan returned = Loan.builder().book(book).customer("Beltrano").loanDate(LocalDate.now()).returned(true).build();
+		entityManager.persist(returned);
+		entityManager.flush();
+		
+		int updated = repository.markReturned(Arrays.asList(open.getId(), returned.getId()));
+		
+		assertThat(updated).isEqualTo(1);
+		Loan found = entityManager.find(Loan.class, open.getId());
+		assertThat(found.getReturned()).isTrue();
+		assertThat(found.getOpenBookId()).isNull();
+		assertThat(repository.findOpenBookIds(Arrays.asList(open.getBook().getId()))).isEmpty();
+		assertThat(repository.findStateByIdIn(Arrays.asList(open.getId())))
+			.extracting(LoanState::getBookId).containsExactly(open.getBook().getId());
+	}
+	
 	@Test
 	@DisplayName("Deve buscar um emprestimo por isbn do livro ou customer")
 	public void findByBookIsbnOrCustomer() throws Exception {
 		Loan loan = createAndPersistLoan();
 		
-		Page<Loan> result = repository.findByBookIsbnOrCustomer(loan.getBook().getIsbn(), loan.getCustomer(), PageRequest.of(0, 10));
+		Page<LoanDTO> result = repository.findDTOByBookIsbnOrCustomer(loan.getBook().getIsbn(), loan.getCustomer(), PageRequest.of(0, 10));
 		
 		assertThat(result.getContent()).hasSize(1);
 		assertThat(result.getPageable().getPageSize()).isEqualTo(10);
@@ -57,29 +131,221 @@ public class LoanRepositoryTest {
 	}
 		
 	@Test
-	@DisplayName("Deve obter emprestimos cuja data de empréstimos for menor ou igua a tres dias atrás e não retornado")
-	public void findByLoanDateLessThanAndNotReturned() throws Exception {
+	@DisplayName("Deve paginar emprestimos por cursor de data e id")
+	public void findSliceByBookIsbnOrCustomerAfter() throws Exception {
+		Loan first = createAndPersistLoan(LocalDate.now().minusDays(2));
+		first.setReturned(true);
+		entityManager.flush();
+		Loan second = Loan.builder().book(first.getBook()).customer("Beltrano").loanDate(LocalDate.now()).build();
+		entityManager.persist(second);
+		
+		Slice<LoanDTO> firstSlice = repository.findSliceByBookIsbnOrCustomer("123", "Beltrano", PageRequest.of(0, 1));
+		
+		assertThat(firstSlice.getContent()).extracting(LoanDTO::getId).containsExactly(first.getId());
+		assertThat(firstSlice.hasNext()).isTrue();
+		
+		Slice<LoanDTO> nextSlice = repository.findSliceByBookIsbnOrCustomerAfter(
+				"123", "Beltrano", first.getLoanDate(), first.getId(), PageRequest.of(0, 1));
+		
+		assertThat(nextSlice.getContent()).extracting(LoanDTO::getId).containsExactly(second.getId());
+		assertThat(nextSlice.hasNext()).isFalse();
+	}
+	
+	@Test
+	@DisplayName("Deve paginar por cursor a partir de um emprestimo sem data")
+	public void findSliceAfterLoanWithoutDate() throws Exception {
+		Loan undated = createAndPersistLoan(null);
+		undated.setReturned(true);
+		entityManager.flush();
+		Loan dated = Loan.builder().book(undated.getBook()).customer("Beltrano").loanDate(LocalDate.now()).build();
+		entityManager.persist(dated);
+		
+		Slice<LoanDTO> firstSlice = repository.findSliceByBookId(undated.getBook().getId(), PageRequest.of(0, 1));
+		Slice<LoanDTO> nextSlice = repository.findSliceByBookIdAfter(
+				undated.getBook().getId(), null, undated.getId(), PageRequest.of(0, 1));
+		
+		assertThat(firstSlice.getContent()).extracting(LoanDTO::getId).containsExactly(undated.getId());
+		assertThat(nextSlice.getContent()).extracting(LoanDTO::getId).containsExactly(dated.getId());
+		assertThat(nextSlice.hasNext()).isFalse();
+	}
+	
+	@Test
+	@DisplayName("Deve projetar emprestimos com o livro em uma unica consulta")
+	public void findDTOByBookIsbnOrCustomer() throws Exception {
+		Loan loan = createAndPersistLoan();
+		
+		Page<LoanDTO> result = repository.findDTOByBookIsbnOrCustomer("123", null, PageRequest.of(0, 10));
+		
+		assertThat(result.getTotalElements()).isEqualTo(1);
+		LoanDTO dto = result.getContent().get(0);
+		assertThat(dto.getId()).isEqualTo(loan.getId());
+		assertThat(dto.getCustomer()).isEqualTo("Beltrano");
+		assertThat(dto.getIsbn()).isEqualTo("123");
+		assertThat(dto.getBook().getId()).isEqualTo(loan.getBook().getId());
+		assertThat(dto.getBook().getTitle()).isEqualTo(loan.getBook().getTitle());
+	}
+	
+	@Test
+	@DisplayName("Deve listar uma única vez o emprestimo encontrado pelo isbn e pelo customer")
+	public void findDTOByBookIsbnAndCustomerWithoutDuplicates() throws Exception {
+		Loan loan = createAndPersistLoan();
+		Book other = createNewBook("456");
+		entityManager.persist(other);
+		Loan byCustomer = Loan.builder().book(other).customer("Beltrano").loanDate(LocalDate.now()).build();
+		entityManager.persist(byCustomer);
+		
+		Page<LoanDTO> result = repository.findDTOByBookIsbnOrCustomer("123", "Beltrano", PageRequest.of(0, 10));
+		
+		assertThat(result.getTotalElements()).isEqualTo(2);
+		assertThat(result.getContent()).extracting(LoanDTO::getId).containsExactlyInAnyOrder(loan.getId(), byCustomer.getId());
+		assertThat(repository.countByBookIsbnOrCustomer("123", "Beltrano")).isEqualTo(2);
+		assertThat(repository.findDTOByBookIsbnOrCustomer("999", null, PageRequest.of(0, 10))).isEmpty();
+	}
+	
+	@Test
+	@DisplayName("Deve definir o vencimento pelo prazo padrão quando o empréstimo for salvo sem vencimento")
+	public void defaultDueDateTest() throws Exception {
+		Loan loan = createAndPersistLoan(LocalDate.now().minusDays(1));
+		
+		assertThat(loan.getDueDate()).isEqualTo(LocalDate.now().minusDays(1).plusDays(Loan.DEFAULT_LOAN_DAYS));
+	}
+	
+	@Test
+	@DisplayName("Deve obter emprestimos vencidos e não devolvidos")
+	public void findOverdueTest() throws Exception {
 		Loan loan = createAndPersistLoan(LocalDate.now().minusDays(5));
 		
-		List<Loan> result = repository.findByLoanDateLessThanAndNotReturned(LocalDate.now().minusDays(4));
+		List<Loan> result = repository.findOverdue(LocalDate.now());
 		
 		assertThat(result).hasSize(1).contains(loan);
 	}
 	
 	@Test
 	@DisplayName("Deve retornar vazio quando não houver emprestimos atrasados")
-	public void notfindByLoanDateLessThanAndNotReturned() throws Exception {
+	public void notFindOverdueTest() throws Exception {
 		createAndPersistLoan(LocalDate.now());
 		
-		List<Loan> result = repository.findByLoanDateLessThanAndNotReturned(LocalDate.now().minusDays(4));
+		List<Loan> result = repository.findOverdue(LocalDate.now());
 		
 		assertThat(result).isEmpty();
 	}
 
+	@Test
+	@DisplayName("Deve obter em blocos somente os emprestimos vencidos desde a marca d'agua e ainda não avisados")
+	public void findNewlyOverdueAfterTest() throws Exception {
+		LocalDate today = LocalDate.now();
+		Loan first = createAndPersistLoan("1", today.minusDays(5), null);
+		Loan second = createAndPersistLoan("2", today.minusDays(6), null);
+		createAndPersistLoan("3", today.minusDays(30), null);
+		createAndPersistLoan("4", today.minusDays(5), LocalDateTime.now());
+		createAndPersistLoan("5", today.minusDays(1), null);
+		
+		LocalDate since = today.minusDays(3);
+		List<Loan> firstChunk = repository.findNewlyOverdueAfter(since, today, 0, 1, 0l, PageRequest.of(0, 1));
+		List<Loan> secondChunk = repository.findNewlyOverdueAfter(since, today, 0, 1, first.getId(), PageRequest.of(0, 1));
+		List<Loan> thirdChunk = repository.findNewlyOverdueAfter(since, today, 0, 1, second.getId(), PageRequest.of(0, 1));
+		
+		assertThat(firstChunk).containsExactly(first);
+		assertThat(secondChunk).containsExactly(second);
+		assertThat(thirdChunk).isEmpty();
+	}
+	
+	@Test
+	@DisplayName("Deve obter somente os emprestimos vencidos da particao de ids informada")
+	public void findNewlyOverdueInPartitionTest() throws Exception {
+		LocalDate today = LocalDate.now();
+		Loan first = createAndPersistLoan("1", today.minusDays(5), null);
+		Loan second = createAndPersistLoan("2", today.minusDays(5), null);
+		Loan even = first.getId() % 2 == 0 ? first : second;
+		Loan odd = first.getId() % 2 == 0 ? second : first;
+		
+		List<Loan> evenPartition = repository.findNewlyOverdueAfter(today.minusDays(10), today, 0, 2, 0l, PageRequest.of(0, 10));
+		List<Loan> oddPartition = repository.findNewlyOverdueAfter(today.minusDays(10), today, 1, 2, 0l, PageRequest.of(0, 10));
+		
+		assertThat(evenPartition).containsExactly(even);
+		assertThat(oddPartition).containsExactly(odd);
+	}
+	
+	@Test
+	@DisplayName("Deve marcar como atrasados somente os emprestimos vencidos ainda nao marcados")
+	public void markOverdueTest() throws Exception {
+		LocalDate today = LocalDate.now();
+		Loan due = createAndPersistLoan("1", today.minusDays(5), null);
+		createAndPersistLoan("2", today.minusDays(1), null);
+		
+		List<LoanState> found = repository.findNewlyOverdueStateAfter(today.minusDays(3), today, 0, 1, 0l, PageRequest.of(0, 10));
+		int marked = repository.markOverdue(Arrays.asList(due.getId()));
+		int markedAgain = repository.markOverdue(Arrays.asList(due.getId()));
+		
+		assertThat(found).extracting(LoanState::getId).containsExactly(due.getId());
+		assertThat(found.get(0).getOverdue()).isFalse();
+		assertThat(marked).isEqualTo(1);
+		assertThat(markedAgain).isEqualTo(0);
+		assertThat(repository.findNewlyOverdueStateAfter(today.minusDays(3), today, 0, 1, 0l, PageRequest.of(0, 10))).isEmpty();
+	}
+	
+	@Test
+	@DisplayName("Deve listar os emprestimos do cliente pelo seu id")
+	public void findDTOByCustomerIdTest() throws Exception {
+		Customer customer = entityManager.persist(Customer.builder().name("Beltrano").email("beltrano@email.com").build());
+		Loan loan = createAndPersistLoan("1", LocalDate.now(), null);
+		loan.setCustomerId(customer.getId());
+		createAndPersistLoan("2", LocalDate.now(), null);
+		
+		Page<LoanDTO> result = repository.findDTOByCustomerId(customer.getId(), PageRequest.of(0, 10));
+		
+		assertThat(result.getTotalElements()).isEqualTo(1);
+		assertThat(result.getContent().get(0).getId()).isEqualTo(loan.getId());
+	}
+	
+	@Test
+	@DisplayName("Deve obter para lembrete somente os emprestimos avisados antes do limite e marcar o aviso")
+	public void findDueForReminderAfterTest() throws Exception {
+		LocalDateTime now = LocalDateTime.now();
+		Loan old = createAndPersistLoan("1", LocalDate.now().minusDays(20), now.minusDays(8));
+		createAndPersistLoan("2", LocalDate.now().minusDays(20), now.minusDays(1));
+		
+		List<Loan> result = repository.findDueForReminderAfter(now.minusDays(7), 0, 1, 0l, PageRequest.of(0, 10));
+		int marked = repository.markNotified(Arrays.asList(old.getId()), now);
+		
+		assertThat(result).containsExactly(old);
+		assertThat(marked).isEqualTo(1);
+		assertThat(repository.findDueForReminderAfter(now.minusDays(7), 0, 1, 0l, PageRequest.of(0, 10))).isEmpty();
+	}
+	
+	@Test
+	@DisplayName("Nao deve carregar livro ou emprestimos ao imprimir e comparar as entidades")
+	public void lazyAssociationsNotLoadedByLombokTest() throws Exception {
+		
+		Loan loan = createAndPersistLoan();
+		entityManager.flush();
+		entityManager.clear();
+		SqlCounter.reset();
+		
+		Loan foundLoan = repository.findById(loan.getId()).get();
+		foundLoan.toString();
+		Book foundBook = entityManager.find(Book.class, loan.getBook().getId());
+		foundBook.toString();
+		foundBook.hashCode();
+		foundBook.equals(createNewBook("123"));
+		
+		SqlCounter.assertStatements(2);
+	}
+	
 	public Loan createAndPersistLoan() throws Exception {
 		return createAndPersistLoan(LocalDate.now());
 	}
 	
+	public Loan createAndPersistLoan(String isbn, LocalDate loanDate, LocalDateTime lastNotifiedAt) throws Exception {
+		Book book = createNewBook(isbn);
+		entityManager.persist(book);
+		
+		Loan loan = Loan.builder().book(book).customer("Beltrano").loanDate(loanDate).lastNotifiedAt(lastNotifiedAt).build();
+		entityManager.persist(loan);
+		
+		return loan;
+	}
+	
 	public Loan createAndPersistLoan(LocalDate loanDate) throws Exception {
 		Book book = createNewBook("123");
 		entityManager.persist(book);
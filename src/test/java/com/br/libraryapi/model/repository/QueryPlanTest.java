@@ -0,0 +1,183 @@
+package com.br.libraryapi.model.repository;
+
+import static com.br.libraryapi.model.repository.BookRepositoryTest.createNewBook;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.hibernate.Session;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import com.br.libraryapi.model.entity.Book;
+import com.br.libraryapi.model.entity.EmailOutboxStatus;
+import com.br.libraryapi.model.entity.Loan;
+
+/*
+ * Runs EXPLAIN for the SQL each hot repository query generates and fails when H2 plans a
+ * full scan. Known exceptions, not covered here: the Example search (CONTAINING) and
+ * findNotReturnedBookIds, which only runs once at startup.
+ */
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+		+ "com.br.libraryapi.model.repository.QueryPlanTest$RecordingStatementInspector")
+public class QueryPlanTest {
+
+	// H2 prints "/* PUBLIC.TABLE.tableScan */" or an index name with no condition for full scans
+	private static final Pattern FULL_SCAN = Pattern.compile("/\\*\\s*\"?PUBLIC\"?\\.\"?[A-Z0-9_]+\"?(\\.tableScan)?\\s*\\*/");
+
+	@Autowired
+	BookRepository bookRepository;
+
+	@Autowired
+	LoanRepository loanRepository;
+
+	@Autowired
+	EmailOutboxRepository outboxRepository;
+
+	@Autowired
+	TestEntityManager entityManager;
+
+	Book book;
+
+	Loan loan;
+
+	@BeforeEach
+	public void setUp() {
+		book = createNewBook("123");
+		entityManager.persist(book);
+		loan = Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build();
+		entityManager.persist(loan);
+		entityManager.flush();
+		entityManager.clear();
+		RecordingStatementInspector.clear();
+	}
+
+	@Test
+	@DisplayName("Deve usar indice nas consultas de livro por isbn")
+	public void bookIsbnQueriesUseIndexTest() throws Exception {
+
+		bookRepository.existsByIsbn("123");
+		bookRepository.findByIsbn("123");
+		bookRepository.findByIsbnIn(Arrays.asList("123", "456"));
+		bookRepository.findExistingIsbns(Arrays.asList("123", "456"));
+		bookRepository.findById(book.getId());
+
+		assertNoFullScan();
+	}
+
+	@Test
+	@DisplayName("Deve usar indice nas consultas de empréstimo por livro")
+	public void loanBookQueriesUseIndexTest() throws Exception {
+
+		loanRepository.existsByBookAndNotReturned(book);
+		loanRepository.findDTOByBookId(book.getId(), PageRequest.of(0, 10));
+		loanRepository.findSliceByBookId(book.getId(), PageRequest.of(0, 10));
+		loanRepository.findSliceByBookIdAfter(book.getId(), LocalDate.now(), 0L, PageRequest.of(0, 10));
+		loanRepository.findOpenBookIds(Arrays.asList(book.getId()));
+
+		assertNoFullScan();
+	}
+
+	@Test
+	@DisplayName("Deve usar indice nas consultas de devolução e atraso")
+	public void loanReturnAndLateQueriesUseIndexTest() throws Exception {
+
+		loanRepository.findStateByIdIn(Arrays.asList(loan.getId()));
+		loanRepository.findOpenStateByIsbnIn(Arrays.asList("123"));
+		loanRepository.findOverdue(LocalDate.now());
+		loanRepository.findNewlyOverdueAfter(LocalDate.now().minusDays(1), LocalDate.now(), 0, 1, 0L, PageRequest.of(0, 10));
+		loanRepository.findDueForReminderAfter(LocalDateTime.now().minusDays(7), 0, 1, 0L, PageRequest.of(0, 10));
+		loanRepository.markReturned(Arrays.asList(loan.getId()));
+		loanRepository.findDTOByBookIsbnOrCustomer("123", "Fulano", PageRequest.of(0, 10));
+		loanRepository.findDTOSliceByBookIsbnOrCustomer("123", "Fulano", PageRequest.of(0, 10));
+		loanRepository.countByBookIsbnOrCustomer("123", "Fulano");
+		loanRepository.findSliceByBookIsbnOrCustomerAfter("123", "Fulano", LocalDate.now(), 0L, PageRequest.of(0, 10));
+
+		assertNoFullScan();
+	}
+
+	@Test
+	@DisplayName("Deve usar indice nas consultas da fila de emails")
+	public void outboxQueriesUseIndexTest() throws Exception {
+
+		List<EmailOutboxStatus> statuses = Arrays.asList(EmailOutboxStatus.PENDING, EmailOutboxStatus.SENDING);
+		LocalDateTime now = LocalDateTime.now();
+
+		outboxRepository.findExistingDedupKeys(Arrays.asList("key"));
+		outboxRepository.findReadyIds(statuses, now, PageRequest.of(0, 10));
+		outboxRepository.claim(Arrays.asList(1L, 2L), EmailOutboxStatus.SENDING, now.plusMinutes(5), "token", statuses, now);
+		outboxRepository.findClaimed(Arrays.asList(1L, 2L), "token");
+		outboxRepository.completeSent(Arrays.asList(1L, 2L), "token", EmailOutboxStatus.SENT, now);
+		outboxRepository.completeFailed(1L, "token", EmailOutboxStatus.PENDING, 1, now, "error");
+		outboxRepository.countByStatus(EmailOutboxStatus.DEAD);
+
+		assertNoFullScan();
+	}
+
+	private void assertNoFullScan() {
+		List<String> statements = RecordingStatementInspector.statements();
+		assertThat(statements).isNotEmpty();
+
+		Session session = entityManager.getEntityManager().unwrap(Session.class);
+		session.doWork(connection -> {
+			for (String sql : statements) {
+				try (PreparedStatement explain = connection.prepareStatement("EXPLAIN " + sql)) {
+					int parameters = explain.getParameterMetaData().getParameterCount();
+					for (int i = 1; i <= parameters; i++) {
+						explain.setObject(i, null);
+					}
+					try (ResultSet plan = explain.executeQuery()) {
+						plan.next();
+						String text = plan.getString(1);
+						assertThat(FULL_SCAN.matcher(text).find())
+								.as("full scan in %s", text)
+								.isFalse();
+					}
+				}
+			}
+		});
+	}
+
+	public static class RecordingStatementInspector implements StatementInspector {
+
+		private static final List<String> STATEMENTS = Collections.synchronizedList(new ArrayList<>());
+
+		@Override
+		public String inspect(String sql) {
+			String lower = sql.trim().toLowerCase();
+			if (lower.startsWith("select") || lower.startsWith("update") || lower.startsWith("delete")) {
+				STATEMENTS.add(sql);
+			}
+			return sql;
+		}
+
+		static void clear() {
+			STATEMENTS.clear();
+		}
+
+		static List<String> statements() {
+			synchronized (STATEMENTS) {
+				return new ArrayList<>(STATEMENTS);
+			}
+		}
+	}
+}
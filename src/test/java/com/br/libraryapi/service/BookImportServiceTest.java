@@ -0,0 +1,139 @@
+package com.br.libraryapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.hibernate.exception.ConstraintViolationException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.br.libraryapi.api.dto.BookImportResultDTO;
+import com.br.libraryapi.api.reader.BookImportReader;
+import com.br.libraryapi.model.entity.Book;
+import com.br.libraryapi.model.repository.BookRepository;
+import com.br.libraryapi.service.impl.BookImportServiceImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class BookImportServiceTest {
+
+	BookImportService service;
+	
+	@MockBean
+	BookRepository repository;
+	
+	@MockBean
+	BookSearchService searchService;
+	
+	@MockBean
+	PlatformTransactionManager transactionManager;
+	
+	@BeforeEach
+	public void setUp() {
+		this.service = new BookImportServiceImpl(repository, searchService, transactionManager);
+		ReflectionTestUtils.setField(service, "chunkSize", 2);
+	}
+	
+	@Test
+	@DisplayName("Deve importar livros de um CSV em blocos com uma consulta de Isbn por bloco")
+	@SuppressWarnings("unchecked")
+	public void importCsvInChunks() throws Exception {
+		
+		String csv = "isbn,title,author\n"
+				+ "001,\"Livro, o primeiro\",Autor\n"
+				+ "002,Segundo,Autor\n"
+				+ "003,Terceiro,Autor\n";
+		Mockito.when(repository.findExistingIsbns(Mockito.anyCollection())).thenReturn(Collections.emptyList());
+		Mockito.when(repository.saveAll(Mockito.anyCollection())).thenAnswer( invocation -> new ArrayList<>(invocation.getArgument(0)) );
+		
+		BookImportResultDTO result = service.importBooks(reader(csv, BookImportReader.CSV));
+		
+		ArgumentCaptor<Collection<Book>> captor = ArgumentCaptor.forClass(Collection.class);
+		Mockito.verify(repository, Mockito.times(2)).findExistingIsbns(Mockito.anyCollection());
+		Mockito.verify(repository, Mockito.times(2)).saveAll(captor.capture());
+		List<Collection<Book>> chunks = captor.getAllValues();
+		assertThat(chunks.get(0)).extracting(Book::getTitle).containsExactly("Livro, o primeiro", "Segundo");
+		assertThat(chunks.get(1)).extracting(Book::getIsbn).containsExactly("003");
+		assertThat(result.getTotal()).isEqualTo(3);
+		assertThat(result.getImported()).isEqualTo(3);
+		assertThat(result.getRejected()).isEmpty();
+		Mockito.verify(searchService, Mockito.times(2)).index(Mockito.anyCollection());
+	}
+	
+	@Test
+	@DisplayName("Deve rejeitar linhas duplicadas, já cadastradas e inválidas")
+	@SuppressWarnings("unchecked")
+	public void rejectDuplicatedAndInvalidRows() throws Exception {
+		
+		ReflectionTestUtils.setField(service, "chunkSize", 10);
+		String ndjson = "{\"title\":\"Primeiro\",\"author\":\"Autor\",\"isbn\":\"001\"}\n"
+				+ "{\"title\":\"Repetido\",\"author\":\"Autor\",\"isbn\":\"001\"}\n"
+				+ "{\"title\":\"Cadastrado\",\"author\":\"Autor\",\"isbn\":\"002\"}\n"
+				+ "{\"title\":\"Sem autor\",\"isbn\":\"003\"}\n"
+				+ "{nao e json\n";
+		Mockito.when(repository.findExistingIsbns(Mockito.anyCollection())).thenReturn(Collections.singletonList("002"));
+		Mockito.when(repository.saveAll(Mockito.anyCollection())).thenAnswer( invocation -> new ArrayList<>(invocation.getArgument(0)) );
+		
+		BookImportResultDTO result = service.importBooks(reader(ndjson, BookImportReader.NDJSON));
+		
+		ArgumentCaptor<Collection<Book>> captor = ArgumentCaptor.forClass(Collection.class);
+		Mockito.verify(repository).saveAll(captor.capture());
+		assertThat(captor.getValue()).extracting(Book::getIsbn).containsExactly("001");
+		assertThat(result.getTotal()).isEqualTo(5);
+		assertThat(result.getImported()).isEqualTo(1);
+		assertThat(result.getDuplicated()).isEqualTo(2);
+		assertThat(result.getInvalid()).isEqualTo(2);
+		assertThat(result.getRejected()).extracting("line").containsExactly(2l, 4l, 5l, 3l);
+	}
+	
+	@Test
+	@DisplayName("Deve reportar como duplicado o Isbn cadastrado por outra requisição durante a importação")
+	public void reportIsbnSavedConcurrentlyAsDuplicated() throws Exception {
+		
+		ReflectionTestUtils.setField(service, "chunkSize", 10);
+		String csv = "isbn,title,author\n"
+				+ "001,Primeiro,Autor\n"
+				+ "002,Segundo,Autor\n";
+		DataIntegrityViolationException violation = new DataIntegrityViolationException("isbn",
+				new ConstraintViolationException("isbn", null, "PUBLIC.UK_BOOK_ISBN_INDEX_1 ON PUBLIC.BOOK(ISBN) VALUES 2"));
+		Mockito.when(repository.findExistingIsbns(Mockito.anyCollection())).thenReturn(Collections.emptyList());
+		Mockito.when(repository.saveAll(Mockito.anyCollection())).thenAnswer( invocation -> {
+			List<Book> books = new ArrayList<>(invocation.getArgument(0));
+			if (books.stream().anyMatch( book -> book.getIsbn().equals("002") )) {
+				throw violation;
+			}
+			return books;
+		});
+		
+		BookImportResultDTO result = service.importBooks(reader(csv, BookImportReader.CSV));
+		
+		Mockito.verify(repository, Mockito.times(3)).saveAll(Mockito.anyCollection());
+		assertThat(result.getTotal()).isEqualTo(2);
+		assertThat(result.getImported()).isEqualTo(1);
+		assertThat(result.getDuplicated()).isEqualTo(1);
+		assertThat(result.getRejected()).extracting("isbn", "status").containsExactly(tuple("002", "DUPLICATED"));
+		Mockito.verify(searchService).index(Mockito.<Collection<Book>>argThat( books -> books.size() == 1 ));
+	}
+	
+	private BookImportReader reader(String content, String contentType) {
+		return BookImportReader.of(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), contentType, new ObjectMapper());
+	}
+}
@@ -0,0 +1,193 @@
+package com.br.libraryapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import com.br.libraryapi.api.dto.BookDTO;
+import com.br.libraryapi.model.entity.Book;
+import com.br.libraryapi.model.repository.BookIndexState;
+import com.br.libraryapi.model.repository.BookRepository;
+import com.br.libraryapi.service.impl.BookSearchServiceImpl;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class BookSearchServiceTest {
+
+	BookSearchService service;
+	
+	@MockBean
+	BookRepository repository;
+	
+	Book exact = createBook(1l, "Aventuras", "Beltrano");
+	Book prefix = createBook(2l, "Aventuras de Pi", "Fulano");
+	Book word = createBook(3l, "Grandes Aventuras", "Ciclano");
+	Book other = createBook(4l, "Dom Casmurro", "Machado de Assis");
+	
+	@BeforeEach
+	public void setUp() {
+		this.service = new BookSearchServiceImpl(repository);
+		when(repository.findIndexState()).thenReturn(indexState(3l, 3l, 0l));
+		when(repository.findByIdGreaterThan(Mockito.eq(0l), Mockito.any(Pageable.class)))
+			.thenReturn(new SliceImpl<Book>(Arrays.asList(exact, prefix, word), PageRequest.of(0, 1000), false));
+		when(repository.findAllById(Mockito.anyIterable())).thenAnswer( invocation -> {
+			List<Book> books = Arrays.asList(exact, prefix, word, other);
+			Iterable<Long> ids = invocation.getArgument(0);
+			return books.stream().filter( book -> contains(ids, book.getId()) ).collect(Collectors.toList());
+		});
+		service.rebuild();
+	}
+	
+	@Test
+	@DisplayName("Deve ordenar os livros encontrados por relevancia")
+	public void rankByRelevance() {
+		
+		Page<Book> result = service.search(Book.builder().title("AVENTURAS").build(), PageRequest.of(0, 10));
+		
+		assertThat(service.isReady()).isTrue();
+		assertThat(result.getTotalElements()).isEqualTo(3);
+		assertThat(result.getContent()).extracting(Book::getId).containsExactly(1l, 2l, 3l);
+	}
+	
+	@Test
+	@DisplayName("Deve buscar DTOs na ordem de relevancia sem carregar entidades")
+	public void searchDTOs() {
+		when(repository.findDTOByIdIn(Mockito.anyCollection())).thenAnswer( invocation -> {
+			Iterable<Long> ids = invocation.getArgument(0);
+			return Arrays.asList(exact, prefix, word, other).stream()
+					.filter( book -> contains(ids, book.getId()) )
+					.map( book -> new BookDTO(book.getId(), book.getTitle(), book.getAuthor(), book.getIsbn()) )
+					.collect(Collectors.toList());
+		});
+		
+		Page<BookDTO> result = service.searchDTO(Book.builder().title("AVENTURAS").build(), PageRequest.of(0, 10));
+		
+		assertThat(result.getTotalElements()).isEqualTo(3);
+		assertThat(result.getContent()).extracting(BookDTO::getId).containsExactly(1l, 2l, 3l);
+		Mockito.verify(repository, Mockito.never()).findAllById(Mockito.anyIterable());
+	}
+	
+	@Test
+	@DisplayName("Deve paginar o resultado da busca")
+	public void pageResults() {
+		
+		Page<Book> result = service.search(Book.builder().title("aventuras").build(), PageRequest.of(1, 2));
+		
+		assertThat(result.getTotalElements()).isEqualTo(3);
+		assertThat(result.getContent()).extracting(Book::getId).containsExactly(3l);
+	}
+	
+	@Test
+	@DisplayName("Deve combinar titulo e autor ignorando acentos e consultas curtas")
+	public void combineFiltersIgnoringAccents() {
+		
+		service.index(other);
+		
+		assertThat(service.search(Book.builder().title("casmurro").author("machádo").build(), PageRequest.of(0, 10)).getContent())
+			.extracting(Book::getId).containsExactly(4l);
+		assertThat(service.search(Book.builder().author("de").build(), PageRequest.of(0, 10)).getContent())
+			.extracting(Book::getId).containsExactly(4l);
+		assertThat(service.search(Book.builder().title("casmurro").author("Beltrano").build(), PageRequest.of(0, 10)).getContent())
+			.isEmpty();
+	}
+	
+	@Test
+	@DisplayName("Deve refletir atualizacoes e remocoes no indice")
+	public void reflectUpdatesAndRemovals() {
+		
+		service.index(createBook(1l, "Memorias Postumas", "Machado de Assis"));
+		service.remove(2l);
+		
+		Page<Book> result = service.search(Book.builder().title("aventuras").build(), PageRequest.of(0, 10));
+		
+		assertThat(result.getContent()).extracting(Book::getId).containsExactly(3l);
+	}
+	
+	@Test
+	@DisplayName("Deve descartar do indice os livros removidos do banco ao reconstruir")
+	public void rebuildFromScratch() {
+		when(repository.findByIdGreaterThan(Mockito.eq(0l), Mockito.any(Pageable.class)))
+			.thenReturn(new SliceImpl<Book>(Arrays.asList(word), PageRequest.of(0, 1000), false));
+		
+		service.rebuild();
+		
+		Page<Book> result = service.search(Book.builder().title("aventuras").build(), PageRequest.of(0, 10));
+		assertThat(result.getTotalElements()).isEqualTo(1);
+		assertThat(result.getContent()).extracting(Book::getId).containsExactly(3l);
+	}
+	
+	@Test
+	@DisplayName("Deve reconstruir o indice quando os livros mudarem em outro no")
+	public void refreshWhenChangedElsewhere() {
+		when(repository.findByIdGreaterThan(Mockito.eq(0l), Mockito.any(Pageable.class)))
+			.thenReturn(new SliceImpl<Book>(Arrays.asList(exact, word), PageRequest.of(0, 1000), false));
+		when(repository.findIndexState()).thenReturn(indexState(2l, 3l, 0l));
+		
+		((BookSearchServiceImpl) service).refresh();
+		
+		Page<Book> result = service.search(Book.builder().title("aventuras").build(), PageRequest.of(0, 10));
+		assertThat(service.isReady()).isTrue();
+		assertThat(result.getContent()).extracting(Book::getId).containsExactly(1l, 3l);
+	}
+	
+	@Test
+	@DisplayName("Nao deve reconstruir o indice quando nada mudou")
+	public void skipRefreshWhenUnchanged() {
+		
+		((BookSearchServiceImpl) service).refresh();
+		
+		Mockito.verify(repository, Mockito.times(1)).findByIdGreaterThan(Mockito.eq(0l), Mockito.any(Pageable.class));
+	}
+	
+	@Test
+	@DisplayName("Deve continuar usando o banco quando a reconstrucao falhar")
+	public void keepSearchingDatabaseWhenRefreshFails() {
+		when(repository.findIndexState()).thenReturn(indexState(4l, 4l, 0l));
+		when(repository.findByIdGreaterThan(Mockito.eq(0l), Mockito.any(Pageable.class))).thenThrow(new IllegalStateException("banco"));
+		
+		Assertions.catchThrowable( () -> ((BookSearchServiceImpl) service).refresh() );
+		
+		assertThat(service.isReady()).isFalse();
+	}
+	
+	private static BookIndexState indexState(Long count, Long maxId, Long versionSum) {
+		Map<String, Object> values = new HashMap<>();
+		values.put("count", count);
+		values.put("maxId", maxId);
+		values.put("versionSum", versionSum);
+		return new SpelAwareProxyProjectionFactory().createProjection(BookIndexState.class, values);
+	}
+	
+	private static boolean contains(Iterable<Long> ids, Long id) {
+		for (Long candidate : ids) {
+			if (candidate.equals(id)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static Book createBook(Long id, String title, String author) {
+		return Book.builder().id(id).title(title).author(author).isbn("isbn" + id).build();
+	}
+}
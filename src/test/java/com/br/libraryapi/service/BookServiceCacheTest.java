@@ -0,0 +1,134 @@
+package com.br.libraryapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import com.br.libraryapi.config.CacheConfig;
+import com.br.libraryapi.model.entity.Book;
+import com.br.libraryapi.model.repository.BookRepository;
+import com.br.libraryapi.service.impl.ApproximateCountServiceImpl;
+import com.br.libraryapi.service.impl.BookServiceImpl;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@ContextConfiguration(classes = BookServiceCacheTest.Config.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class BookServiceCacheTest {
+
+	@Configuration
+	@Import(CacheConfig.class)
+	static class Config {
+		
+		@Bean
+		public CacheManager cacheManager() {
+			return new CaffeineCacheManager(CacheConfig.BOOKS_BY_ID, CacheConfig.BOOKS_BY_ISBN);
+		}
+		
+		@Bean
+		public BookService bookService(BookRepository repository, BookSearchService searchService) {
+			return new BookServiceImpl(repository, searchService, new ApproximateCountServiceImpl(30, 300));
+		}
+	}
+	
+	@Autowired
+	BookService service;
+	
+	@MockBean
+	BookSearchService searchService;
+	
+	@MockBean
+	BookRepository repository;
+	
+	@Test
+	@DisplayName("Deve obter o livro pelo isbn do cache na segunda consulta")
+	public void getBookByIsbnFromCache() {
+		String isbn = "123";
+		when(repository.findByIsbn(isbn)).thenReturn(Optional.of(createBook(isbn)));
+		
+		service.getBookByIsbn(isbn);
+		Optional<Book> book = service.getBookByIsbn(isbn);
+		
+		assertThat(book.isPresent()).isTrue();
+		assertThat(book.get().getIsbn()).isEqualTo(isbn);
+		verify(repository, times(1)).findByIsbn(isbn);
+	}
+	
+	@Test
+	@DisplayName("Deve guardar no cache uma copia do livro e nao a entidade gerenciada")
+	public void cacheCopyOfManagedBook() {
+		Book managed = createBook("123");
+		when(repository.findById(1l)).thenReturn(Optional.of(managed));
+		
+		Book cached = service.getById(1l).get();
+		managed.setTitle("Alterado");
+		
+		assertThat(cached).isNotSameAs(managed);
+		assertThat(service.getById(1l).get().getTitle()).isEqualTo("Aventuras");
+	}
+	
+	@Test
+	@DisplayName("Nao deve guardar no cache um isbn inexistente")
+	public void notCacheMissingIsbn() {
+		String isbn = "123";
+		when(repository.findByIsbn(isbn)).thenReturn(Optional.empty());
+		
+		service.getBookByIsbn(isbn);
+		service.getBookByIsbn(isbn);
+		
+		verify(repository, times(2)).findByIsbn(isbn);
+	}
+	
+	@Test
+	@DisplayName("Deve invalidar o cache ao atualizar um livro")
+	public void evictOnUpdate() {
+		Book book = createBook("123");
+		when(repository.findById(1l)).thenReturn(Optional.of(book));
+		when(repository.findByIsbn("123")).thenReturn(Optional.of(book));
+		when(repository.save(book)).thenReturn(book);
+		
+		service.getById(1l);
+		service.getBookByIsbn("123");
+		service.update(book);
+		service.getById(1l);
+		service.getBookByIsbn("123");
+		
+		verify(repository, times(2)).findById(1l);
+		verify(repository, times(2)).findByIsbn("123");
+	}
+	
+	@Test
+	@DisplayName("Deve invalidar o cache ao deletar um livro")
+	public void evictOnDelete() {
+		Book book = createBook("123");
+		when(repository.findById(1l)).thenReturn(Optional.of(book));
+		
+		service.getById(1l);
+		service.delete(book);
+		service.getById(1l);
+		
+		verify(repository, times(2)).findById(1l);
+	}
+	
+	private Book createBook(String isbn) {
+		return Book.builder().id(1l).isbn(isbn).author("Beltrano").title("Aventuras").build();
+	}
+}
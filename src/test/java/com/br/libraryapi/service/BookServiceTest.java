@@ -20,13 +20,18 @@ import org.springframework.data.domain.Example;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import com.br.libraryapi.api.dto.BookDTO;
+import com.br.libraryapi.api.dto.CountMode;
 import com.br.libraryapi.exception.BusinessException;
 import com.br.libraryapi.model.entity.Book;
 import com.br.libraryapi.model.repository.BookRepository;
 import com.br.libraryapi.service.BookService;
+import com.br.libraryapi.service.impl.ApproximateCountServiceImpl;
 import com.br.libraryapi.service.impl.BookServiceImpl;
 
 @ExtendWith(SpringExtension.class)
@@ -38,9 +43,12 @@ public class BookServiceTest {
 	@MockBean
 	BookRepository repository;
 	
+	@MockBean
+	BookSearchService searchService;
+	
 	@BeforeEach
 	public void setUp() {
-		this.service = new BookServiceImpl( repository );
+		this.service = new BookServiceImpl( repository, searchService, new ApproximateCountServiceImpl(30, 300) );
 	}
 	
 	@Test
@@ -210,6 +218,105 @@ public class BookServiceTest {
 		
 	}
 	
+	@Test
+	@DisplayName("Deve filtrar livros sem executar a consulta de contagem")
+	public void findBookWithoutCount() { 
+		
+		Book book = createValidBook();
+		PageRequest pageRequest = PageRequest.of( 0, 10);
+		Slice<Book> slice = new SliceImpl<Book>(Arrays.asList(book), pageRequest, false);
+		when( repository.findSlice(Mockito.any(Example.class), Mockito.eq(pageRequest)) ).thenReturn(slice);
+		
+		Slice<Book> result = service.find( book, pageRequest, CountMode.NONE );
+		
+		assertThat( result ).isSameAs( slice );
+		verify( repository, Mockito.never() ).count(Mockito.any(Example.class));
+		verify( repository, Mockito.never() ).findAll(Mockito.any(Example.class), Mockito.any(PageRequest.class));
+	}
+	
+	@Test
+	@DisplayName("Deve reaproveitar o total aproximado entre consultas com o mesmo filtro")
+	public void findBookWithApproximateCount() { 
+		
+		Book book = createValidBook();
+		PageRequest pageRequest = PageRequest.of( 0, 1);
+		when( repository.findSlice(Mockito.any(Example.class), Mockito.eq(pageRequest)) )
+			.thenReturn(new SliceImpl<Book>(Arrays.asList(book), pageRequest, true));
+		when( repository.count(Mockito.any(Example.class)) ).thenReturn(42l);
+		
+		Page<Book> first = (Page<Book>) service.find( book, pageRequest, CountMode.APPROX );
+		Page<Book> second = (Page<Book>) service.find( createValidBook(), pageRequest, CountMode.APPROX );
+		
+		assertThat( first.getTotalElements() ).isEqualTo(42);
+		assertThat( second.getTotalElements() ).isEqualTo(42);
+		verify( repository, times(1) ).count(Mockito.any(Example.class));
+	}
+	
+	@Test
+	@DisplayName("Deve buscar livros pelo indice de texto quando houver filtro de titulo ou autor")
+	public void findBookByTextIndex() { 
+		
+		Book filter = Book.builder().title("Aventuras").build();
+		PageRequest pageRequest = PageRequest.of( 0, 10);
+		Page<Book> page = new PageImpl<Book>(Arrays.asList(createValidBook()), pageRequest, 1);
+		when( searchService.isReady() ).thenReturn(true);
+		when( searchService.search(filter, pageRequest) ).thenReturn(page);
+		
+		Page<Book> result = service.find( filter, pageRequest);
+		
+		assertThat( result ).isSameAs( page );
+		verify( repository, Mockito.never() ).findAll(Mockito.any(Example.class), Mockito.any(PageRequest.class));
+	}
+	
+	@Test
+	@DisplayName("Deve filtrar livros como DTOs sem contar quando a primeira página já diz o total")
+	public void findBookDTO() { 
+		
+		PageRequest pageRequest = PageRequest.of( 0, 10);
+		BookDTO dto = new BookDTO(1l, "Aventuras", "Beltrano", "123");
+		when( repository.findDTOSlice(Mockito.any(Example.class), Mockito.eq(pageRequest)) )
+			.thenReturn(new SliceImpl<BookDTO>(Arrays.asList(dto), pageRequest, false));
+		
+		Page<BookDTO> result = (Page<BookDTO>) service.findDTO( createValidBook(), PageRequest.of( 0, 10), CountMode.EXACT );
+		
+		assertThat( result.getContent() ).containsExactly( dto );
+		assertThat( result.getTotalElements() ).isEqualTo(1);
+		verify( repository, Mockito.never() ).count(Mockito.any(Example.class));
+		verify( repository, Mockito.never() ).findAll(Mockito.any(Example.class), Mockito.any(PageRequest.class));
+	}
+	
+	@Test
+	@DisplayName("Deve buscar DTOs pelo indice de texto quando houver filtro de titulo ou autor")
+	public void findBookDTOByTextIndex() { 
+		
+		Book filter = Book.builder().title("Aventuras").build();
+		PageRequest pageRequest = PageRequest.of( 0, 10);
+		Page<BookDTO> page = new PageImpl<BookDTO>(Arrays.asList(new BookDTO(1l, "Aventuras", "Beltrano", "123")), pageRequest, 1);
+		when( searchService.isReady() ).thenReturn(true);
+		when( searchService.searchDTO(filter, pageRequest) ).thenReturn(page);
+		
+		Slice<BookDTO> result = service.findDTO( filter, pageRequest, CountMode.EXACT );
+		
+		assertThat( result ).isSameAs( page );
+		verify( searchService, Mockito.never() ).search(filter, pageRequest);
+	}
+	
+	@Test
+	@DisplayName("Deve manter o indice de texto sincronizado ao salvar, atualizar e deletar")
+	public void keepTextIndexInSync() { 
+		
+		Book book = Book.builder().id(11l).isbn("123").author("Beltrano").title("Aventuras").build();
+		when( repository.existsByIsbn("123") ).thenReturn(false);
+		when( repository.save(book) ).thenReturn(book);
+		
+		service.save(book);
+		service.update(book);
+		service.delete(book);
+		
+		verify( searchService, times(2) ).index(book);
+		verify( searchService ).remove(11l);
+	}
+	
 	private Book createValidBook() {
 		return Book.builder().isbn("123").author("Beltrano").title("Aventuras").build();
 	}
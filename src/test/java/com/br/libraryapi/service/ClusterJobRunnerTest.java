@@ -0,0 +1,199 @@
+package com.br.libraryapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.TypeExcludeFilter;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.type.classreading.MetadataReader;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import com.br.libraryapi.LibraryApiApplication;
+
+/**
+ * Three application contexts sharing one H2 database, standing for three nodes of a cluster.
+ * The heartbeat is not scheduled here; the tests call takeOver where it would run.
+ */
+public class ClusterJobRunnerTest {
+
+	static final String URL = "jdbc:h2:mem:cluster-jobs;DB_CLOSE_DELAY=-1";
+
+	static List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+
+	JdbcTemplate database;
+
+	Map<Integer, List<String>> processed;
+
+	AtomicInteger completedRuns;
+
+	LocalDate today = LocalDate.now();
+
+	@BeforeAll
+	public static void startNodes() {
+		for (int node = 1; node <= 3; node++) {
+			nodes.add(new SpringApplicationBuilder(LibraryApiApplication.class)
+					// swagger needs a servlet context
+					.web(WebApplicationType.SERVLET)
+					.profiles("test")
+					.initializers(TestClassesExcludeFilter::register)
+					.properties(
+							"server.port=0",
+							"spring.datasource.url=" + URL,
+							"application.jobs.node-id=node-" + node,
+							"application.jobs.heartbeat-interval=3600000",
+							"application.mail.outbox.initial-delay=3600000",
+							"spring.boot.admin.client.enabled=false")
+					.run());
+		}
+	}
+
+	@AfterAll
+	public static void stopNodes() {
+		nodes.forEach(ConfigurableApplicationContext::close);
+	}
+
+	@BeforeEach
+	public void setUp() {
+		database = new JdbcTemplate(new DriverManagerDataSource(URL, "sa", ""));
+		processed = new ConcurrentHashMap<>();
+		completedRuns = new AtomicInteger();
+	}
+
+	@Test
+	@DisplayName("Deve executar o job uma unica vez no cluster mesmo disparado em todos os nos")
+	public void runOncePerCluster() {
+		register("single", 1, null);
+
+		runOnEveryNode("single");
+		runOnEveryNode("single");
+
+		assertThat(processed).containsOnlyKeys(0);
+		assertThat(processed.get(0)).containsExactly("node-1");
+		assertThat(completedRuns).hasValue(1);
+	}
+
+	@Test
+	@DisplayName("Deve dividir as particoes em faixas entre os nos vivos e processar cada uma uma vez")
+	public void spreadPartitionsAcrossNodes() {
+		register("partitioned", 6, null);
+
+		runOnEveryNode("partitioned");
+
+		assertThat(processed).containsOnlyKeys(0, 1, 2, 3, 4, 5);
+		assertThat(processed.get(0)).containsExactly("node-1");
+		assertThat(processed.get(1)).containsExactly("node-1");
+		assertThat(processed.get(2)).containsExactly("node-2");
+		assertThat(processed.get(3)).containsExactly("node-2");
+		assertThat(processed.get(4)).containsExactly("node-3");
+		assertThat(processed.get(5)).containsExactly("node-3");
+		assertThat(completedRuns).hasValue(1);
+	}
+
+	@Test
+	@DisplayName("Deve assumir somente as particoes cujo dono parou de enviar heartbeat")
+	public void takeOverPartitionsOfDeadNodes() {
+		register("takeover", 3, null);
+		runner(0).run("takeover", today).join();
+		// partition 1 was claimed by a node that died, partition 2 by one that is still renewing its lease
+		lease("takeover", 1, "node-dead", -60);
+		lease("takeover", 2, "node-alive", 3600);
+
+		runner(1).takeOver().join();
+
+		assertThat(processed).containsOnlyKeys(0, 1);
+		assertThat(processed.get(1)).containsExactly("node-2");
+		assertThat(completedRuns).hasValue(0);
+
+		lease("takeover", 2, "node-alive", -60);
+		runner(2).takeOver().join();
+
+		assertThat(processed.get(2)).containsExactly("node-3");
+		assertThat(completedRuns).hasValue(1);
+	}
+
+	@Test
+	@DisplayName("Deve tentar novamente a particao que falhou apos o fim do lease")
+	public void retryFailedPartition() {
+		register("failing", 1, "node-1");
+
+		runner(0).run("failing", today).join();
+
+		assertThat(processed).isEmpty();
+		assertThat(completedRuns).hasValue(0);
+		assertThat(runner(1).takeOver().join()).isNull();
+		assertThat(processed).isEmpty();
+
+		lease("failing", 0, null, -60);
+		runner(1).takeOver().join();
+
+		assertThat(processed.get(0)).containsExactly("node-2");
+		assertThat(completedRuns).hasValue(1);
+	}
+
+	/**
+	 * The nodes are started as plain applications, outside the test context that keeps the
+	 * configurations declared by other tests out of the component scan.
+	 */
+	static class TestClassesExcludeFilter extends TypeExcludeFilter {
+
+		static void register(ConfigurableApplicationContext context) {
+			context.getBeanFactory().registerSingleton(TestClassesExcludeFilter.class.getName(), new TestClassesExcludeFilter());
+		}
+
+		@Override
+		public boolean match(MetadataReader reader, MetadataReaderFactory factory) {
+			String enclosing = reader.getClassMetadata().getEnclosingClassName();
+			return reader.getAnnotationMetadata().hasAnnotation(TestConfiguration.class.getName())
+					|| (enclosing != null && enclosing.endsWith("Test"));
+		}
+	}
+
+	// every node records the partitions it processed; failingNode throws instead
+	private void register(String job, int partitions, String failingNode) {
+		for (ConfigurableApplicationContext node : nodes) {
+			ClusterJobRunner runner = node.getBean(ClusterJobRunner.class);
+			String nodeId = runner.getNodeId();
+			runner.register(job, partitions, (partition, total, runDate) -> {
+				if (nodeId.equals(failingNode)) {
+					throw new IllegalStateException("falha na particao " + partition);
+				}
+				processed.computeIfAbsent(partition, p -> new CopyOnWriteArrayList<>()).add(nodeId);
+			}, runDate -> completedRuns.incrementAndGet());
+		}
+	}
+
+	private void runOnEveryNode(String job) {
+		CompletableFuture<?>[] runs = nodes.stream()
+				.map(node -> node.getBean(ClusterJobRunner.class).run(job, today))
+				.toArray(CompletableFuture[]::new);
+		CompletableFuture.allOf(runs).join();
+	}
+
+	private ClusterJobRunner runner(int node) {
+		return nodes.get(node).getBean(ClusterJobRunner.class);
+	}
+
+	private void lease(String job, int partition, String owner, int expiresInSeconds) {
+		database.update("update job_lease set owner = ?, lease_until = ? where name = ?", owner,
+				new Timestamp(System.currentTimeMillis() + expiresInSeconds * 1000L), ClusterJobRunner.leaseName(job, partition));
+	}
+}
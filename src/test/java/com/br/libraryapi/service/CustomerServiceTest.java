@@ -0,0 +1,100 @@
+package com.br.libraryapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import com.br.libraryapi.model.entity.Customer;
+import com.br.libraryapi.model.entity.Loan;
+import com.br.libraryapi.model.repository.CustomerRepository;
+import com.br.libraryapi.service.impl.CustomerServiceImpl;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class CustomerServiceTest {
+
+	CustomerService service;
+
+	@MockBean
+	CustomerRepository repository;
+
+	@BeforeEach
+	public void setUp() {
+		this.service = new CustomerServiceImpl(repository);
+	}
+
+	@Test
+	@DisplayName("Deve vincular os emprestimos aos clientes existentes e criar um cliente por email novo")
+	public void assignCustomersTest() {
+		Loan existing = Loan.builder().customer("Fulano").customerEmail(" Fulano@Email.com").build();
+		Loan created = Loan.builder().customer("Beltrano").customerEmail("beltrano@email.com").build();
+		Loan sameCreated = Loan.builder().customer("Beltrano").customerEmail("BELTRANO@email.com").build();
+		Loan withoutEmail = Loan.builder().customer("Ciclano").build();
+		when(repository.findByEmailIn(Mockito.anyCollection()))
+			.thenReturn(Arrays.asList(Customer.builder().id(1l).email("fulano@email.com").build()));
+		when(repository.saveAndFlush(Mockito.any(Customer.class)))
+			.thenAnswer( invocation -> {
+				Customer customer = invocation.getArgument(0);
+				customer.setId(2l);
+				return customer;
+			});
+
+		service.assignCustomers(Arrays.asList(existing, created, sameCreated, withoutEmail));
+
+		ArgumentCaptor<Customer> captor = ArgumentCaptor.forClass(Customer.class);
+		verify(repository).saveAndFlush(captor.capture());
+		assertThat(captor.getValue().getEmail()).isEqualTo("beltrano@email.com");
+		assertThat(captor.getValue().getName()).isEqualTo("Beltrano");
+		assertThat(existing.getCustomerId()).isEqualTo(1l);
+		assertThat(created.getCustomerId()).isEqualTo(2l);
+		assertThat(sameCreated.getCustomerId()).isEqualTo(2l);
+		assertThat(withoutEmail.getCustomerId()).isNull();
+	}
+
+	@Test
+	@DisplayName("Deve falhar a transacao quando outra requisicao criar o cliente ao mesmo tempo")
+	public void assignCustomerCreatedConcurrentlyTest() {
+		Loan loan = Loan.builder().customer("Fulano").customerEmail("fulano@email.com").build();
+		when(repository.findByEmailIn(Mockito.anyCollection())).thenReturn(Collections.emptyList());
+		when(repository.saveAndFlush(Mockito.any(Customer.class))).thenThrow(new DataIntegrityViolationException("uk_customer_email"));
+
+		Throwable exception = Assertions.catchThrowable( () -> service.assignCustomers(Collections.singletonList(loan)) );
+
+		assertThat(exception).isInstanceOf(DataIntegrityViolationException.class);
+		assertThat(loan.getCustomerId()).isNull();
+	}
+
+	@Test
+	@DisplayName("Deve atualizar os contadores em ordem de id e ignorar os que nao mudam")
+	public void addLoansInIdOrderTest() {
+		Map<Long, Integer> open = new HashMap<>();
+		open.put(9l, 1);
+		open.put(4l, -1);
+		open.put(6l, 0);
+
+		service.addLoans(open, Collections.singletonMap(4l, -1));
+
+		InOrder inOrder = Mockito.inOrder(repository);
+		inOrder.verify(repository).addLoans(4l, -1, -1);
+		inOrder.verify(repository).addLoans(9l, 1, 0);
+		verify(repository, Mockito.never()).addLoans(Mockito.eq(6l), Mockito.anyInt(), Mockito.anyInt());
+	}
+}
@@ -0,0 +1,113 @@
+package com.br.libraryapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class DatabaseExecutorTest {
+
+	DatabaseExecutor executor;
+
+	@AfterEach
+	public void tearDown() {
+		executor.stop();
+	}
+
+	@Test
+	@DisplayName("Deve executar a chamada fora da thread da requisição")
+	public void supplyOnExecutorThread() throws Exception {
+		executor = start(2, 10, false);
+
+		String thread = executor.supply( () -> Thread.currentThread().getName() ).get(5, TimeUnit.SECONDS);
+
+		assertThat(thread).startsWith("database-");
+	}
+
+	@Test
+	@DisplayName("Deve rejeitar chamadas quando as threads e a fila estiverem ocupadas")
+	public void rejectWhenSaturated() throws Exception {
+		executor = start(1, 1, false);
+		assertRejectsThirdCall();
+	}
+
+	@Test
+	@DisplayName("Deve limitar as chamadas em andamento quando usar threads virtuais")
+	public void rejectWhenSaturatedOnVirtualThreads() throws Exception {
+		// falls back to the platform pool on JDKs without virtual threads
+		executor = start(1, 1, true);
+		assertRejectsThirdCall();
+	}
+
+	@Test
+	@DisplayName("Deve executar no máximo uma chamada por thread quando usar threads virtuais")
+	public void runAtMostThreadsCallsOnVirtualThreads() throws Exception {
+		// on JDKs without virtual threads the pool's two threads give the same bound
+		executor = start(2, 10, true);
+		AtomicInteger current = new AtomicInteger();
+		AtomicInteger max = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+
+		List<CompletableFuture<Boolean>> calls = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			calls.add(executor.supply( () -> {
+				max.accumulateAndGet(current.incrementAndGet(), Math::max);
+				try {
+					return await(release);
+				} finally {
+					current.decrementAndGet();
+				}
+			} ));
+		}
+		Thread.sleep(200);
+		release.countDown();
+
+		for (CompletableFuture<Boolean> call : calls) {
+			assertThat(call.get(5, TimeUnit.SECONDS)).isTrue();
+		}
+		assertThat(max.get()).isEqualTo(2);
+	}
+
+	private void assertRejectsThirdCall() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		CompletableFuture<Boolean> running = executor.supply( () -> await(release) );
+		CompletableFuture<Boolean> queued = executor.supply( () -> await(release) );
+
+		Throwable exception = Assertions.catchThrowable( () -> executor.supply( () -> true ) );
+
+		assertThat(exception).isInstanceOf(RejectedExecutionException.class);
+		release.countDown();
+		assertThat(running.get(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(queued.get(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(executor.supply( () -> true ).get(5, TimeUnit.SECONDS)).isTrue();
+	}
+
+	private DatabaseExecutor start(int threads, int queueCapacity, boolean virtualThreads) {
+		DatabaseExecutor executor = new DatabaseExecutor();
+		ReflectionTestUtils.setField(executor, "threads", threads);
+		ReflectionTestUtils.setField(executor, "queueCapacity", queueCapacity);
+		ReflectionTestUtils.setField(executor, "virtualThreads", virtualThreads);
+		executor.start();
+		return executor;
+	}
+
+	private boolean await(CountDownLatch latch) {
+		try {
+			return latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+}
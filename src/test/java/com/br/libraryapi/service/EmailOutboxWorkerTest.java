@@ -0,0 +1,164 @@
+package com.br.libraryapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.mail.internet.MimeMessage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.br.libraryapi.model.entity.EmailOutbox;
+import com.br.libraryapi.model.entity.EmailOutboxStatus;
+import com.br.libraryapi.model.entity.Loan;
+import com.br.libraryapi.model.repository.EmailOutboxRepository;
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetupTest;
+
+@SpringBootTest(properties = {
+		"spring.mail.host=localhost",
+		"spring.mail.port=3025",
+		"spring.mail.username=",
+		"spring.mail.password=",
+		"spring.mail.properties.mail.smtp.auth=false",
+		"spring.mail.properties.mail.smtp.starttls.enable=false",
+		"application.mail.outbox.initial-delay=3600000",
+		"application.mail.outbox.max-attempts=2"
+})
+public class EmailOutboxWorkerTest {
+
+	@Autowired
+	EmailOutboxWorker worker;
+	
+	@Autowired
+	EmailService emailService;
+	
+	@Autowired
+	EmailOutboxRepository repository;
+	
+	GreenMail smtp;
+	
+	@BeforeEach
+	public void setUp() {
+		smtp = new GreenMail(ServerSetupTest.SMTP);
+		smtp.start();
+	}
+	
+	@AfterEach
+	public void tearDown() {
+		smtp.stop();
+		repository.deleteAll();
+	}
+	
+	@Test
+	@DisplayName("Deve entregar os emails enfileirados pelo servidor SMTP")
+	public void deliverQueuedMails() throws Exception {
+		
+		int enqueued = emailService.enqueueLateLoanMails("Atrasado", Arrays.asList(createLoan(1l), createLoan(2l)));
+		
+		drainAndWait();
+		
+		assertThat(enqueued).isEqualTo(2);
+		MimeMessage[] received = smtp.getReceivedMessages();
+		assertThat(received).hasSize(2);
+		assertThat(received)
+			.extracting( message -> message.getAllRecipients()[0].toString() )
+			.containsExactlyInAnyOrder("cliente1@email.com", "cliente2@email.com");
+		assertThat(repository.findAll())
+			.extracting(EmailOutbox::getStatus)
+			.containsOnly(EmailOutboxStatus.SENT);
+	}
+	
+	@Test
+	@DisplayName("Nao deve enfileirar o mesmo lembrete duas vezes no mesmo dia")
+	public void deduplicateSameDayReminder() {
+		
+		emailService.enqueueLateLoanMails("Atrasado", Arrays.asList(createLoan(1l)));
+		int enqueued = emailService.enqueueLateLoanMails("Atrasado", Arrays.asList(createLoan(1l), createLoan(1l)));
+		
+		drainAndWait();
+		
+		assertThat(enqueued).isEqualTo(0);
+		assertThat(smtp.getReceivedMessages()).hasSize(1);
+	}
+	
+	@Test
+	@DisplayName("Deve reagendar com backoff e mover para dead letter apos o limite de tentativas")
+	public void retryWithBackoffAndDeadLetter() {
+		
+		smtp.stop();
+		emailService.enqueueLateLoanMails("Atrasado", Arrays.asList(createLoan(1l)));
+		
+		drainAndWait();
+		
+		EmailOutbox retried = repository.findAll().get(0);
+		assertThat(retried.getStatus()).isEqualTo(EmailOutboxStatus.PENDING);
+		assertThat(retried.getAttempts()).isEqualTo(1);
+		assertThat(retried.getNextAttemptAt()).isAfter(LocalDateTime.now());
+		assertThat(retried.getLastError()).isNotNull();
+		
+		retried.setNextAttemptAt(LocalDateTime.now().minusSeconds(1));
+		repository.save(retried);
+		drainAndWait();
+		
+		List<EmailOutbox> mails = repository.findAll();
+		assertThat(mails.get(0).getStatus()).isEqualTo(EmailOutboxStatus.DEAD);
+		assertThat(mails.get(0).getAttempts()).isEqualTo(2);
+	}
+	
+	@Test
+	@DisplayName("Deve retomar emails cuja reserva expirou")
+	public void reclaimExpiredClaims() {
+		
+		emailService.enqueueLateLoanMails("Atrasado", Arrays.asList(createLoan(1l)));
+		EmailOutbox stuck = repository.findAll().get(0);
+		stuck.setStatus(EmailOutboxStatus.SENDING);
+		stuck.setNextAttemptAt(LocalDateTime.now().minusSeconds(1));
+		repository.save(stuck);
+		
+		drainAndWait();
+		
+		assertThat(smtp.getReceivedMessages()).hasSize(1);
+		assertThat(repository.findAll().get(0).getStatus()).isEqualTo(EmailOutboxStatus.SENT);
+	}
+	
+	@Test
+	@DisplayName("Nao deve concluir um email cuja reserva expirou e foi tomada por outra")
+	public void ignoreCompletionOfLostClaim() {
+		
+		emailService.enqueueLateLoanMails("Atrasado", Arrays.asList(createLoan(1l)));
+		List<Long> ids = Arrays.asList(repository.findAll().get(0).getId());
+		List<EmailOutboxStatus> claimable = Arrays.asList(EmailOutboxStatus.PENDING, EmailOutboxStatus.SENDING);
+		LocalDateTime now = LocalDateTime.now();
+		
+		int expired = repository.claim(ids, EmailOutboxStatus.SENDING, now.minusSeconds(1), "expirada", claimable, now);
+		int current = repository.claim(ids, EmailOutboxStatus.SENDING, now.plusMinutes(5), "atual", claimable, now);
+		int lost = repository.completeSent(ids, "expirada", EmailOutboxStatus.SENT, now);
+		
+		assertThat(expired).isEqualTo(1);
+		assertThat(current).isEqualTo(1);
+		assertThat(lost).isEqualTo(0);
+		assertThat(repository.findClaimed(ids, "atual")).extracting(EmailOutbox::getStatus).containsExactly(EmailOutboxStatus.SENDING);
+		assertThat(repository.completeSent(ids, "atual", EmailOutboxStatus.SENT, now)).isEqualTo(1);
+	}
+	
+	private void drainAndWait() {
+		worker.drain();
+		long deadline = System.currentTimeMillis() + 10000;
+		while (worker.inFlight() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.yield();
+		}
+		assertThat(worker.inFlight()).isEqualTo(0);
+	}
+	
+	private Loan createLoan(Long id) {
+		return Loan.builder().id(id).customer("Cliente " + id).customerEmail("cliente" + id + "@email.com").build();
+	}
+}
@@ -0,0 +1,110 @@
+package com.br.libraryapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import com.br.libraryapi.model.entity.EmailOutbox;
+import com.br.libraryapi.model.entity.EmailOutboxStatus;
+import com.br.libraryapi.model.entity.Loan;
+import com.br.libraryapi.model.repository.EmailOutboxRepository;
+import com.br.libraryapi.model.repository.LoanRepository;
+import com.br.libraryapi.service.impl.EmailServiceImpl;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class EmailServiceTest {
+
+	EmailService service;
+	
+	@MockBean
+	JavaMailSender javaMailSender;
+	
+	@MockBean
+	EmailOutboxRepository outboxRepository;
+	
+	@MockBean
+	LoanRepository loanRepository;
+	
+	@BeforeEach
+	public void setUp() {
+		this.service = new EmailServiceImpl(javaMailSender, outboxRepository, loanRepository);
+	}
+	
+	@Test
+	@DisplayName("Deve enfileirar um email pendente por emprestimo ignorando os ja enfileirados")
+	@SuppressWarnings("unchecked")
+	public void enqueueIgnoringExistingDedupKeys() {
+		
+		Loan first = Loan.builder().id(1l).customerEmail("a@email.com").build();
+		Loan second = Loan.builder().id(2l).customerEmail("b@email.com").build();
+		Loan withoutEmail = Loan.builder().id(3l).build();
+		String existingKey = "a@email.com|1|" + LocalDateTime.now().toLocalDate();
+		Mockito.when(outboxRepository.findExistingDedupKeys(Mockito.anyCollection()))
+			.thenReturn(Collections.singletonList(existingKey));
+		
+		int enqueued = service.enqueueLateLoanMails("Atrasado", Arrays.asList(first, second, withoutEmail));
+		
+		ArgumentCaptor<Collection<EmailOutbox>> captor = ArgumentCaptor.forClass(Collection.class);
+		Mockito.verify(outboxRepository).saveAll(captor.capture());
+		assertThat(enqueued).isEqualTo(1);
+		assertThat(captor.getValue()).hasSize(1);
+		EmailOutbox mail = captor.getValue().iterator().next();
+		assertThat(mail.getRecipient()).isEqualTo("b@email.com");
+		assertThat(mail.getStatus()).isEqualTo(EmailOutboxStatus.PENDING);
+		assertThat(mail.getAttempts()).isEqualTo(0);
+		Mockito.verify(loanRepository).markNotified(Mockito.eq(Arrays.asList(1l, 2l, 3l)), Mockito.any(LocalDateTime.class));
+	}
+	
+	@Test
+	@DisplayName("Deve enviar uma mensagem por email da fila")
+	public void deliverOneMessagePerMail() {
+		
+		Map<Long, String> failed = service.deliver(Arrays.asList(createMail(1l, "a@email.com"), createMail(2l, "b@email.com")));
+		
+		ArgumentCaptor<SimpleMailMessage> captor = ArgumentCaptor.forClass(SimpleMailMessage.class);
+		Mockito.verify(javaMailSender).send(captor.capture(), captor.capture());
+		assertThat(captor.getAllValues()).hasSize(2);
+		assertThat(captor.getAllValues().get(0).getTo()).containsExactly("a@email.com");
+		assertThat(captor.getAllValues().get(1).getTo()).containsExactly("b@email.com");
+		assertThat(failed).isEmpty();
+	}
+	
+	@Test
+	@DisplayName("Deve retornar os emails da fila cujas mensagens falharam")
+	public void returnFailedMails() {
+		
+		List<EmailOutbox> mails = Arrays.asList(createMail(1l, "a@email.com"), createMail(2l, "b@email.com"));
+		Mockito.doAnswer( invocation -> {
+				Object failedMessage = invocation.getArguments()[1];
+				throw new MailSendException(Collections.<Object, Exception>singletonMap(failedMessage, new Exception("smtp")));
+			}).when(javaMailSender).send(Mockito.<SimpleMailMessage[]>any());
+		
+		Map<Long, String> failed = service.deliver(mails);
+		
+		assertThat(failed).containsOnlyKeys(2l);
+		assertThat(failed.get(2l)).isEqualTo("smtp");
+	}
+	
+	private EmailOutbox createMail(Long id, String recipient) {
+		return EmailOutbox.builder().id(id).recipient(recipient).subject("Atraso").body("Atrasado").attempts(0).build();
+	}
+}
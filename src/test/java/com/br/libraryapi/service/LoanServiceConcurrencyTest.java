@@ -0,0 +1,159 @@
+package com.br.libraryapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.br.libraryapi.exception.BusinessException;
+import com.br.libraryapi.model.entity.Book;
+import com.br.libraryapi.model.entity.Loan;
+import com.br.libraryapi.model.repository.BookRepository;
+import com.br.libraryapi.model.repository.LoanRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+@SpringBootTest
+@Slf4j
+public class LoanServiceConcurrencyTest {
+
+	private static final int THREADS = 16;
+	private static final int BOOKS = 20;
+	private static final int ATTEMPTS_PER_THREAD = 100;
+	private static final int CYCLES_PER_THREAD = 50;
+	
+	@Autowired
+	LoanService service;
+	
+	@Autowired
+	LoanRepository loanRepository;
+	
+	@Autowired
+	BookRepository bookRepository;
+	
+	@Autowired
+	BookAvailabilityService availability;
+	
+	@AfterEach
+	public void tearDown() {
+		loanRepository.deleteAll();
+		bookRepository.deleteAll();
+		availability.rebuild();
+	}
+	
+	@Test
+	@DisplayName("Nao deve emprestar o mesmo livro duas vezes sob concorrencia")
+	public void noDoubleLoansUnderContention() throws Exception {
+		
+		List<Book> books = createBooks(BOOKS, "contention");
+		AtomicInteger created = new AtomicInteger();
+		AtomicInteger rejected = new AtomicInteger();
+		
+		runConcurrently(thread -> {
+			for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+				Book book = books.get((thread + i) % books.size());
+				try {
+					service.save(newLoan(book));
+					created.incrementAndGet();
+				} catch (BusinessException e) {
+					rejected.incrementAndGet();
+				}
+			}
+		});
+		
+		assertThat(created.get()).isEqualTo(BOOKS);
+		assertThat(rejected.get()).isEqualTo(THREADS * ATTEMPTS_PER_THREAD - BOOKS);
+		assertThat(loanRepository.count()).isEqualTo(BOOKS);
+		assertThat(loanRepository.findNotReturnedBookIds()).hasSize(BOOKS).doesNotHaveDuplicates();
+	}
+	
+	@Test
+	@DisplayName("Deve emprestar mais livros por segundo que a verificacao por count")
+	public void loansPerSecondComparedToCountCheck() throws Exception {
+		
+		List<Book> legacyBooks = createBooks(THREADS, "legacy");
+		long legacyNanos = runConcurrently(thread -> {
+			Book book = legacyBooks.get(thread);
+			for (int i = 0; i < CYCLES_PER_THREAD; i++) {
+				if (!loanRepository.existsByBookAndNotReturned(book)) {
+					returnLoan(loanRepository.save(newLoan(book)));
+				}
+			}
+		});
+		
+		List<Book> books = createBooks(THREADS, "striped");
+		long nanos = runConcurrently(thread -> {
+			Book book = books.get(thread);
+			for (int i = 0; i < CYCLES_PER_THREAD; i++) {
+				Loan loan = service.save(newLoan(book));
+				loan.setReturned(true);
+				service.update(loan);
+			}
+		});
+		
+		int loans = THREADS * CYCLES_PER_THREAD;
+		log.info("count check: {} loans/s, availability set: {} loans/s",
+				loans * 1_000_000_000L / legacyNanos, loans * 1_000_000_000L / nanos);
+		
+		assertThat(loanRepository.findNotReturnedBookIds()).isEmpty();
+	}
+	
+	private void returnLoan(Loan loan) {
+		loan.setReturned(true);
+		loanRepository.save(loan);
+	}
+	
+	private long runConcurrently(Worker worker) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Callable<Void>> tasks = new ArrayList<>();
+			for (int thread = 0; thread < THREADS; thread++) {
+				int index = thread;
+				tasks.add(() -> {
+					worker.run(index);
+					return null;
+				});
+			}
+			long start = System.nanoTime();
+			for (Future<Void> future : executor.invokeAll(tasks)) {
+				future.get();
+			}
+			return System.nanoTime() - start;
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	private List<Book> createBooks(int count, String prefix) {
+		List<Book> books = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			books.add(Book.builder().isbn(prefix + "-" + i).author("Beltrano").title("Aventuras").build());
+		}
+		return bookRepository.saveAll(books);
+	}
+	
+	private Loan newLoan(Book book) {
+		return Loan.builder()
+				.book(book)
+				.customer("Fulano")
+				.customerEmail("fulano@email.com")
+				.loanDate(LocalDate.now())
+				.build();
+	}
+	
+	private interface Worker {
+		void run(int thread) throws Exception;
+	}
+}
@@ -6,41 +6,72 @@ import static org.mockito.Mockito.when;
 
 import java.time.LocalDate;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.assertj.core.api.Assertions;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mockito;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
 
+import com.br.libraryapi.api.dto.CountMode;
+import com.br.libraryapi.api.dto.LoanBatchResultDTO;
+import com.br.libraryapi.api.dto.LoanCursor;
+import com.br.libraryapi.api.dto.LoanDTO;
 import com.br.libraryapi.api.dto.LoanFilterDTO;
+import com.br.libraryapi.api.dto.LoanReturnResultDTO;
 import com.br.libraryapi.exception.BusinessException;
 import com.br.libraryapi.model.entity.Book;
 import com.br.libraryapi.model.entity.Loan;
 import com.br.libraryapi.model.repository.LoanRepository;
+import com.br.libraryapi.model.repository.LoanState;
+import com.br.libraryapi.service.impl.ApproximateCountServiceImpl;
+import com.br.libraryapi.service.impl.BookAvailabilityServiceImpl;
 import com.br.libraryapi.service.impl.LoanServiceImpl;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("test")
 public class LoanServiceTest {
 	
 	LoanService service;
 	
+	BookAvailabilityService availability;
+	
+	MeterRegistry meterRegistry;
+	
 	@MockBean
 	LoanRepository repository;
 	
+	@MockBean
+	CustomerService customerService;
+	
 	@BeforeEach
 	public void setUp() {
-		this.service = new LoanServiceImpl(repository);
+		this.availability = new BookAvailabilityServiceImpl(repository);
+		this.meterRegistry = new SimpleMeterRegistry();
+		this.service = new LoanServiceImpl(repository, availability, new ApproximateCountServiceImpl(30, 300),
+				customerService, Mockito.mock(PlatformTransactionManager.class), meterRegistry);
 	}
 
 	@Test
@@ -67,6 +98,69 @@ public class LoanServiceTest {
 		assertThat(loan.getBook().getId()).isEqualTo(savedLoan.getBook().getId());
 		assertThat(loan.getCustomer()).isEqualTo(savedLoan.getCustomer());
 		assertThat(loan.getLoanDate()).isEqualTo(savedLoan.getLoanDate());
+		assertThat(availability.isLoaned(book.getId())).isTrue();
+		assertThat(meterRegistry.counter("library.loans.created").count()).isEqualTo(1);
+	}
+	
+	@Test
+	@DisplayName("Deve vincular o cliente e somar o emprestimo aberto no seu contador")
+	public void countOpenLoanTest() throws Exception {
+		Loan savingLoan = createLoan();
+		Mockito.doAnswer( invocation -> {
+			savingLoan.setCustomerId(7l);
+			return null;
+		}).when(customerService).assignCustomers(Collections.singletonList(savingLoan));
+		when(repository.save(savingLoan)).thenReturn(savingLoan);
+		
+		service.save(savingLoan);
+		
+		verify(customerService).addLoans(Collections.singletonMap(7l, 1), Collections.emptyMap());
+	}
+	
+	@Test
+	@DisplayName("Nao deve somar o emprestimo no contador do cliente quando o livro ja estiver emprestado")
+	public void notCountConflictingLoanTest() throws Exception {
+		Loan savingLoan = createLoan();
+		savingLoan.setCustomerId(7l);
+		when(repository.save(savingLoan)).thenThrow(openBookViolation());
+		
+		Assertions.catchThrowable( () -> service.save(savingLoan) );
+		
+		verify(customerService, Mockito.never()).addLoans(Mockito.anyMap(), Mockito.anyMap());
+	}
+	
+	@Test
+	@DisplayName("Deve repetir o emprestimo quando outra requisicao criar o mesmo cliente")
+	public void retryOnCustomerCreatedConcurrentlyTest() throws Exception {
+		Loan savingLoan = createLoan();
+		Mockito.doAnswer( invocation -> {
+				savingLoan.setCustomerId(99l);
+				throw new DataIntegrityViolationException("uk_customer_email",
+						new ConstraintViolationException("uk_customer_email", null, "UK_CUSTOMER_EMAIL_INDEX_5"));
+			}).doAnswer( invocation -> {
+				assertThat(savingLoan.getCustomerId()).isNull();
+				savingLoan.setCustomerId(3l);
+				return null;
+			}).when(customerService).assignCustomers(Collections.singletonList(savingLoan));
+		when(repository.save(savingLoan)).thenReturn(savingLoan);
+		
+		Loan loan = service.save(savingLoan);
+		
+		assertThat(loan.getCustomerId()).isEqualTo(3l);
+		verify(repository).save(savingLoan);
+		verify(customerService).addLoans(Collections.singletonMap(3l, 1), Collections.emptyMap());
+	}
+	
+	@Test
+	@DisplayName("Deve definir o vencimento pelo prazo de empréstimo configurado")
+	public void assignDueDateTest() throws Exception {
+		ReflectionTestUtils.setField(service, "loanDays", 14);
+		Loan savingLoan = createLoan();
+		when(repository.save(savingLoan)).thenReturn(savingLoan);
+		
+		Loan loan = service.save(savingLoan);
+		
+		assertThat(loan.getDueDate()).isEqualTo(LocalDate.now().plusDays(14));
 	}
 	
 	@Test
@@ -82,6 +176,7 @@ public class LoanServiceTest {
 							.loanDate(LocalDate.now())
 							.build();
 		
+		availability.markLoaned(book.getId());
 		when(repository.existsByBookAndNotReturned(book)).thenReturn(true);
 			
 		Throwable exception = Assertions.catchThrowable( () ->  service.save(savingLoan));
@@ -129,10 +224,201 @@ public class LoanServiceTest {
 		Loan updatedLoan = service.update(loan);
 		
 		assertThat(updatedLoan.getReturned()).isTrue();
+		assertThat(availability.isLoaned(loan.getBook().getId())).isFalse();
 		verify(repository).save(loan);
 		
 	}
 	
+	@Test
+	@DisplayName("Deve lançar erro ao desfazer a devolução de um empréstimo")
+	public void reopenReturnedLoanTest() {
+		Loan loan = createLoan();
+		loan.setId(1l);
+		loan.setReturned(false);
+		
+		Throwable exception = Assertions.catchThrowable( () -> service.update(loan) );
+		
+		assertThat(exception)
+				.isInstanceOf(BusinessException.class)
+				.hasMessage("Loan already returned");
+		Mockito.verify(repository, Mockito.never()).save(loan);
+		Mockito.verify(customerService, Mockito.never()).addLoans(Mockito.any(), Mockito.any());
+	}
+	
+	@Test
+	@DisplayName("Deve descontar o emprestimo devolvido dos contadores de abertos e atrasados do cliente")
+	public void countReturnedLoanTest() {
+		Loan loan = createLoan();
+		loan.setId(1l);
+		loan.setCustomerId(7l);
+		loan.setOverdue(true);
+		loan.setOpenBookId(loan.getBook().getId());
+		loan.setReturned(true);
+		Mockito.when( repository.save(loan) ).thenReturn(loan);
+		
+		service.update(loan);
+		
+		verify(customerService).addLoans(Collections.singletonMap(7l, -1), Collections.singletonMap(7l, -1));
+	}
+	
+	@Test
+	@DisplayName("Deve salvar emprestimos em lote reportando conflitos e livros inexistentes")
+	@SuppressWarnings("unchecked")
+	public void saveAllLoansTest() {
+		
+		availability.markLoaned(2l);
+		Loan free = createLoan(1l);
+		Loan loaned = createLoan(2l);
+		Loan repeated = createLoan(1l);
+		Loan notFound = Loan.builder().customer("Beltrano").build();
+		when(repository.findOpenBookIds(Arrays.asList(2l))).thenReturn(Arrays.asList(2l));
+		when(repository.saveAll(Arrays.asList(free))).thenAnswer( invocation -> {
+			free.setId(10l);
+			return Arrays.asList(free);
+		});
+		
+		List<LoanBatchResultDTO> results = service.saveAll(Arrays.asList(free, loaned, repeated, notFound));
+		
+		assertThat(results).extracting(LoanBatchResultDTO::getStatus).containsExactly(
+				LoanBatchResultDTO.CREATED, LoanBatchResultDTO.CONFLICT, LoanBatchResultDTO.CONFLICT, LoanBatchResultDTO.NOT_FOUND);
+		assertThat(results.get(0).getId()).isEqualTo(10l);
+		assertThat(availability.isLoaned(1l)).isTrue();
+		verify(repository, Mockito.never()).save(Mockito.any(Loan.class));
+		verify(repository).findOpenBookIds(Mockito.anyCollection());
+	}
+	
+	@Test
+	@DisplayName("Deve salvar um a um quando o lote violar a restricao de emprestimo aberto")
+	public void saveAllFallsBackToSingleSavesTest() {
+		
+		Loan first = createLoan(1l);
+		Loan second = createLoan(2l);
+		when(repository.saveAll(Arrays.asList(first, second))).thenThrow(openBookViolation());
+		when(repository.save(first)).thenReturn(Loan.builder().id(11l).book(first.getBook()).build());
+		when(repository.save(second)).thenThrow(openBookViolation());
+		
+		List<LoanBatchResultDTO> results = service.saveAll(Arrays.asList(first, second));
+		
+		assertThat(results).extracting(LoanBatchResultDTO::getStatus).containsExactly(
+				LoanBatchResultDTO.CREATED, LoanBatchResultDTO.CONFLICT);
+		assertThat(results.get(0).getId()).isEqualTo(11l);
+		assertThat(availability.isLoaned(2l)).isTrue();
+	}
+	
+	@Test
+	@DisplayName("Deve devolver emprestimos em lote por id e isbn com um unico update")
+	public void returnAllTest() {
+		
+		availability.markLoaned(1l);
+		availability.markLoaned(3l);
+		when(repository.findStateByIdIn(Arrays.asList(10l, 20l, 30l)))
+			.thenReturn(Arrays.asList(loanState(10l, 1l, "isbn1", null), loanState(20l, 2l, "isbn2", true)));
+		when(repository.findOpenStateByIsbnIn(Arrays.asList("isbn3", "isbn4")))
+			.thenReturn(Arrays.asList(loanState(40l, 3l, "isbn3", false)));
+		when(repository.markReturned(Arrays.asList(10l, 40l))).thenReturn(2);
+		
+		LoanReturnResultDTO result = service.returnAll(Arrays.asList(10l, 20l, 30l, 10l), Arrays.asList("isbn3", "isbn4"));
+		
+		verify(repository).markReturned(Arrays.asList(10l, 40l));
+		assertThat(result.getReturned()).containsExactly(10l, 40l);
+		assertThat(result.getAlreadyReturned()).containsExactly(20l);
+		assertThat(result.getUnknown()).containsExactly(30l);
+		assertThat(result.getUnmatchedIsbns()).containsExactly("isbn4");
+		assertThat(availability.isLoaned(1l)).isFalse();
+		assertThat(availability.isLoaned(3l)).isFalse();
+	}
+	
+	@Test
+	@DisplayName("Deve descontar dos contadores dos clientes os emprestimos devolvidos em lote")
+	public void countReturnAllTest() {
+		when(repository.findStateByIdIn(Arrays.asList(10l, 20l, 30l))).thenReturn(Arrays.asList(
+				loanState(10l, 1l, "isbn1", null, 7l, true),
+				loanState(20l, 2l, "isbn2", false, 7l, false),
+				loanState(30l, 3l, "isbn3", false, null, false)));
+		when(repository.markReturned(Arrays.asList(10l, 20l, 30l))).thenReturn(3);
+		
+		service.returnAll(Arrays.asList(10l, 20l, 30l), null);
+		
+		verify(customerService).addLoans(Collections.singletonMap(7l, -2), Collections.singletonMap(7l, -1));
+	}
+	
+	@Test
+	@DisplayName("Deve tratar como ja devolvidos os emprestimos devolvidos por outra requisicao antes do bloqueio")
+	public void concurrentReturnTest() {
+		availability.markLoaned(1l);
+		availability.markLoaned(2l);
+		when(repository.findStateByIdIn(Arrays.asList(10l, 20l))).thenReturn(Arrays.asList(
+				loanState(10l, 1l, "isbn1", null, 7l, false),
+				loanState(20l, 2l, "isbn2", true, 8l, false)));
+		when(repository.markReturned(Arrays.asList(10l))).thenReturn(1);
+		
+		LoanReturnResultDTO result = service.returnAll(Arrays.asList(10l, 20l), null);
+		
+		assertThat(result.getReturned()).containsExactly(10l);
+		assertThat(result.getAlreadyReturned()).containsExactly(20l);
+		verify(customerService).addLoans(Collections.singletonMap(7l, -1), Collections.emptyMap());
+		assertThat(availability.isLoaned(1l)).isFalse();
+		assertThat(availability.isLoaned(2l)).isTrue();
+	}
+	
+	@Test
+	@DisplayName("Deve marcar como atrasados em blocos e somar nos contadores dos clientes")
+	public void markOverdueTest() {
+		LocalDate today = LocalDate.now();
+		LocalDate since = today.minusDays(1);
+		List<LoanState> firstChunk = Arrays.asList(loanState(1l, 1l, "isbn1", false, 7l, false), loanState(2l, 2l, "isbn2", false, 7l, false));
+		List<LoanState> secondChunk = Arrays.asList(loanState(3l, 3l, "isbn3", false, 8l, false));
+		when(repository.findNewlyOverdueStateAfter(since, today, 0, 1, 0l, PageRequest.of(0, 2))).thenReturn(firstChunk);
+		when(repository.findNewlyOverdueStateAfter(since, today, 0, 1, 2l, PageRequest.of(0, 2))).thenReturn(secondChunk);
+		when(repository.markOverdue(Arrays.asList(1l, 2l))).thenReturn(2);
+		when(repository.markOverdue(Arrays.asList(3l))).thenReturn(1);
+		
+		int marked = service.markOverdue(since, today, 0, 1, 2);
+		
+		assertThat(marked).isEqualTo(3);
+		verify(customerService).addLoans(Collections.emptyMap(), Collections.singletonMap(7l, 2));
+		verify(customerService).addLoans(Collections.emptyMap(), Collections.singletonMap(8l, 1));
+	}
+	
+	@Test
+	@DisplayName("Deve filtrar emprestimos sem executar a consulta de contagem")
+	public void findLoanWithoutCountTest() {
+		
+		LoanFilterDTO filter = LoanFilterDTO.builder().isbn("321").customer("Fulano").build();
+		PageRequest pageRequest = PageRequest.of(0, 10);
+		Slice<LoanDTO> slice = new SliceImpl<LoanDTO>(Arrays.asList(new LoanDTO()), pageRequest, false);
+		when(repository.findDTOSliceByBookIsbnOrCustomer("321", "Fulano", pageRequest)).thenReturn(slice);
+		
+		Slice<LoanDTO> result = service.find(filter, pageRequest, CountMode.NONE);
+		
+		assertThat(result).isSameAs(slice);
+		verify(repository, Mockito.never()).countByBookIsbnOrCustomer(Mockito.any(), Mockito.any());
+		verify(repository, Mockito.never()).findDTOByBookIsbnOrCustomer(Mockito.any(), Mockito.any(), Mockito.any());
+	}
+	
+	private static LoanState loanState(Long id, Long bookId, String isbn, Boolean returned) {
+		return loanState(id, bookId, isbn, returned, null, false);
+	}
+	
+	private static LoanState loanState(Long id, Long bookId, String isbn, Boolean returned, Long customerId, Boolean overdue) {
+		Map<String, Object> values = new HashMap<>();
+		values.put("id", id);
+		values.put("bookId", bookId);
+		values.put("isbn", isbn);
+		values.put("returned", returned);
+		values.put("customerId", customerId);
+		values.put("overdue", overdue);
+		return new SpelAwareProxyProjectionFactory().createProjection(LoanState.class, values);
+	}
+	
+	private static Loan createLoan(Long bookId) {
+		return Loan.builder()
+				.book(Book.builder().id(bookId).isbn("isbn" + bookId).build())
+				.customer("Beltrano")
+				.loanDate(LocalDate.now())
+				.build();
+	}
+	
 	public static Loan createLoan() {
 		Book book = Book.builder().id(1l).build();
 		String customer = "Beltrano";
@@ -150,19 +436,18 @@ public class LoanServiceTest {
 
 		LoanFilterDTO loanFilterDto = LoanFilterDTO.builder().customer("Beltrano").isbn("321").build();
 		
-		Loan loan = createLoan();
-		loan.setId(1l);
+		LoanDTO loan = LoanDTO.builder().id(1l).customer("Beltrano").isbn("321").build();
 		
 		PageRequest pageRequest = PageRequest.of( 0, 10);
-		List<Loan> list = Arrays.asList(loan);
-		Page<Loan> page = new PageImpl<Loan>(list, pageRequest, list.size());
-		when( repository.findByBookIsbnOrCustomer(
+		List<LoanDTO> list = Arrays.asList(loan);
+		Page<LoanDTO> page = new PageImpl<LoanDTO>(list, pageRequest, list.size());
+		when( repository.findDTOByBookIsbnOrCustomer(
 											Mockito.anyString(),
 											Mockito.anyString(), 
 											Mockito.any(PageRequest.class)))
 						.thenReturn(page);
 
-		Page<Loan> result = service.find( loanFilterDto, pageRequest);
+		Page<LoanDTO> result = service.find( loanFilterDto, pageRequest);
 		
 		assertThat( result.getTotalElements() ).isEqualTo(1);
 		assertThat( result.getContent() ).isEqualTo( list );
@@ -171,4 +456,93 @@ public class LoanServiceTest {
 		
 	}
 	
+	@Test
+	@DisplayName("Deve filtrar emprestimos a partir de um cursor")
+	public void findLoanAfterCursor() {
+		
+		LoanFilterDTO loanFilterDto = LoanFilterDTO.builder().customer("Beltrano").isbn("321").build();
+		LoanCursor after = new LoanCursor(LocalDate.now(), 1l);
+		
+		LoanDTO loan = LoanDTO.builder().id(2l).customer("Beltrano").isbn("321").build();
+		
+		List<LoanDTO> list = Arrays.asList(loan);
+		when( repository.findSliceByBookIsbnOrCustomerAfter(
+											"321", "Beltrano", after.getLoanDate(), 1l, PageRequest.of(0, 10)))
+						.thenReturn(new SliceImpl<LoanDTO>(list, PageRequest.of(0, 10), false));
+		
+		Slice<LoanDTO> result = service.find( loanFilterDto, after, 10);
+		
+		assertThat( result.getContent() ).isEqualTo( list );
+		assertThat( result.hasNext() ).isFalse();
+		Mockito.verify(repository, Mockito.never()).findSliceByBookIsbnOrCustomer(
+				Mockito.anyString(), Mockito.anyString(), Mockito.any());
+	}
+	
+	@Test
+	@DisplayName("Deve salvar o emprestimo quando o livro foi devolvido por outra instancia")
+	public void staleLoanedBookSaveTest() throws Exception {
+		
+		Loan savingLoan = createLoan();
+		Book book = savingLoan.getBook();
+		availability.markLoaned(book.getId());
+		
+		when(repository.existsByBookAndNotReturned(book)).thenReturn(false);
+		when(repository.save(savingLoan)).thenReturn(savingLoan);
+		
+		service.save(savingLoan);
+		
+		verify(repository).save(savingLoan);
+		assertThat(availability.isLoaned(book.getId())).isTrue();
+	}
+	
+	@Test
+	@DisplayName("Deve lançar erro de negócio quando o banco recusar um segundo empréstimo aberto")
+	public void duplicatedOpenLoanSaveTest() throws Exception {
+		
+		Loan savingLoan = createLoan();
+		Book book = savingLoan.getBook();
+		
+		when(repository.save(savingLoan)).thenThrow(openBookViolation());
+		
+		Throwable exception = Assertions.catchThrowable( () -> service.save(savingLoan));
+		
+		assertThat(exception)
+				.isInstanceOf(BusinessException.class)
+				.hasMessage("Book already loaned");
+		assertThat(availability.isLoaned(book.getId())).isTrue();
+	}
+	
+	@Test
+	@DisplayName("Deve repassar violacoes de integridade que nao sejam do livro ja emprestado")
+	public void rethrowOtherViolationTest() throws Exception {
+		Loan savingLoan = createLoan();
+		DataIntegrityViolationException violation = new DataIntegrityViolationException("fk_loan_book",
+				new ConstraintViolationException("fk_loan_book", null, "FK_LOAN_BOOK"));
+		when(repository.save(savingLoan)).thenThrow(violation);
+		
+		Throwable exception = Assertions.catchThrowable( () -> service.save(savingLoan));
+		
+		assertThat(exception).isSameAs(violation);
+		assertThat(availability.isLoaned(savingLoan.getBook().getId())).isFalse();
+	}
+	
+	@Test
+	@DisplayName("Deve repassar no lote violacoes que nao sejam do livro ja emprestado sem tentar um a um")
+	public void rethrowOtherViolationInBatchTest() throws Exception {
+		Loan first = createLoan(1l);
+		Loan second = createLoan(2l);
+		DataIntegrityViolationException violation = new DataIntegrityViolationException("fk_loan_book");
+		when(repository.saveAll(Arrays.asList(first, second))).thenThrow(violation);
+		
+		Throwable exception = Assertions.catchThrowable( () -> service.saveAll(Arrays.asList(first, second)));
+		
+		assertThat(exception).isSameAs(violation);
+		verify(repository, Mockito.never()).save(Mockito.any(Loan.class));
+	}
+	
+	private static DataIntegrityViolationException openBookViolation() {
+		// H2 reports the unique index behind the constraint, with a suffix
+		return new DataIntegrityViolationException("open_book_id",
+				new ConstraintViolationException("open_book_id", null, "UK_LOAN_OPEN_BOOK_ID_INDEX_2"));
+	}
 }
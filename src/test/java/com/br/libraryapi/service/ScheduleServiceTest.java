@@ -0,0 +1,177 @@
+package com.br.libraryapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.br.libraryapi.model.entity.JobWatermark;
+import com.br.libraryapi.model.entity.Loan;
+import com.br.libraryapi.model.repository.JobWatermarkRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class ScheduleServiceTest {
+
+	ScheduleService service;
+	
+	MeterRegistry meterRegistry;
+	
+	@MockBean
+	LoanService loanService;
+	
+	@MockBean
+	EmailService emailService;
+	
+	@MockBean
+	JobWatermarkRepository watermarkRepository;
+	
+	@MockBean
+	ClusterJobRunner jobRunner;
+	
+	LocalDate today = LocalDate.now();
+	
+	LocalDate since = LocalDate.now().minusDays(1);
+	
+	@BeforeEach
+	public void setUp() {
+		this.meterRegistry = new SimpleMeterRegistry();
+		this.service = new ScheduleService(loanService, emailService, watermarkRepository, jobRunner, meterRegistry);
+		ReflectionTestUtils.setField(service, "mesage", "Atrasado");
+		ReflectionTestUtils.setField(service, "chunkSize", 2);
+		ReflectionTestUtils.setField(service, "reminderDays", 7);
+		when(watermarkRepository.findById(ScheduleService.LATE_LOANS_JOB))
+			.thenReturn(Optional.of(JobWatermark.builder().name(ScheduleService.LATE_LOANS_JOB).watermark(since).build()));
+		when(loanService.getNewlyLateLoans(Mockito.any(), Mockito.any(), Mockito.anyInt(), Mockito.anyInt(), Mockito.anyLong(), Mockito.anyInt()))
+			.thenReturn(Collections.emptyList());
+		when(loanService.getLateLoansDueForReminder(Mockito.any(), Mockito.anyInt(), Mockito.anyInt(), Mockito.anyLong(), Mockito.anyInt()))
+			.thenReturn(Collections.emptyList());
+	}
+	
+	@Test
+	@DisplayName("Deve enfileirar os emails dos emprestimos que venceram desde a ultima execucao em blocos")
+	public void enqueueLateLoansInChunks() {
+		
+		List<Loan> firstChunk = Arrays.asList(createLoan(1l), createLoan(2l));
+		List<Loan> secondChunk = Arrays.asList(createLoan(3l));
+		when(loanService.getNewlyLateLoans(since, today, 0, 1, 0l, 2)).thenReturn(firstChunk);
+		when(loanService.getNewlyLateLoans(since, today, 0, 1, 2l, 2)).thenReturn(secondChunk);
+		when(emailService.enqueueLateLoanMails("Atrasado", firstChunk)).thenReturn(2);
+		when(emailService.enqueueLateLoanMails("Atrasado", secondChunk)).thenReturn(1);
+		
+		service.notifyLateLoans(0, 1, today);
+		
+		verify(emailService).enqueueLateLoanMails("Atrasado", firstChunk);
+		verify(emailService).enqueueLateLoanMails("Atrasado", secondChunk);
+		verify(loanService, Mockito.never()).getNewlyLateLoans(since, today, 0, 1, 3l, 2);
+		assertThat(meterRegistry.counter("library.lateloans.chunks").count()).isEqualTo(2);
+		assertThat(meterRegistry.counter("library.lateloans.mails.enqueued").count()).isEqualTo(3);
+	}
+	
+	@Test
+	@DisplayName("Deve marcar os emprestimos vencidos da particao como atrasados antes de enfileirar os emails")
+	public void markOverdueBeforeEnqueue() {
+		
+		service.notifyLateLoans(2, 4, today);
+		
+		verify(loanService).markOverdue(since, today, 2, 4, 2);
+	}
+	
+	@Test
+	@DisplayName("Deve executar o job de emprestimos atrasados pelo executor do cluster")
+	public void runThroughClusterRunner() {
+		
+		service.sendMailToLateLoans();
+		
+		verify(jobRunner).run(ScheduleService.LATE_LOANS_JOB, today);
+		verify(loanService, Mockito.never()).getNewlyLateLoans(Mockito.any(), Mockito.any(), Mockito.anyInt(), Mockito.anyInt(), Mockito.anyLong(), Mockito.anyInt());
+	}
+	
+	@Test
+	@DisplayName("Deve avançar a marca d'agua para o dia da execucao quando todas as particoes terminarem")
+	public void advanceWatermark() {
+		
+		service.advanceWatermark(today);
+		
+		ArgumentCaptor<JobWatermark> captor = ArgumentCaptor.forClass(JobWatermark.class);
+		verify(watermarkRepository).save(captor.capture());
+		assertThat(captor.getValue().getName()).isEqualTo(ScheduleService.LATE_LOANS_JOB);
+		assertThat(captor.getValue().getWatermark()).isEqualTo(today);
+	}
+	
+	@Test
+	@DisplayName("Deve ler somente os emprestimos da particao processada")
+	public void readOnlyPartitionLoans() {
+		
+		service.notifyLateLoans(2, 4, today);
+		
+		verify(loanService).getNewlyLateLoans(since, today, 2, 4, 0l, 2);
+		verify(loanService).getLateLoansDueForReminder(today.minusDays(6).atStartOfDay(), 2, 4, 0l, 2);
+	}
+	
+	@Test
+	@DisplayName("Deve considerar todos os emprestimos vencidos quando ainda nao houver marca d'agua")
+	public void firstRunWithoutWatermark() {
+		when(watermarkRepository.findById(ScheduleService.LATE_LOANS_JOB)).thenReturn(Optional.empty());
+		
+		service.notifyLateLoans(0, 1, today);
+		
+		verify(loanService).getNewlyLateLoans(LocalDate.of(1970, 1, 1), today, 0, 1, 0l, 2);
+	}
+	
+	@Test
+	@DisplayName("Deve reenviar o aviso somente aos emprestimos avisados ha mais de reminder-days")
+	public void remindLateLoans() {
+		
+		List<Loan> reminders = Arrays.asList(createLoan(7l));
+		LocalDateTime notifiedBefore = today.minusDays(6).atStartOfDay();
+		when(loanService.getLateLoansDueForReminder(notifiedBefore, 0, 1, 0l, 2)).thenReturn(reminders);
+		when(emailService.enqueueLateLoanMails("Atrasado", reminders)).thenReturn(1);
+		
+		service.notifyLateLoans(0, 1, today);
+		
+		verify(emailService).enqueueLateLoanMails("Atrasado", reminders);
+		assertThat(meterRegistry.counter("library.lateloans.mails.enqueued").count()).isEqualTo(1);
+	}
+	
+	@Test
+	@DisplayName("Deve continuar nos proximos blocos quando um bloco falhar e falhar a particao")
+	public void continueAfterFailedChunk() {
+		
+		List<Loan> firstChunk = Arrays.asList(createLoan(1l), createLoan(2l));
+		when(loanService.getNewlyLateLoans(since, today, 0, 1, 0l, 2)).thenReturn(firstChunk);
+		when(emailService.enqueueLateLoanMails("Atrasado", firstChunk)).thenThrow(new IllegalStateException("db"));
+		
+		Throwable exception = Assertions.catchThrowable( () -> service.notifyLateLoans(0, 1, today) );
+		
+		assertThat(exception).isInstanceOf(IllegalStateException.class);
+		verify(loanService).getNewlyLateLoans(since, today, 0, 1, 2l, 2);
+		verify(watermarkRepository, Mockito.never()).save(Mockito.any());
+		assertThat(meterRegistry.counter("library.lateloans.mails.enqueued").count()).isEqualTo(0);
+	}
+	
+	private Loan createLoan(Long id) {
+		return Loan.builder().id(id).customer("Cliente " + id).customerEmail("cliente" + id + "@email.com").build();
+	}
+}
@@ -0,0 +1,80 @@
+package com.br.libraryapi.support;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.MethodExecutionContext;
+import net.ttddyy.dsproxy.listener.MethodExecutionListener;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+
+/**
+ * Counts the statements sent to the database and the rows read back, across every thread,
+ * since the last {@link #reset()}. Installed by {@link SqlCounterConfig}.
+ */
+public class SqlCounter implements QueryExecutionListener, MethodExecutionListener {
+
+	private static final AtomicLong STATEMENTS = new AtomicLong();
+	private static final AtomicLong ROWS = new AtomicLong();
+	private static final List<String> QUERIES = Collections.synchronizedList(new ArrayList<>());
+
+	public static void reset() {
+		STATEMENTS.set(0);
+		ROWS.set(0);
+		QUERIES.clear();
+	}
+
+	public static long statements() {
+		return STATEMENTS.get();
+	}
+
+	public static long rows() {
+		return ROWS.get();
+	}
+
+	public static List<String> queries() {
+		synchronized (QUERIES) {
+			return new ArrayList<>(QUERIES);
+		}
+	}
+
+	public static void assertStatements(long max) {
+		assertThat(statements()).as("statements issued: %s", queries()).isLessThanOrEqualTo(max);
+	}
+
+	public static void assertRows(long max) {
+		assertThat(rows()).as("rows read by: %s", queries()).isLessThanOrEqualTo(max);
+	}
+
+	// a batch is one round-trip, so it counts once however many rows it carries
+	@Override
+	public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+		STATEMENTS.incrementAndGet();
+		if (!queryInfoList.isEmpty()) {
+			QUERIES.add(queryInfoList.get(0).getQuery());
+		}
+	}
+
+	@Override
+	public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+	}
+
+	@Override
+	public void afterMethod(MethodExecutionContext executionContext) {
+		if (executionContext.getTarget() instanceof ResultSet
+				&& "next".equals(executionContext.getMethod().getName())
+				&& Boolean.TRUE.equals(executionContext.getResult())) {
+			ROWS.incrementAndGet();
+		}
+	}
+
+	@Override
+	public void beforeMethod(MethodExecutionContext executionContext) {
+	}
+}
@@ -0,0 +1,38 @@
+package com.br.libraryapi.support;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+
+/**
+ * Import into a {@code @SpringBootTest} or {@code @DataJpaTest} to route its DataSource
+ * through {@link SqlCounter}.
+ */
+@TestConfiguration
+public class SqlCounterConfig {
+
+	@Bean
+	public static BeanPostProcessor sqlCounterDataSourcePostProcessor() {
+		return new BeanPostProcessor() {
+
+			@Override
+			public Object postProcessAfterInitialization(Object bean, String beanName) {
+				if (!(bean instanceof DataSource) || bean instanceof ProxyDataSource) {
+					return bean;
+				}
+				SqlCounter counter = new SqlCounter();
+				return ProxyDataSourceBuilder.create((DataSource) bean)
+						.name(beanName)
+						.listener(counter)
+						.methodListener(counter)
+						.proxyResultSet()
+						.build();
+			}
+		};
+	}
+}
@@ -0,0 +1,95 @@
+package db.migration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+/**
+ * Runs the migrations up to V7 on an empty database, loads loans made before customers
+ * existed and then backfills them.
+ */
+public class V8__Backfill_customersTest {
+
+	static final String URL = "jdbc:h2:mem:backfill-customers;DB_CLOSE_DELAY=-1";
+
+	DriverManagerDataSource dataSource = new DriverManagerDataSource(URL, "sa", "");
+
+	JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+
+	LocalDate today = LocalDate.now();
+
+	@BeforeEach
+	public void setUp() {
+		flyway("7").migrate();
+		insertLoan(1, "Fulano", "fulano@email.com", today.minusDays(10), false);
+		insertLoan(2, "Beltrano", "beltrano@email.com", today, false);
+		insertLoan(3, "Fulano", " FULANO@email.com", today, null);
+		insertLoan(4, "Fulano", "fulano@email.com", today.minusDays(10), true);
+		insertLoan(5, "Ciclano", null, today, false);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		jdbc.execute("drop all objects");
+	}
+
+	@Test
+	@DisplayName("Deve criar um cliente por email e recontar seus emprestimos em lotes")
+	public void backfillInBatchesTest() {
+
+		int linked = new V8__Backfill_customers().backfill(jdbc, today, 2);
+
+		assertThat(linked).isEqualTo(4);
+		assertThat(jdbc.queryForObject("select count(*) from customer", Integer.class)).isEqualTo(2);
+		Map<String, Object> fulano = jdbc.queryForMap("select * from customer where email = 'fulano@email.com'");
+		assertThat(fulano.get("open_loans")).isEqualTo(2);
+		assertThat(fulano.get("overdue_loans")).isEqualTo(1);
+		assertThat(jdbc.queryForObject("select count(*) from loan where customer_id = ?", Integer.class, fulano.get("id"))).isEqualTo(3);
+		assertThat(jdbc.queryForObject("select overdue from loan where id = 1", Boolean.class)).isTrue();
+		assertThat(jdbc.queryForObject("select overdue from loan where id = 4", Boolean.class)).isFalse();
+		assertThat(jdbc.queryForObject("select customer_id from loan where id = 5", Long.class)).isNull();
+	}
+
+	@Test
+	@DisplayName("Deve ignorar os emprestimos ja vinculados quando a migracao rodar novamente")
+	public void backfillIsResumableTest() {
+
+		new V8__Backfill_customers().backfill(jdbc, today, 2);
+		int linkedAgain = new V8__Backfill_customers().backfill(jdbc, today, 2);
+
+		assertThat(linkedAgain).isEqualTo(0);
+		assertThat(jdbc.queryForObject("select open_loans from customer where email = 'beltrano@email.com'", Integer.class)).isEqualTo(1);
+	}
+
+	@Test
+	@DisplayName("Deve executar o backfill como migracao do Flyway")
+	public void migrateTest() {
+
+		flyway("latest").migrate();
+
+		assertThat(jdbc.queryForObject("select count(*) from loan where customer_id is not null", Integer.class)).isEqualTo(4);
+	}
+
+	private Flyway flyway(String target) {
+		return Flyway.configure()
+				.dataSource(dataSource)
+				.target(target)
+				.load();
+	}
+
+	private void insertLoan(long id, String customer, String email, LocalDate loanDate, Boolean returned) {
+		jdbc.update("insert into book (id, title, author, isbn) values (?, 'Aventuras', 'Autor', ?)", id, "isbn-" + id);
+		jdbc.update("insert into loan (id, customer, customer_email, id_book, loan_date, due_date, returned, open_book_id) "
+				+ "values (?, ?, ?, ?, ?, ?, ?, ?)", id, customer, email, id, loanDate, loanDate.plusDays(4), returned,
+				Boolean.TRUE.equals(returned) ? null : id);
+	}
+}